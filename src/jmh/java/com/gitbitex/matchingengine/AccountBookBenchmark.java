@@ -0,0 +1,103 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AccountBook} with {@code users} funded users. Each operation ends with the account message flush the engine
+ * does at the end of a command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBookBenchmark {
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+    @Param({"100", "100000"})
+    public int users;
+
+    private NoopMessageSender messageSender;
+    private AccountBook accountBook;
+    private Random random;
+    private BigDecimal size;
+    private BigDecimal funds;
+    private long scaledSize;
+    private long scaledFunds;
+    private int fundsScale;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        messageSender = new NoopMessageSender(BenchmarkSupport.appProperties(fixedPoint, 0));
+        accountBook = new AccountBook(messageSender, new AtomicLong(), fixedPoint, null, null);
+        accountBook.addProduct(BenchmarkSupport.product());
+        random = new Random(1);
+        size = BenchmarkSupport.size(1234);
+        funds = size.multiply(BenchmarkSupport.price(1000000));
+        fundsScale = BenchmarkSupport.product().fundsScale();
+        scaledSize = FixedPoint.toLong(size, BenchmarkSupport.BASE_SCALE);
+        scaledFunds = FixedPoint.toLong(funds, fundsScale);
+        for (int i = 0; i < users; i++) {
+            accountBook.deposit(BenchmarkSupport.userId(i), BenchmarkSupport.BASE_CURRENCY,
+                    new BigDecimal("1000000000"), null);
+            accountBook.deposit(BenchmarkSupport.userId(i), BenchmarkSupport.QUOTE_CURRENCY,
+                    new BigDecimal("100000000000"), null);
+        }
+        accountBook.flushAccountMessages();
+    }
+
+    @Benchmark
+    public long holdAndUnhold() {
+        String userId = BenchmarkSupport.userId(random.nextInt(users));
+        if (fixedPoint) {
+            accountBook.hold(userId, BenchmarkSupport.QUOTE_CURRENCY, scaledFunds, fundsScale);
+            accountBook.unhold(userId, BenchmarkSupport.QUOTE_CURRENCY, scaledFunds, fundsScale);
+        } else {
+            accountBook.hold(userId, BenchmarkSupport.QUOTE_CURRENCY, funds);
+            accountBook.unhold(userId, BenchmarkSupport.QUOTE_CURRENCY, funds);
+        }
+        accountBook.flushAccountMessages();
+        return messageSender.getMessageCount();
+    }
+
+    /**
+     * A buy taker trading with a random maker: both hold their side of the trade first, like resting orders do.
+     */
+    @Benchmark
+    public long exchange() {
+        String takerUserId = BenchmarkSupport.userId(random.nextInt(users));
+        String makerUserId = BenchmarkSupport.userId(random.nextInt(users));
+        if (fixedPoint) {
+            accountBook.hold(takerUserId, BenchmarkSupport.QUOTE_CURRENCY, scaledFunds, fundsScale);
+            accountBook.hold(makerUserId, BenchmarkSupport.BASE_CURRENCY, scaledSize, BenchmarkSupport.BASE_SCALE);
+            accountBook.exchange(takerUserId, makerUserId, BenchmarkSupport.BASE_CURRENCY,
+                    BenchmarkSupport.QUOTE_CURRENCY, OrderSide.BUY, scaledSize, BenchmarkSupport.BASE_SCALE,
+                    scaledFunds, fundsScale);
+        } else {
+            accountBook.hold(takerUserId, BenchmarkSupport.QUOTE_CURRENCY, funds);
+            accountBook.hold(makerUserId, BenchmarkSupport.BASE_CURRENCY, size);
+            accountBook.exchange(takerUserId, makerUserId, BenchmarkSupport.BASE_CURRENCY,
+                    BenchmarkSupport.QUOTE_CURRENCY, OrderSide.BUY, size, funds);
+        }
+        accountBook.flushAccountMessages();
+        return messageSender.getMessageCount();
+    }
+}
@@ -0,0 +1,161 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.DepositCommand;
+import com.gitbitex.matchingengine.command.PutProductCommand;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fixtures shared by the benchmarks: one BTC-USDT product with 4 size and 2 price decimals.
+ */
+public final class BenchmarkSupport {
+    public static final String PRODUCT_ID = "BTC-USDT";
+    public static final String BASE_CURRENCY = "BTC";
+    public static final String QUOTE_CURRENCY = "USDT";
+    public static final int BASE_SCALE = 4;
+    public static final int QUOTE_SCALE = 2;
+
+    private BenchmarkSupport() {
+    }
+
+    public static Product product() {
+        Product product = new Product();
+        product.setId(PRODUCT_ID);
+        product.setBaseCurrency(BASE_CURRENCY);
+        product.setQuoteCurrency(QUOTE_CURRENCY);
+        product.setBaseScale(BASE_SCALE);
+        product.setQuoteScale(QUOTE_SCALE);
+        return product;
+    }
+
+    public static AppProperties appProperties(boolean fixedPoint, int priceLadderSize) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setMatchingEngineCommandTopic("matching-engine-command");
+        appProperties.setMatchingEngineMessageTopic("matching-engine-message");
+        appProperties.setMatchingEngineFixedPoint(fixedPoint);
+        appProperties.setMatchingEnginePriceLadderSize(priceLadderSize);
+        return appProperties;
+    }
+
+    /**
+     * An order book with unlimited funds, see {@link NoopLedger}.
+     */
+    public static OrderBook orderBook(MessageSender messageSender, boolean fixedPoint, int priceLadderSize) {
+        ProductBook productBook = new ProductBook(messageSender, new AtomicLong());
+        productBook.addProduct(product());
+        return new OrderBook(PRODUCT_ID, 0, 0, 0, new NoopLedger(), productBook, messageSender,
+                new AtomicLong(), fixedPoint, priceLadderSize, 0, null, null);
+    }
+
+    /**
+     * A single-shard engine without a snapshot, the product and deposits for {@code userCount} users are applied
+     * before it is returned.
+     */
+    public static MatchingEngine matchingEngine(AppProperties appProperties, MessageSender messageSender,
+                                                int userCount) {
+        MatchingEngine matchingEngine = emptyMatchingEngine(appProperties, messageSender);
+        long offset = 0;
+        for (Command command : setupCommands(userCount)) {
+            matchingEngine.executeCommand(command, offset++);
+        }
+        return matchingEngine;
+    }
+
+    public static MatchingEngine emptyMatchingEngine(AppProperties appProperties, MessageSender messageSender) {
+        return new MatchingEngine(emptySnapshotManager(), new LocalSnapshotStore(appProperties), messageSender,
+                EngineMeterRegistry.noop(), appProperties, 0);
+    }
+
+    public static List<Command> setupCommands(int userCount) {
+        List<Command> commands = new ArrayList<>();
+        PutProductCommand putProductCommand = new PutProductCommand();
+        putProductCommand.setProductId(PRODUCT_ID);
+        putProductCommand.setBaseCurrency(BASE_CURRENCY);
+        putProductCommand.setQuoteCurrency(QUOTE_CURRENCY);
+        putProductCommand.setBaseScale(BASE_SCALE);
+        putProductCommand.setQuoteScale(QUOTE_SCALE);
+        commands.add(putProductCommand);
+        for (int i = 0; i < userCount; i++) {
+            commands.add(deposit(userId(i), BASE_CURRENCY, new BigDecimal("1000000000")));
+            commands.add(deposit(userId(i), QUOTE_CURRENCY, new BigDecimal("100000000000")));
+        }
+        return commands;
+    }
+
+    public static String userId(int i) {
+        return "user-" + i;
+    }
+
+    /**
+     * Returns a UUID order id, like the ones the order controller assigns.
+     */
+    public static String orderId(long n) {
+        return new UUID(0x5eed5eed5eed4000L | (n >>> 48), n).toString();
+    }
+
+    public static Order limitOrder(String orderId, String userId, OrderSide side, BigDecimal price, BigDecimal size) {
+        Order order = new Order();
+        order.setId(orderId);
+        order.setUserId(userId);
+        order.setProductId(PRODUCT_ID);
+        order.setType(OrderType.LIMIT);
+        order.setSide(side);
+        order.setPrice(price);
+        order.setSize(size);
+        order.setFunds(size.multiply(price));
+        order.setRemainingSize(size);
+        order.setRemainingFunds(order.getFunds());
+        order.setTime(new Date(0));
+        return order;
+    }
+
+    public static BigDecimal price(long ticks) {
+        return BigDecimal.valueOf(ticks, QUOTE_SCALE);
+    }
+
+    public static BigDecimal size(long lots) {
+        return BigDecimal.valueOf(lots, BASE_SCALE);
+    }
+
+    private static DepositCommand deposit(String userId, String currency, BigDecimal amount) {
+        DepositCommand command = new DepositCommand();
+        command.setUserId(userId);
+        command.setCurrency(currency);
+        command.setAmount(amount);
+        command.setTransactionId(userId + "-" + currency);
+        return command;
+    }
+
+    /**
+     * Snapshot manager over a database that has nothing in it, the engine starts empty.
+     */
+    private static EngineSnapshotManager emptySnapshotManager() {
+        MongoCollection<?> collection = (MongoCollection<?>) Proxy.newProxyInstance(
+                BenchmarkSupport.class.getClassLoader(), new Class<?>[]{MongoCollection.class},
+                (proxy, method, args) -> null);
+        MongoDatabase database = (MongoDatabase) Proxy.newProxyInstance(
+                BenchmarkSupport.class.getClassLoader(), new Class<?>[]{MongoDatabase.class},
+                (proxy, method, args) -> method.getName().equals("getCollection") ? collection : null);
+        return new EngineSnapshotManager(null, database) {
+            @Override
+            public void runInSession(Consumer<ClientSession> consumer) {
+            }
+        };
+    }
+}
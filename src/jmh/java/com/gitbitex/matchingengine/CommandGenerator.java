@@ -0,0 +1,95 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.matchingengine.command.CancelOrderCommand;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.PlaceOrderCommand;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Endless stream of order commands around a fixed mid price: mostly resting limit orders, some crossing limit and
+ * market orders, and cancels of random earlier orders, placed by random users of {@link BenchmarkSupport}.
+ */
+public class CommandGenerator {
+    private static final long MID_PRICE_TICKS = 1000000;
+    // cancels pick from this many recent orders
+    private static final int MAX_OPEN_ORDER_IDS = 100000;
+    private final Random random;
+    private final int userCount;
+    private final int cancelPercent;
+    private final List<String> openOrderIds = new ArrayList<>();
+    private long orderCount;
+
+    public CommandGenerator(long seed, int userCount, int cancelPercent) {
+        this.random = new Random(seed);
+        this.userCount = userCount;
+        this.cancelPercent = cancelPercent;
+    }
+
+    public Command next() {
+        if (!openOrderIds.isEmpty() && random.nextInt(100) < cancelPercent) {
+            return cancel();
+        }
+        int kind = random.nextInt(100);
+        OrderSide side = random.nextBoolean() ? OrderSide.BUY : OrderSide.SELL;
+        PlaceOrderCommand command = new PlaceOrderCommand();
+        command.setProductId(BenchmarkSupport.PRODUCT_ID);
+        command.setOrderId(BenchmarkSupport.orderId(++orderCount));
+        command.setUserId(BenchmarkSupport.userId(random.nextInt(userCount)));
+        command.setOrderSide(side);
+        command.setSize(BenchmarkSupport.size(1 + random.nextInt(5000)));
+        command.setTime(new Date(orderCount));
+        if (kind < 80) {
+            // resting, up to 100 ticks behind the mid price
+            long offset = 1 + random.nextInt(100);
+            command.setOrderType(OrderType.LIMIT);
+            command.setPrice(BenchmarkSupport.price(side == OrderSide.BUY
+                    ? MID_PRICE_TICKS - offset : MID_PRICE_TICKS + offset));
+        } else if (kind < 95) {
+            // crossing, up to 20 ticks through the mid price
+            long offset = random.nextInt(20);
+            command.setOrderType(OrderType.LIMIT);
+            command.setPrice(BenchmarkSupport.price(side == OrderSide.BUY
+                    ? MID_PRICE_TICKS + offset : MID_PRICE_TICKS - offset));
+        } else {
+            command.setOrderType(OrderType.MARKET);
+            if (side == OrderSide.BUY) {
+                command.setFunds(command.getSize().multiply(BenchmarkSupport.price(MID_PRICE_TICKS)));
+            }
+        }
+        rememberOrderId(command.getOrderId());
+        return command;
+    }
+
+    public List<Command> next(int count) {
+        List<Command> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            commands.add(next());
+        }
+        return commands;
+    }
+
+    private CancelOrderCommand cancel() {
+        int i = random.nextInt(openOrderIds.size());
+        String orderId = openOrderIds.get(i);
+        openOrderIds.set(i, openOrderIds.get(openOrderIds.size() - 1));
+        openOrderIds.remove(openOrderIds.size() - 1);
+        CancelOrderCommand command = new CancelOrderCommand();
+        command.setProductId(BenchmarkSupport.PRODUCT_ID);
+        command.setOrderId(orderId);
+        return command;
+    }
+
+    private void rememberOrderId(String orderId) {
+        if (openOrderIds.size() < MAX_OPEN_ORDER_IDS) {
+            openOrderIds.add(orderId);
+        } else {
+            openOrderIds.set(random.nextInt(MAX_OPEN_ORDER_IDS), orderId);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.gitbitex.matchingengine;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * Copies the command topic into a file for {@link MatchingEngineBenchmark#replay}, each record as its length followed
+ * by its bytes.
+ * <p>
+ * Usage: {@code CommandStreamRecorder <bootstrap servers> <command topic> <file> [max records]}
+ */
+public class CommandStreamRecorder {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: CommandStreamRecorder <bootstrap servers> <command topic> <file> [max records]");
+            System.exit(1);
+        }
+        long maxRecords = args.length > 3 ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+
+        Properties properties = new Properties();
+        properties.put("bootstrap.servers", args[0]);
+        properties.put("group.id", "CommandStreamRecorder-" + System.currentTimeMillis());
+        properties.put("enable.auto.commit", "false");
+        properties.put("auto.offset.reset", "earliest");
+        properties.put("isolation.level", "read_committed");
+
+        long count = 0;
+        try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(properties, new ByteArrayDeserializer(),
+                new ByteArrayDeserializer());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[2])))) {
+            consumer.subscribe(Collections.singletonList(args[1]));
+            while (count < maxRecords) {
+                ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofSeconds(5));
+                if (records.isEmpty()) {
+                    break;
+                }
+                for (ConsumerRecord<byte[], byte[]> record : records) {
+                    out.writeInt(record.value().length);
+                    out.write(record.value());
+                    if (++count >= maxRecords) {
+                        break;
+                    }
+                }
+            }
+        }
+        System.out.println("recorded " + count + " commands");
+    }
+}
@@ -0,0 +1,124 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.CommandDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole {@link MatchingEngine}, with {@link MessageSender} stubbed out.
+ * <p>
+ * {@link #executeCommand} runs one generated command at a time against a book that stays warm across the iteration.
+ * {@link #replay} runs a whole command stream through a fresh engine per invocation: the stream recorded by
+ * {@link CommandStreamRecorder} when {@code commandFile} is set, otherwise {@code replayCommands} generated ones.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingEngineBenchmark {
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+    @Param({"0", "4096"})
+    public int priceLadderSize;
+    @Param({"1000"})
+    public int users;
+    @Param({"20"})
+    public int cancelPercent;
+    @Param({""})
+    public String commandFile;
+    @Param({"100000"})
+    public int replayCommands;
+
+    private AppProperties appProperties;
+    private NoopMessageSender messageSender;
+    private MatchingEngine matchingEngine;
+    private CommandGenerator commandGenerator;
+    private long offset;
+    private List<Command> replayStream;
+
+    @Setup(Level.Trial)
+    public void loadReplayStream() throws IOException {
+        appProperties = BenchmarkSupport.appProperties(fixedPoint, priceLadderSize);
+        if (commandFile.isEmpty()) {
+            replayStream = new ArrayList<>(BenchmarkSupport.setupCommands(users));
+            replayStream.addAll(new CommandGenerator(2, users, cancelPercent).next(replayCommands));
+        } else {
+            replayStream = readCommands(commandFile);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        messageSender = new NoopMessageSender(appProperties);
+        matchingEngine = BenchmarkSupport.matchingEngine(appProperties, messageSender, users);
+        commandGenerator = new CommandGenerator(1, users, cancelPercent);
+        // let the book fill up before measuring
+        for (Command command : commandGenerator.next(10000)) {
+            matchingEngine.executeCommand(command, offset++);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public long executeCommand() {
+        matchingEngine.executeCommand(commandGenerator.next(), offset++);
+        return messageSender.getMessageCount();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long replay() {
+        NoopMessageSender replaySender = new NoopMessageSender(appProperties);
+        MatchingEngine replayEngine = BenchmarkSupport.emptyMatchingEngine(appProperties, replaySender);
+        long replayOffset = 0;
+        for (Command command : replayStream) {
+            replayEngine.executeCommand(command, replayOffset++);
+        }
+        return replaySender.getMessageCount();
+    }
+
+    /**
+     * Reads the records written by {@link CommandStreamRecorder}.
+     */
+    static List<Command> readCommands(String file) throws IOException {
+        CommandDeserializer deserializer = new CommandDeserializer();
+        List<Command> commands = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                commands.add(deserializer.deserialize(null, bytes));
+            }
+        }
+        return commands;
+    }
+}
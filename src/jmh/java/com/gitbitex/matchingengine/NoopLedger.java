@@ -0,0 +1,38 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+
+import java.math.BigDecimal;
+
+/**
+ * Ledger with unlimited funds, for benchmarking an {@link OrderBook} without an {@link AccountBook}.
+ */
+public class NoopLedger implements Ledger {
+    @Override
+    public boolean hold(String userId, String currency, BigDecimal amount) {
+        return true;
+    }
+
+    @Override
+    public boolean hold(String userId, String currency, long amount, int scale) {
+        return true;
+    }
+
+    @Override
+    public void unhold(String userId, String currency, BigDecimal amount) {
+    }
+
+    @Override
+    public void unhold(String userId, String currency, long amount, int scale) {
+    }
+
+    @Override
+    public void exchange(String takerUserId, String makerUserId, String baseCurrency, String quoteCurrency,
+                         OrderSide takerSide, BigDecimal size, BigDecimal funds) {
+    }
+
+    @Override
+    public void exchange(String takerUserId, String makerUserId, String baseCurrency, String quoteCurrency,
+                         OrderSide takerSide, long size, int sizeScale, long funds, int fundsScale) {
+    }
+}
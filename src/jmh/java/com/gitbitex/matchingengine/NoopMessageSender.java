@@ -0,0 +1,45 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.middleware.kafka.KafkaProperties;
+
+/**
+ * Message sender that drops everything, so benchmarks measure the engine and not Kafka. Counts the messages so the
+ * work producing them cannot be optimized away.
+ */
+public class NoopMessageSender extends MessageSender {
+    private long messageCount;
+
+    public NoopMessageSender(AppProperties appProperties) {
+        // the shard constructor does not create a producer
+        super(appProperties, new KafkaProperties(), 0);
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void send(Message message) {
+        messageCount++;
+    }
+
+    @Override
+    public void forward(Command command, int targetShard) {
+        messageCount++;
+    }
+
+    @Override
+    public void beginBatch() {
+    }
+
+    @Override
+    public void commitBatch() {
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+}
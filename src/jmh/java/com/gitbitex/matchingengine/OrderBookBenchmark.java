@@ -0,0 +1,130 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OrderBook} on a deep book of {@code levels} price levels per side with {@code ordersPerLevel} orders each,
+ * funds are not checked (see {@link NoopLedger}). Every benchmark leaves the book as deep as it found it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBookBenchmark {
+    private static final long BEST_ASK_TICKS = 1000001;
+    private static final long BEST_BID_TICKS = 1000000;
+    private static final int SWEEP_LEVELS = 5;
+    private static final int CANCEL_STORM_SIZE = 100;
+
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+    @Param({"0", "4096"})
+    public int priceLadderSize;
+    @Param({"1000"})
+    public int levels;
+    @Param({"10"})
+    public int ordersPerLevel;
+
+    private NoopMessageSender messageSender;
+    private OrderBook orderBook;
+    private Random random;
+    private long orderCount;
+    private BigDecimal makerSize;
+    private List<String> restingOrderIds;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        messageSender = new NoopMessageSender(BenchmarkSupport.appProperties(fixedPoint, priceLadderSize));
+        orderBook = BenchmarkSupport.orderBook(messageSender, fixedPoint, priceLadderSize);
+        random = new Random(1);
+        makerSize = BenchmarkSupport.size(10000);
+        restingOrderIds = new ArrayList<>();
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                restingOrderIds.add(place(OrderSide.SELL, BEST_ASK_TICKS + level, makerSize));
+                restingOrderIds.add(place(OrderSide.BUY, BEST_BID_TICKS - level, makerSize));
+            }
+        }
+    }
+
+    /**
+     * A resting order somewhere in the book that is cancelled right away.
+     */
+    @Benchmark
+    public long placeAndCancelPassive() {
+        OrderSide side = random.nextBoolean() ? OrderSide.BUY : OrderSide.SELL;
+        int level = random.nextInt(levels);
+        String orderId = place(side, side == OrderSide.BUY ? BEST_BID_TICKS - level : BEST_ASK_TICKS + level,
+                makerSize);
+        orderBook.cancelOrder(orderId);
+        return messageSender.getMessageCount();
+    }
+
+    /**
+     * A buy taking the first {@link #SWEEP_LEVELS} ask levels, which are then refilled.
+     */
+    @Benchmark
+    public long marketSweep() {
+        BigDecimal sweepSize = makerSize.multiply(BigDecimal.valueOf((long) SWEEP_LEVELS * ordersPerLevel));
+        place(OrderSide.BUY, BEST_ASK_TICKS + SWEEP_LEVELS - 1, sweepSize);
+        for (int level = 0; level < SWEEP_LEVELS; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                place(OrderSide.SELL, BEST_ASK_TICKS + level, makerSize);
+            }
+        }
+        return messageSender.getMessageCount();
+    }
+
+    /**
+     * Cancels {@link #CANCEL_STORM_SIZE} random resting orders at once, then puts them back at the same prices.
+     */
+    @Benchmark
+    public long cancelStorm() {
+        Order[] cancelled = new Order[CANCEL_STORM_SIZE];
+        int[] indexes = new int[CANCEL_STORM_SIZE];
+        for (int i = 0; i < CANCEL_STORM_SIZE; i++) {
+            indexes[i] = random.nextInt(restingOrderIds.size());
+            cancelled[i] = orderBook.getOrderById().get(restingOrderIds.get(indexes[i]));
+            if (cancelled[i] != null) {
+                orderBook.cancelOrder(cancelled[i].getId());
+            }
+        }
+        for (int i = 0; i < CANCEL_STORM_SIZE; i++) {
+            if (cancelled[i] != null) {
+                restingOrderIds.set(indexes[i], place(cancelled[i].getSide(), cancelled[i].getPrice(), makerSize));
+            }
+        }
+        return messageSender.getMessageCount();
+    }
+
+    private String place(OrderSide side, long priceTicks, BigDecimal size) {
+        return place(side, BenchmarkSupport.price(priceTicks), size);
+    }
+
+    private String place(OrderSide side, BigDecimal price, BigDecimal size) {
+        String orderId = BenchmarkSupport.orderId(++orderCount);
+        orderBook.placeOrder(BenchmarkSupport.limitOrder(orderId, BenchmarkSupport.userId((int) (orderCount % 100)),
+                side, price, size));
+        return orderId;
+    }
+}
@@ -0,0 +1,103 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ask side alone: {@link Depth} ({@code priceLadderSize} 0) against {@link PriceLadder}, on {@code levels}
+ * levels of {@code ordersPerLevel} orders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceLevelsBenchmark {
+    private static final long BEST_TICKS = 1000000;
+
+    @Param({"0", "4096"})
+    public int priceLadderSize;
+    @Param({"1000"})
+    public int levels;
+    @Param({"10"})
+    public int ordersPerLevel;
+
+    private PriceLevels asks;
+    private Order[] orders;
+    private Random random;
+    private final List<Order> taken = new ArrayList<>();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        asks = priceLadderSize > 0
+                ? new PriceLadder(priceLadderSize, true)
+                : new Depth(Comparator.naturalOrder(), true);
+        orders = new Order[levels * ordersPerLevel];
+        random = new Random(1);
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = order(i, BEST_TICKS + i % levels);
+            asks.addOrder(orders[i]);
+        }
+    }
+
+    /**
+     * Moves a random order to the back of its level's queue.
+     */
+    @Benchmark
+    public PriceGroupedOrderCollection removeAndAdd() {
+        Order order = orders[random.nextInt(orders.length)];
+        PriceGroupedOrderCollection level = order.getLevel();
+        asks.removeOrder(order);
+        if (level.isEmpty()) {
+            asks.removeLevel(level);
+        }
+        asks.addOrder(order);
+        return asks.getBestLevel();
+    }
+
+    /**
+     * Empties the best level and puts its orders back, as a sweep followed by a refill does.
+     */
+    @Benchmark
+    public PriceGroupedOrderCollection takeBestLevel() {
+        PriceGroupedOrderCollection best = asks.getBestLevel();
+        taken.clear();
+        while (best.getHead() != null) {
+            taken.add(best.getHead());
+            best.removeOrder(best.getHead());
+        }
+        asks.removeLevel(best);
+        PriceGroupedOrderCollection next = asks.getBestLevel();
+        for (Order order : taken) {
+            asks.addOrder(order);
+        }
+        return next;
+    }
+
+    private static Order order(int i, long priceTicks) {
+        BigDecimal price = BenchmarkSupport.price(priceTicks);
+        Order order = BenchmarkSupport.limitOrder("order-" + i, BenchmarkSupport.userId(i % 100), OrderSide.SELL,
+                price, BenchmarkSupport.size(10000));
+        order.setScaledPrice(priceTicks);
+        return order;
+    }
+}
@@ -12,4 +12,61 @@ import org.springframework.validation.annotation.Validated;
 public class AppProperties {
     private String matchingEngineCommandTopic;
     private String matchingEngineMessageTopic;
+    /**
+     * Hold prices, sizes, funds and balances as scaled longs inside the engine, using the product scales.
+     */
+    private boolean matchingEngineFixedPoint;
+    /**
+     * Number of ticks kept in the price-indexed ladder of each book side, must be a power of 2. 0 keeps every level
+     * in a tree map. Only used in fixed-point mode.
+     */
+    private int matchingEnginePriceLadderSize;
+    /**
+     * Number of matching engine shards. Products are spread over the shards by id and shard 0 also owns the account
+     * book. Each shard uses the command and message topic partition of the same number, so both topics need at least
+     * this many partitions, the consumer group spreads the shards over the nodes. 1 runs a single engine like before.
+     * Must not change while orders are resting.
+     */
+    private int matchingEngineShards = 1;
+    /**
+     * Resting limit orders a user may have in one order book, further limit orders that could rest are rejected.
+     * 0 for no limit.
+     */
+    private int matchingEngineMaxOpenOrders;
+    /**
+     * Run each poll batch of commands between a single start/end message pair and send the engine output of the batch
+     * packed into a few batch records, flushed once per batch.
+     */
+    private boolean matchingEngineBatchExecution;
+    /**
+     * Write order commands and the per-command engine messages in the compact binary format instead of JSON. Readers
+     * detect the format of each record, so this can be switched while both topics hold records of the other format.
+     */
+    private boolean matchingEngineBinaryFormat;
+    /**
+     * Directory of the local engine snapshot files. Engines restore from the file of their shard instead of the Mongo
+     * snapshot when it is recent enough, and write it after restoring from Mongo. Empty disables local snapshots.
+     */
+    private String matchingEngineLocalSnapshotDir;
+    /**
+     * Messages the local snapshot file of a shard may be behind the Mongo snapshot and still be restored from. The
+     * commands after the file are replayed from the command topic, so this bounds the replay at startup.
+     */
+    private long matchingEngineLocalSnapshotMaxLag = 1_000_000;
+    /**
+     * Seconds between the snapshots a running engine takes of itself into its local snapshot file. Only the orders
+     * and accounts changed since the previous snapshot are copied on the engine thread, the file is written in the
+     * background. 0 leaves the file to the restores from Mongo.
+     */
+    private int matchingEngineLocalSnapshotInterval = 60;
+    /**
+     * Keeps a standby engine of every shard this node does not run, replaying the command topic with its output
+     * dropped, so a shard assigned to the node is taken over at once instead of being loaded from the snapshots.
+     */
+    private boolean matchingEngineStandby = true;
+    /**
+     * Keeps a digest of the accounts and open orders of each engine, updated as they change, and sends it in the
+     * command end messages. Snapshots are checked against it when they are restored, and standbys at every command end.
+     */
+    private boolean matchingEngineStateDigest = false;
 }
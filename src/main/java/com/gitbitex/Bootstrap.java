@@ -14,6 +14,7 @@ import com.gitbitex.matchingengine.command.Command;
 import com.gitbitex.matchingengine.command.CommandDeserializer;
 import com.gitbitex.matchingengine.message.MatchingEngineMessageDeserializer;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageType;
 import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
 import com.gitbitex.matchingengine.snapshot.MatchingEngineSnapshotThread;
 import com.gitbitex.middleware.kafka.KafkaProperties;
@@ -49,13 +50,15 @@ public class Bootstrap {
 
     @PostConstruct
     public void init() {
-        startMatchingEngine(1);
+        // a thread per shard, the shards are spread over the threads of all nodes by the consumer groups
+        int shards = Math.max(appProperties.getMatchingEngineShards(), 1);
+        startMatchingEngine(shards);
+        startSnapshotThread(shards);
         startOrderPersistenceThread(1);
         startTradePersistenceThread(1);
         startAccountPersistenceThread(1);
         startCandleMaker(1);
         startTickerThread(1);
-        startSnapshotThread(1);
         startOrderBookSnapshotThread(1);
     }
 
@@ -84,7 +87,7 @@ public class Bootstrap {
     private void startOrderBookSnapshotThread(int nThreads) {
         for (int i = 0; i < nThreads; i++) {
             String groupId = "OrderBookSnapshot";
-            var consumer = getEngineMessageKafkaConsumer(groupId);
+            var consumer = getEngineMessageKafkaConsumer(groupId, MessageType.ORDER);
             var thread = new OrderBookSnapshotThread(consumer, orderBookSnapshotManager, engineSnapshotManager,
                     appProperties);
             thread.setName(groupId + "-" + thread.getId());
@@ -97,7 +100,7 @@ public class Bootstrap {
     private void startAccountPersistenceThread(int nThreads) {
         for (int i = 0; i < nThreads; i++) {
             String groupId = "Account";
-            var consumer = getEngineMessageKafkaConsumer(groupId);
+            var consumer = getEngineMessageKafkaConsumer(groupId, MessageType.ACCOUNT);
             var thread = new AccountPersistenceThread(consumer, accountManager, redissonClient,
                     appProperties);
             thread.setName(groupId + "-" + thread.getId());
@@ -110,7 +113,7 @@ public class Bootstrap {
     private void startTickerThread(int nThreads) {
         for (int i = 0; i < nThreads; i++) {
             String groupId = "Ticker";
-            var consumer = getEngineMessageKafkaConsumer(groupId);
+            var consumer = getEngineMessageKafkaConsumer(groupId, MessageType.TRADE);
             var thread = new TickerThread(consumer, tickerManager, appProperties);
             thread.setName(groupId + "-" + thread.getId());
             thread.setUncaughtExceptionHandler(getUncaughtExceptionHandler(() -> startTickerThread(1)));
@@ -121,7 +124,7 @@ public class Bootstrap {
     private void startOrderPersistenceThread(int nThreads) {
         for (int i = 0; i < nThreads; i++) {
             String groupId = "Order";
-            var consumer = getEngineMessageKafkaConsumer(groupId);
+            var consumer = getEngineMessageKafkaConsumer(groupId, MessageType.ORDER);
             var thread = new OrderPersistenceThread(consumer, orderManager, redissonClient, appProperties);
             thread.setName(groupId + "-" + thread.getId());
             thread.setUncaughtExceptionHandler(getUncaughtExceptionHandler(() ->
@@ -133,7 +136,7 @@ public class Bootstrap {
     private void startCandleMaker(int nThreads) {
         for (int i = 0; i < nThreads; i++) {
             String groupId = "CandlerMaker";
-            var consumer = getEngineMessageKafkaConsumer(groupId);
+            var consumer = getEngineMessageKafkaConsumer(groupId, MessageType.TRADE);
             var thread = new CandleMakerThread(consumer, candleRepository, appProperties);
             thread.setName(groupId + "-" + thread.getId());
             thread.setUncaughtExceptionHandler(getUncaughtExceptionHandler(() -> startCandleMaker(1)));
@@ -144,7 +147,7 @@ public class Bootstrap {
     private void startTradePersistenceThread(int nThreads) {
         for (int i = 0; i < nThreads; i++) {
             String groupId = "Trade1";
-            var consumer = getEngineMessageKafkaConsumer(groupId);
+            var consumer = getEngineMessageKafkaConsumer(groupId, MessageType.TRADE);
             var thread = new TradePersistenceThread(consumer, tradeManager, redissonClient, appProperties);
             thread.setName(groupId + "-" + thread.getId());
             thread.setUncaughtExceptionHandler(getUncaughtExceptionHandler(() ->
@@ -172,6 +175,15 @@ public class Bootstrap {
                 new MatchingEngineMessageDeserializer());
     }
 
+    /**
+     * Consumer that only decodes the given message types, the others are skipped by their type byte.
+     */
+    private KafkaConsumer<String, Message> getEngineMessageKafkaConsumer(String groupId, MessageType first,
+                                                                         MessageType... rest) {
+        return new KafkaConsumer<>(getProperties(groupId), new StringDeserializer(),
+                new MatchingEngineMessageDeserializer(first, rest));
+    }
+
     private KafkaConsumer<String, Command> getEngineCommandKafkaConsumer(String groupId) {
         return new KafkaConsumer<>(getProperties(groupId), new StringDeserializer(), new CommandDeserializer());
     }
@@ -184,6 +196,8 @@ public class Bootstrap {
         properties.put("session.timeout.ms", "30000");
         properties.put("auto.offset.reset", "earliest");
         properties.put("max.poll.records", 2000);
+        // sharded engines write messages and forwarded commands in transactions
+        properties.put("isolation.level", "read_committed");
         properties.put("key.deserializer.encoding", "UTF-8");
         properties.put("value.deserializer.encoding", "UTF-8");
         return properties;
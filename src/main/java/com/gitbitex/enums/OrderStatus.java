@@ -6,4 +6,8 @@ public enum OrderStatus {
     OPEN,
     CANCELLED,
     FILLED,
+    /**
+     * A stop order waiting for its trigger
+     */
+    PENDING,
 }
@@ -0,0 +1,19 @@
+package com.gitbitex.enums;
+
+/**
+ * What the engine does when an order would match a resting order of the same user.
+ */
+public enum SelfTradePrevention {
+    /**
+     * Cancel the remaining size of the incoming order.
+     */
+    CANCEL_NEWEST,
+    /**
+     * Cancel the resting order and keep matching.
+     */
+    CANCEL_OLDEST,
+    /**
+     * Decrease both orders by the smaller remaining size without a trade, cancelling the smaller one.
+     */
+    DECREMENT_AND_CANCEL,
+}
@@ -7,6 +7,7 @@ import com.gitbitex.marketdata.manager.AccountManager;
 import com.gitbitex.matchingengine.Account;
 import com.gitbitex.matchingengine.message.AccountMessage;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatch;
 import com.gitbitex.middleware.kafka.KafkaConsumerThread;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
@@ -56,14 +57,13 @@ public class AccountPersistenceThread extends KafkaConsumerThread<String, Messag
     protected void doPoll() {
         var records = consumer.poll(Duration.ofSeconds(5));
         Map<String, AccountEntity> accounts = new HashMap<>();
-        records.forEach(x -> {
-            Message message = x.value();
+        records.forEach(x -> MessageBatch.forEach(x.value(), message -> {
             if (message instanceof AccountMessage accountMessage) {
                 AccountEntity accountEntity = accountEntity(accountMessage);
                 accounts.put(accountEntity.getId(), accountEntity);
                 accountTopic.publishAsync(JSON.toJSONString(accountMessage));
             }
-        });
+        }));
         accountManager.saveAll(accounts.values());
 
         consumer.commitAsync();
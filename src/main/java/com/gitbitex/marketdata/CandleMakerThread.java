@@ -6,6 +6,7 @@ import com.gitbitex.marketdata.repository.CandleRepository;
 import com.gitbitex.marketdata.util.DateUtil;
 import com.gitbitex.matchingengine.Trade;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatch;
 import com.gitbitex.matchingengine.message.TradeMessage;
 import com.gitbitex.middleware.kafka.KafkaConsumerThread;
 import lombok.SneakyThrows;
@@ -66,8 +67,7 @@ public class CandleMakerThread extends KafkaConsumerThread<String, Message> impl
         }
 
         LinkedHashMap<String, Candle> candles = new LinkedHashMap<>();
-        records.forEach(x -> {
-            Message message = x.value();
+        records.forEach(x -> MessageBatch.forEach(x.value(), message -> {
             if (message instanceof TradeMessage) {
                 Trade trade = ((TradeMessage) message).getTrade();
                 for (int granularity : GRANULARITY_ARR) {
@@ -110,7 +110,7 @@ public class CandleMakerThread extends KafkaConsumerThread<String, Message> impl
                     candles.put(candle.getId(), candle);
                 }
             }
-        });
+        }));
 
         if (!candles.isEmpty()) {
             long t1 = System.currentTimeMillis();
@@ -8,6 +8,7 @@ import com.gitbitex.marketdata.orderbook.OrderBookSnapshotManager;
 import com.gitbitex.matchingengine.Order;
 import com.gitbitex.matchingengine.Product;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatch;
 import com.gitbitex.matchingengine.message.OrderMessage;
 import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
 import com.gitbitex.matchingengine.snapshot.EngineState;
@@ -49,15 +50,22 @@ public class OrderBookSnapshotThread extends KafkaConsumerThread<String, Message
     public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
         // restore order book from engine state
         stateStore.runInSession(session -> {
-            EngineState engineState = stateStore.getEngineState(session);
-            if (engineState != null && engineState.getMessageOffset() != null) {
-                this.consumer.seek(partitions.iterator().next(), engineState.getMessageOffset() + 1);
+            // partition i of the message topic is written by engine shard i
+            for (TopicPartition partition : partitions) {
+                EngineState engineState = stateStore.getEngineState(session, partition.partition());
+                if (engineState != null && engineState.getMessageOffset() != null) {
+                    this.consumer.seek(partition, engineState.getMessageOffset() + 1);
+                }
             }
 
             // restore order books
             for (Product product : this.stateStore.getProducts(session)) {
                 orderBooks.remove(product.getId());
                 for (Order order : stateStore.getOrders(session, product.getId())) {
+                    // the engine snapshot also holds the pending stop orders, they are not in the book yet
+                    if (order.getStatus() != OrderStatus.OPEN) {
+                        continue;
+                    }
                     OrderBook orderBook = getOrderBook(product.getId());
                     orderBook.addOrder(order);
                 }
@@ -73,8 +81,7 @@ public class OrderBookSnapshotThread extends KafkaConsumerThread<String, Message
     @Override
     protected void doPoll() {
         var records = consumer.poll(Duration.ofSeconds(5));
-        records.forEach(x -> {
-            Message message = x.value();
+        records.forEach(x -> MessageBatch.forEach(x.value(), message -> {
             if (message instanceof OrderMessage orderMessage) {
                 Order order = orderMessage.getOrder();
                 OrderBook orderBook = getOrderBook(order.getProductId());
@@ -85,7 +92,7 @@ public class OrderBookSnapshotThread extends KafkaConsumerThread<String, Message
                 }
                 orderBook.setSequence(orderMessage.getOrderBookSequence());
             }
-        });
+        }));
 
         orderBooks.entrySet().parallelStream().forEach(e -> {
             String productId=e.getKey();
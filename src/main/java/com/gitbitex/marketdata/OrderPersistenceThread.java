@@ -6,6 +6,7 @@ import com.gitbitex.marketdata.entity.OrderEntity;
 import com.gitbitex.marketdata.manager.OrderManager;
 import com.gitbitex.matchingengine.Order;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatch;
 import com.gitbitex.matchingengine.message.OrderMessage;
 import com.gitbitex.middleware.kafka.KafkaConsumerThread;
 import lombok.extern.slf4j.Slf4j;
@@ -53,14 +54,13 @@ public class OrderPersistenceThread extends KafkaConsumerThread<String, Message>
     protected void doPoll() {
         var records = consumer.poll(Duration.ofSeconds(5));
         Map<String, OrderEntity> orders = new HashMap<>();
-        records.forEach(x -> {
-            Message message = x.value();
+        records.forEach(x -> MessageBatch.forEach(x.value(), message -> {
             if (message instanceof OrderMessage orderMessage) {
                 OrderEntity orderEntity = orderEntity(orderMessage);
                 orders.put(orderEntity.getId(), orderEntity);
                 orderTopic.publishAsync(JSON.toJSONString(orderMessage));
             }
-        });
+        }));
         orderManager.saveAll(orders.values());
 
         consumer.commitAsync();
@@ -75,9 +75,14 @@ public class OrderPersistenceThread extends KafkaConsumerThread<String, Message>
         orderEntity.setUserId(order.getUserId());
         orderEntity.setStatus(order.getStatus());
         orderEntity.setPrice(order.getPrice());
+        orderEntity.setStopPrice(order.getStopPrice());
         orderEntity.setSize(order.getSize());
         orderEntity.setFunds(order.getFunds());
         orderEntity.setClientOid(order.getClientOid());
+        orderEntity.setPostOnly(order.isPostOnly());
+        if (order.getTimeInForce() != null) {
+            orderEntity.setTimeInForce(order.getTimeInForce().name());
+        }
         orderEntity.setSide(order.getSide());
         orderEntity.setType(order.getType());
         orderEntity.setTime(order.getTime());
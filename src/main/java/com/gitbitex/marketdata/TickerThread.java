@@ -6,6 +6,7 @@ import com.gitbitex.marketdata.manager.TickerManager;
 import com.gitbitex.marketdata.util.DateUtil;
 import com.gitbitex.matchingengine.Trade;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatch;
 import com.gitbitex.matchingengine.message.TradeMessage;
 import com.gitbitex.middleware.kafka.KafkaConsumerThread;
 import lombok.extern.slf4j.Slf4j;
@@ -61,12 +62,11 @@ public class TickerThread extends KafkaConsumerThread<String, Message> implement
             return;
         }
 
-        records.forEach(x -> {
-            Message message = x.value();
+        records.forEach(x -> MessageBatch.forEach(x.value(), message -> {
             if (message instanceof TradeMessage) {
                 refreshTicker(((TradeMessage) message).getTrade());
             }
-        });
+        }));
 
         consumer.commitSync();
     }
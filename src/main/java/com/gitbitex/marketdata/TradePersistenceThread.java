@@ -6,6 +6,7 @@ import com.gitbitex.marketdata.entity.TradeEntity;
 import com.gitbitex.marketdata.manager.TradeManager;
 import com.gitbitex.matchingengine.Trade;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatch;
 import com.gitbitex.matchingengine.message.TradeMessage;
 import com.gitbitex.middleware.kafka.KafkaConsumerThread;
 import lombok.extern.slf4j.Slf4j;
@@ -56,14 +57,13 @@ public class TradePersistenceThread extends KafkaConsumerThread<String, Message>
     protected void doPoll() {
         var records = consumer.poll(Duration.ofSeconds(5));
         Map<String, TradeEntity> trades = new HashMap<>();
-        records.forEach(x -> {
-            Message message = x.value();
+        records.forEach(x -> MessageBatch.forEach(x.value(), message -> {
             if (message instanceof TradeMessage tradeMessage) {
                 TradeEntity tradeEntity = tradeEntity(tradeMessage);
                 trades.put(tradeEntity.getId(), tradeEntity);
                 tradeTopic.publishAsync(JSON.toJSONString(tradeMessage));
             }
-        });
+        }));
         tradeManager.saveAll(trades.values());
 
         consumer.commitAsync();
@@ -25,6 +25,7 @@ public class OrderEntity {
     private BigDecimal filledSize;
     private BigDecimal executedValue;
     private BigDecimal price;
+    private BigDecimal stopPrice;
     private BigDecimal fillFees;
     private OrderType type;
     private OrderSide side;
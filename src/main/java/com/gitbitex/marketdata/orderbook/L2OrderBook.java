@@ -30,11 +30,11 @@ public class L2OrderBook {
         this.time = System.currentTimeMillis();
         this.asks = orderBook.getAsks().entrySet().stream()
                 .limit(depth)
-                .map(x -> new Line(x.getKey(), x.getValue().getRemainingSize(), x.getValue().size()))
+                .map(x -> new Line(x.getKey(), x.getValue().getRemainingSize(), x.getValue().getCount()))
                 .collect(Collectors.toList());
         this.bids = orderBook.getBids().entrySet().stream()
                 .limit(depth)
-                .map(x -> new Line(x.getKey(), x.getValue().getRemainingSize(), x.getValue().size()))
+                .map(x -> new Line(x.getKey(), x.getValue().getRemainingSize(), x.getValue().getCount()))
                 .collect(Collectors.toList());
     }
 
@@ -26,12 +26,12 @@ public class L3OrderBook {
         this.productId = orderBook.getProductId();
         this.tradeId = orderBook.getTradeSequence();
         this.time = System.currentTimeMillis();
-        this.asks = orderBook.getAsks().values().stream()
-                .flatMap(x -> x.values().stream())
+        this.asks = orderBook.getAsks().getLevels().stream()
+                .flatMap(x -> x.getOrders().stream())
                 .map(Line::new)
                 .collect(Collectors.toList());
-        this.bids = orderBook.getBids().values().stream()
-                .flatMap(x -> x.values().stream())
+        this.bids = orderBook.getBids().getLevels().stream()
+                .flatMap(x -> x.getOrders().stream())
                 .map(Line::new)
                 .collect(Collectors.toList());
     }
@@ -7,12 +7,16 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 
 @Getter
 public class OrderBook {
     private final String productId;
-    private final Depth asks = new Depth(Comparator.naturalOrder());
-    private final Depth bids = new Depth(Comparator.reverseOrder());
+    private final Depth asks = new Depth(Comparator.naturalOrder(), false);
+    private final Depth bids = new Depth(Comparator.reverseOrder(), false);
+    // orders arrive as new instances on every message, the depth needs the instance it linked
+    private final Map<String, Order> orderById = new HashMap<>();
     @Setter
     private long sequence;
 
@@ -27,11 +31,26 @@ public class OrderBook {
 
     public void addOrder(Order order) {
         var depth = order.getSide() == OrderSide.BUY ? bids : asks;
+        Order oldOrder = orderById.put(order.getId(), order);
+        if (oldOrder != null && oldOrder.getLevel() != null
+                && oldOrder.getPrice().compareTo(order.getPrice()) == 0
+                && oldOrder.getRemainingSize().compareTo(order.getRemainingSize()) >= 0) {
+            // the resting order was filled or amended down, keep its place in the queue. An amend to another price
+            // or a larger size puts it at the back
+            oldOrder.getLevel().replaceOrder(oldOrder, order);
+            return;
+        }
+        if (oldOrder != null) {
+            depth.removeOrder(oldOrder);
+        }
         depth.addOrder(order);
     }
 
     public void removeOrder(Order order) {
         var depth = order.getSide() == OrderSide.BUY ? bids : asks;
-        depth.removeOrder(order);
+        Order oldOrder = orderById.remove(order.getId());
+        if (oldOrder != null) {
+            depth.removeOrder(oldOrder);
+        }
     }
 }
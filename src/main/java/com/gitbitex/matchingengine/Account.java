@@ -1,5 +1,6 @@
 package com.gitbitex.matchingengine;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -8,11 +9,51 @@ import java.math.BigDecimal;
 @Getter
 @Setter
 public class Account implements Cloneable {
+    // built from the user id and currency when first read, the engine itself never needs it
+    @Getter(AccessLevel.NONE)
     private String id;
     private String userId;
     private String currency;
     private BigDecimal available;
     private BigDecimal hold;
+    // scaled copies of available/hold, only used in fixed-point mode
+    private transient int scale;
+    private transient long scaledAvailable;
+    private transient long scaledHold;
+    // epoch of the snapshot dirty set the account was last added to, see SnapshotDirtySet
+    private transient long snapshotEpoch;
+    // hash the account last added to the state digest, see StateDigest
+    private transient long stateHash;
+
+    public String getId() {
+        if (id == null && userId != null && currency != null) {
+            id = userId + "-" + currency;
+        }
+        return id;
+    }
+
+    /**
+     * Loads the scaled fields from the decimal fields.
+     */
+    public void toScaled(int scale) {
+        this.scale = scale;
+        this.scaledAvailable = FixedPoint.toLong(available, scale);
+        this.scaledHold = FixedPoint.toLong(hold, scale);
+    }
+
+    public void rescale(int scale) {
+        this.scaledAvailable = FixedPoint.rescale(scaledAvailable, this.scale, scale);
+        this.scaledHold = FixedPoint.rescale(scaledHold, this.scale, scale);
+        this.scale = scale;
+    }
+
+    /**
+     * Writes the scaled fields back to the decimal fields before the account leaves the engine.
+     */
+    public void fromScaled() {
+        this.available = FixedPoint.toBigDecimal(scaledAvailable, scale);
+        this.hold = FixedPoint.toBigDecimal(scaledHold, scale);
+    }
 
     @Override
     public Account clone() {
@@ -2,6 +2,7 @@ package com.gitbitex.matchingengine;
 
 import com.alibaba.fastjson.JSON;
 import com.gitbitex.enums.OrderSide;
+import com.gitbitex.matchingengine.command.SettleCommand;
 import com.gitbitex.matchingengine.message.AccountMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,40 +10,110 @@ import org.springframework.lang.Nullable;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Slf4j
 @RequiredArgsConstructor
-public class AccountBook {
-    private final Map<String, Map<String, Account>> accounts = new HashMap<>();
+public class AccountBook implements Ledger {
+    // user ids and currencies are interned to dense handles, accounts are keyed by both handles packed in a long
+    private final SymbolTable userIds = new SymbolTable(1024);
+    private final SymbolTable currencies = new SymbolTable();
+    private final LongObjectMap<Account> accounts = new LongObjectMap<>(1024);
+    // scale of each currency's balances in fixed-point mode, it only grows so no balance is ever rounded
+    private final Map<String, Integer> currencyScales = new HashMap<>();
+    // accounts changed since the last flush, in the order they were first touched
+    private final Set<Account> dirtyAccounts = new LinkedHashSet<>();
+    // reused for every message, the message sender encodes a message before send returns
+    private final AccountMessage accountMessage = new AccountMessage();
     private final MessageSender messageSender;
     private final AtomicLong messageSequence;
+    private final boolean fixedPoint;
+    // collects the accounts changed since the last engine snapshot, null if the engine takes no snapshots
+    @Nullable
+    private final SnapshotDirtySet snapshotDirtySet;
+    // null if the engine keeps no state digest
+    @Nullable
+    private final StateDigest stateDigest;
 
     public void add(Account account) {
-        this.accounts.computeIfAbsent(account.getUserId(), x -> new HashMap<>())
-                .put(account.getCurrency(), account);
+        if (fixedPoint) {
+            int scale = Math.max(FixedPoint.scaleOf(account.getAvailable()), FixedPoint.scaleOf(account.getHold()));
+            account.toScaled(ensureScale(account.getCurrency(), scale));
+        }
+        accounts.put(accountKey(userIds.intern(account.getUserId()), currencies.intern(account.getCurrency())),
+                account);
     }
 
     @Nullable
     public Account getAccount(String userId, String currency) {
-        Map<String, Account> accountMap = accounts.get(userId);
-        if (accountMap != null) {
-            return accountMap.get(currency);
+        int userHandle = userIds.handleOf(userId);
+        int currencyHandle = currencies.handleOf(currency);
+        if (userHandle < 0 || currencyHandle < 0) {
+            return null;
+        }
+        return accounts.get(accountKey(userHandle, currencyHandle));
+    }
+
+    /**
+     * Calls {@code action} for every account, with its decimal balances up to date.
+     */
+    public void forEachAccount(Consumer<Account> action) {
+        accounts.forEachValue(account -> {
+            if (fixedPoint) {
+                account.fromScaled();
+            }
+            action.accept(account);
+        });
+    }
+
+    /**
+     * Makes sure the balances of the product's currencies can hold its sizes and funds exactly.
+     */
+    public void addProduct(Product product) {
+        if (fixedPoint) {
+            ensureScale(product.getBaseCurrency(), product.getBaseScale());
+            ensureScale(product.getQuoteCurrency(), product.fundsScale());
         }
-        return null;
     }
 
     public void deposit(String userId, String currency, BigDecimal amount, String transactionId) {
         Account account = getAccount(userId, currency);
-        if (account == null) {
-            account = createAccount(userId, currency);
+        if (fixedPoint) {
+            // checked before any state changes, the same command is replayed after a failure
+            int scale = Math.max(FixedPoint.scaleOf(amount), currencyScales.getOrDefault(currency, 0));
+            long scaledAmount;
+            try {
+                checkScale(currency, scale);
+                scaledAmount = FixedPoint.toLong(amount, scale);
+                if (account != null) {
+                    Math.addExact(FixedPoint.rescale(account.getScaledAvailable(), account.getScale(), scale),
+                            scaledAmount);
+                }
+            } catch (ArithmeticException e) {
+                logger.warn("deposit rejected, reason: BAD_SCALE: {} {} {} {}", transactionId, userId, currency,
+                        amount);
+                return;
+            }
+            ensureScale(currency, scale);
+            if (account == null) {
+                account = createAccount(userId, currency);
+            }
+            account.setScaledAvailable(account.getScaledAvailable() + scaledAmount);
+        } else {
+            if (account == null) {
+                account = createAccount(userId, currency);
+            }
+            account.setAvailable(account.getAvailable().add(amount));
         }
-        account.setAvailable(account.getAvailable().add(amount));
 
-        messageSender.send(accountMessage(account.clone()));
+        dirtyAccounts.add(account);
     }
 
+    @Override
     public boolean hold(String userId, String currency, BigDecimal amount) {
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
             logger.error("amount should greater than 0: {}", amount);
@@ -55,10 +126,35 @@ public class AccountBook {
         account.setAvailable(account.getAvailable().subtract(amount));
         account.setHold(account.getHold().add(amount));
 
-        messageSender.send(accountMessage(account.clone()));
+        dirtyAccounts.add(account);
         return true;
     }
 
+    /**
+     * Fixed-point variant of {@link #hold(String, String, BigDecimal)}, the amount is scaled by {@code scale}.
+     */
+    @Override
+    public boolean hold(String userId, String currency, long amount, int scale) {
+        if (amount <= 0) {
+            logger.error("amount should greater than 0: {}", amount);
+            return false;
+        }
+        Account account = getAccount(userId, currency);
+        if (account == null) {
+            return false;
+        }
+        amount = FixedPoint.rescale(amount, scale, account.getScale());
+        if (account.getScaledAvailable() < amount) {
+            return false;
+        }
+        account.setScaledAvailable(account.getScaledAvailable() - amount);
+        account.setScaledHold(account.getScaledHold() + amount);
+
+        dirtyAccounts.add(account);
+        return true;
+    }
+
+    @Override
     public void unhold(String userId, String currency, BigDecimal amount) {
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new NullPointerException("amount should greater than 0");
@@ -70,29 +166,39 @@ public class AccountBook {
         account.setAvailable(account.getAvailable().add(amount));
         account.setHold(account.getHold().subtract(amount));
 
-        messageSender.send(accountMessage(account.clone()));
+        dirtyAccounts.add(account);
     }
 
-    public void exchange(String takerUserId, String makerUserId,
-                         String baseCurrency, String quoteCurrency,
-                         OrderSide takerSide, BigDecimal size, BigDecimal funds) {
-        Account takerBaseAccount = getAccount(takerUserId, baseCurrency);
-        Account takerQuoteAccount = getAccount(takerUserId, quoteCurrency);
-        Account makerBaseAccount = getAccount(makerUserId, baseCurrency);
-        Account makerQuoteAccount = getAccount(makerUserId, quoteCurrency);
-
-        if (takerBaseAccount == null) {
-            takerBaseAccount = createAccount(takerUserId, baseCurrency);
-        }
-        if (takerQuoteAccount == null) {
-            takerQuoteAccount = createAccount(takerUserId, quoteCurrency);
+    /**
+     * Fixed-point variant of {@link #unhold(String, String, BigDecimal)}, the amount is scaled by {@code scale}.
+     */
+    @Override
+    public void unhold(String userId, String currency, long amount, int scale) {
+        if (amount <= 0) {
+            throw new NullPointerException("amount should greater than 0");
         }
-        if (makerBaseAccount == null) {
-            makerBaseAccount = createAccount(makerUserId, baseCurrency);
+        Account account = getAccount(userId, currency);
+        if (account == null) {
+            throw new NullPointerException("insufficient funds");
         }
-        if (makerQuoteAccount == null) {
-            makerQuoteAccount = createAccount(makerUserId, quoteCurrency);
+        amount = FixedPoint.rescale(amount, scale, account.getScale());
+        if (account.getScaledHold() < amount) {
+            throw new NullPointerException("insufficient funds");
         }
+        account.setScaledAvailable(account.getScaledAvailable() + amount);
+        account.setScaledHold(account.getScaledHold() - amount);
+
+        dirtyAccounts.add(account);
+    }
+
+    @Override
+    public void exchange(String takerUserId, String makerUserId,
+                         String baseCurrency, String quoteCurrency,
+                         OrderSide takerSide, BigDecimal size, BigDecimal funds) {
+        Account takerBaseAccount = getOrCreateAccount(takerUserId, baseCurrency);
+        Account takerQuoteAccount = getOrCreateAccount(takerUserId, quoteCurrency);
+        Account makerBaseAccount = getOrCreateAccount(makerUserId, baseCurrency);
+        Account makerQuoteAccount = getOrCreateAccount(makerUserId, quoteCurrency);
 
         if (takerSide == OrderSide.BUY) {
             takerBaseAccount.setAvailable(takerBaseAccount.getAvailable().add(size));
@@ -111,33 +217,180 @@ public class AccountBook {
         validateAccount(makerBaseAccount);
         validateAccount(makerQuoteAccount);
 
-        messageSender.send(accountMessage(takerBaseAccount.clone()));
-        messageSender.send(accountMessage(takerQuoteAccount.clone()));
-        messageSender.send(accountMessage(makerBaseAccount.clone()));
-        messageSender.send(accountMessage(makerQuoteAccount.clone()));
+        dirtyAccounts.add(takerBaseAccount);
+        dirtyAccounts.add(takerQuoteAccount);
+        dirtyAccounts.add(makerBaseAccount);
+        dirtyAccounts.add(makerQuoteAccount);
+    }
+
+    /**
+     * Fixed-point variant of {@link #exchange(String, String, String, String, OrderSide, BigDecimal, BigDecimal)},
+     * the size and funds are scaled by {@code sizeScale} and {@code fundsScale}.
+     */
+    @Override
+    public void exchange(String takerUserId, String makerUserId,
+                         String baseCurrency, String quoteCurrency,
+                         OrderSide takerSide, long size, int sizeScale, long funds, int fundsScale) {
+        Account takerBaseAccount = getOrCreateAccount(takerUserId, baseCurrency);
+        Account takerQuoteAccount = getOrCreateAccount(takerUserId, quoteCurrency);
+        Account makerBaseAccount = getOrCreateAccount(makerUserId, baseCurrency);
+        Account makerQuoteAccount = getOrCreateAccount(makerUserId, quoteCurrency);
+
+        // accounts of the same currency always share the same scale
+        size = FixedPoint.rescale(size, sizeScale, takerBaseAccount.getScale());
+        funds = FixedPoint.rescale(funds, fundsScale, takerQuoteAccount.getScale());
+
+        if (takerSide == OrderSide.BUY) {
+            takerBaseAccount.setScaledAvailable(takerBaseAccount.getScaledAvailable() + size);
+            takerQuoteAccount.setScaledHold(takerQuoteAccount.getScaledHold() - funds);
+            makerBaseAccount.setScaledHold(makerBaseAccount.getScaledHold() - size);
+            makerQuoteAccount.setScaledAvailable(makerQuoteAccount.getScaledAvailable() + funds);
+        } else {
+            takerBaseAccount.setScaledHold(takerBaseAccount.getScaledHold() - size);
+            takerQuoteAccount.setScaledAvailable(takerQuoteAccount.getScaledAvailable() + funds);
+            makerBaseAccount.setScaledAvailable(makerBaseAccount.getScaledAvailable() + size);
+            makerQuoteAccount.setScaledHold(makerQuoteAccount.getScaledHold() - funds);
+        }
+
+        validateAccount(takerBaseAccount);
+        validateAccount(takerQuoteAccount);
+        validateAccount(makerBaseAccount);
+        validateAccount(makerQuoteAccount);
+
+        dirtyAccounts.add(takerBaseAccount);
+        dirtyAccounts.add(takerQuoteAccount);
+        dirtyAccounts.add(makerBaseAccount);
+        dirtyAccounts.add(makerQuoteAccount);
+    }
+
+    /**
+     * Applies a balance change sent by a product shard.
+     */
+    public void settle(SettleCommand.Settlement settlement) {
+        switch (settlement.getType()) {
+            case UNHOLD -> {
+                if (fixedPoint) {
+                    int scale = FixedPoint.scaleOf(settlement.getAmount());
+                    unhold(settlement.getUserId(), settlement.getCurrency(),
+                            FixedPoint.toLong(settlement.getAmount(), scale), scale);
+                } else {
+                    unhold(settlement.getUserId(), settlement.getCurrency(), settlement.getAmount());
+                }
+            }
+            case EXCHANGE -> {
+                if (fixedPoint) {
+                    int sizeScale = FixedPoint.scaleOf(settlement.getSize());
+                    int fundsScale = FixedPoint.scaleOf(settlement.getFunds());
+                    exchange(settlement.getTakerUserId(), settlement.getMakerUserId(), settlement.getBaseCurrency(),
+                            settlement.getQuoteCurrency(), settlement.getTakerSide(),
+                            FixedPoint.toLong(settlement.getSize(), sizeScale), sizeScale,
+                            FixedPoint.toLong(settlement.getFunds(), fundsScale), fundsScale);
+                } else {
+                    exchange(settlement.getTakerUserId(), settlement.getMakerUserId(), settlement.getBaseCurrency(),
+                            settlement.getQuoteCurrency(), settlement.getTakerSide(), settlement.getSize(),
+                            settlement.getFunds());
+                }
+            }
+        }
     }
 
     private void validateAccount(Account account) {
-        if (account.getAvailable().compareTo(BigDecimal.ZERO) < 0 || account.getHold().compareTo(BigDecimal.ZERO) < 0) {
+        boolean negative = fixedPoint
+                ? account.getScaledAvailable() < 0 || account.getScaledHold() < 0
+                : account.getAvailable().compareTo(BigDecimal.ZERO) < 0 || account.getHold().compareTo(BigDecimal.ZERO) < 0;
+        if (negative) {
+            if (fixedPoint) {
+                account.fromScaled();
+            }
             throw new RuntimeException("bad account: " + JSON.toJSONString(account));
         }
     }
 
+    private Account getOrCreateAccount(String userId, String currency) {
+        Account account = getAccount(userId, currency);
+        if (account == null) {
+            account = createAccount(userId, currency);
+        }
+        return account;
+    }
+
     public Account createAccount(String userId, String currency) {
         Account account = new Account();
-        account.setId(userId + "-" + currency);
         account.setUserId(userId);
         account.setCurrency(currency);
         account.setAvailable(BigDecimal.ZERO);
         account.setHold(BigDecimal.ZERO);
-        this.accounts.computeIfAbsent(account.getUserId(), x -> new HashMap<>()).put(account.getCurrency(), account);
+        if (fixedPoint) {
+            account.setScale(currencyScales.getOrDefault(currency, 0));
+        }
+        accounts.put(accountKey(userIds.intern(userId), currencies.intern(currency)), account);
         return account;
     }
 
+    private static long accountKey(int userHandle, int currencyHandle) {
+        return ((long) userHandle << 32) | currencyHandle;
+    }
+
+    /**
+     * Raises the scale of the currency to at least {@code scale}, rescaling existing balances if needed. Nothing is
+     * changed if a balance does not fit the new scale.
+     */
+    private int ensureScale(String currency, int scale) {
+        Integer currentScale = currencyScales.get(currency);
+        if (currentScale != null && currentScale >= scale) {
+            return currentScale;
+        }
+        checkScale(currency, scale);
+        if (currentScale != null) {
+            logger.info("rescaling {} balances from {} to {}", currency, currentScale, scale);
+        }
+        accounts.forEachValue(account -> {
+            if (account.getCurrency().equals(currency)) {
+                account.rescale(scale);
+            }
+        });
+        currencyScales.put(currency, scale);
+        return scale;
+    }
+
+    /**
+     * Throws {@link ArithmeticException} if the balances of the currency cannot be held at {@code scale}.
+     */
+    private void checkScale(String currency, int scale) {
+        if (scale > FixedPoint.MAX_SCALE) {
+            throw new ArithmeticException("scale out of range: " + scale);
+        }
+        accounts.forEachValue(account -> {
+            if (account.getCurrency().equals(currency)) {
+                FixedPoint.rescale(account.getScaledAvailable(), account.getScale(), scale);
+                FixedPoint.rescale(account.getScaledHold(), account.getScale(), scale);
+            }
+        });
+    }
+
+    /**
+     * Sends one message with the final state of every account changed since the last call. Called once at the end
+     * of each command, so a taker sweeping many makers sends its accounts once.
+     */
+    public void flushAccountMessages() {
+        for (Account account : dirtyAccounts) {
+            messageSender.send(accountMessage(account));
+        }
+        dirtyAccounts.clear();
+    }
+
     private AccountMessage accountMessage(Account account) {
-        AccountMessage message = new AccountMessage();
-        message.setSequence(messageSequence.incrementAndGet());
-        message.setAccount(account);
-        return message;
+        if (fixedPoint) {
+            account.fromScaled();
+        }
+        if (snapshotDirtySet != null) {
+            snapshotDirtySet.add(account);
+        }
+        if (stateDigest != null) {
+            stateDigest.update(account);
+        }
+        accountMessage.setSequence(messageSequence.incrementAndGet());
+        accountMessage.setAccount(account);
+        return accountMessage;
     }
 }
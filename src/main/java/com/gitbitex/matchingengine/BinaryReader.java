@@ -0,0 +1,133 @@
+package com.gitbitex.matchingengine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Reader of the binary wire format, see {@link BinaryWriter}.
+ */
+public class BinaryReader {
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+    // version of the record, read with its header
+    private byte version;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Checks the magic and version bytes and returns the command or message type byte. Records of older versions
+     * are read too, fields they do not have are skipped by the decoders, see {@link #getVersion()}.
+     */
+    public byte readHeader() {
+        if (readByte() != BinaryWriter.MAGIC) {
+            throw new RuntimeException("not a binary record");
+        }
+        version = readByte();
+        if (version < 1 || version > BinaryWriter.VERSION) {
+            throw new RuntimeException("unsupported binary format version: " + version);
+        }
+        return readByte();
+    }
+
+    public byte getVersion() {
+        return version;
+    }
+
+    public byte readByte() {
+        if (position >= limit) {
+            throw new RuntimeException("unexpected end of record");
+        }
+        return buffer[position++];
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public long readLong() {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new RuntimeException("malformed varint");
+    }
+
+    public int readInt() {
+        return Math.toIntExact(readLong());
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public Long readNullableLong() {
+        return readBoolean() ? readLong() : null;
+    }
+
+    public Integer readNullableInt() {
+        return readBoolean() ? readInt() : null;
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        checkRemaining(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public BigDecimal readDecimal() {
+        byte kind = readByte();
+        if (kind == 0) {
+            return null;
+        }
+        int scale = readInt();
+        if (kind == 1) {
+            return BigDecimal.valueOf(readLong(), scale);
+        }
+        return new BigDecimal(new BigInteger(readBytes()), scale);
+    }
+
+    public Date readDate() {
+        Long time = readNullableLong();
+        return time != null ? new Date(time) : null;
+    }
+
+    public <E extends Enum<E>> E readEnum(E[] values) {
+        int ordinal = readInt();
+        return ordinal >= 0 ? values[ordinal] : null;
+    }
+
+    public byte[] readBytes() {
+        int length = readInt();
+        checkRemaining(length);
+        byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+        position += length;
+        return bytes;
+    }
+
+    private void checkRemaining(int length) {
+        if (length > limit - position) {
+            throw new RuntimeException("unexpected end of record");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.gitbitex.matchingengine;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writer of the binary wire format of engine commands and messages.
+ * <p>
+ * A binary record starts with {@link #MAGIC}, the format version and the command or message type byte, followed by
+ * the fields of the type in a fixed order. Integers are zigzag varints, nullable values carry a presence byte. JSON
+ * records start with the type byte itself, which is never {@link #MAGIC}, so readers tell both formats apart.
+ */
+public class BinaryWriter {
+    public static final byte MAGIC = (byte) 0x80;
+    /**
+     * Version of the layouts, raised whenever a field is added to one. Readers decode every version up to this one.
+     * <ul>
+     * <li>2: time in force and expire time of place order commands and orders</li>
+     * <li>3: post-only flag of place order commands, self-trade prevention of place order commands and orders</li>
+     * <li>4: stop price of place order commands and orders</li>
+     * <li>5: hold asked for and held by the account shard of amend order commands</li>
+     * </ul>
+     */
+    public static final byte VERSION = 5;
+    /**
+     * Producer config key switching the engine serializers to the binary format.
+     */
+    public static final String BINARY_FORMAT_CONFIG = "gbe.binary-format";
+
+    private byte[] buffer;
+    private int position;
+
+    public BinaryWriter() {
+        this(256);
+    }
+
+    public BinaryWriter(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    public static boolean isBinaryFormat(Map<String, ?> configs) {
+        Object value = configs.get(BINARY_FORMAT_CONFIG);
+        return value != null && Boolean.parseBoolean(value.toString());
+    }
+
+    public BinaryWriter writeHeader(byte type) {
+        writeByte(MAGIC);
+        writeByte(VERSION);
+        return writeByte(type);
+    }
+
+    public BinaryWriter writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+        return this;
+    }
+
+    public BinaryWriter writeBoolean(boolean value) {
+        return writeByte(value ? (byte) 1 : 0);
+    }
+
+    public BinaryWriter writeLong(long value) {
+        long v = (value << 1) ^ (value >> 63);
+        ensureCapacity(10);
+        while ((v & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[position++] = (byte) v;
+        return this;
+    }
+
+    public BinaryWriter writeInt(int value) {
+        return writeLong(value);
+    }
+
+    public BinaryWriter writeNullableLong(Long value) {
+        writeBoolean(value != null);
+        return value != null ? writeLong(value) : this;
+    }
+
+    public BinaryWriter writeNullableInt(Integer value) {
+        writeBoolean(value != null);
+        return value != null ? writeInt(value) : this;
+    }
+
+    public BinaryWriter writeString(String value) {
+        if (value == null) {
+            return writeInt(-1);
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                return writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        // ASCII, which ids always are, is its own UTF-8 encoding
+        writeInt(length);
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the scale and the unscaled value, so the decimal is read back with the same scale.
+     */
+    public BinaryWriter writeDecimal(BigDecimal value) {
+        if (value == null) {
+            return writeByte((byte) 0);
+        }
+        if (value.unscaledValue().bitLength() < 64) {
+            writeByte((byte) 1);
+            writeInt(value.scale());
+            return writeLong(value.unscaledValue().longValue());
+        }
+        writeByte((byte) 2);
+        writeInt(value.scale());
+        return writeBytes(value.unscaledValue().toByteArray());
+    }
+
+    public BinaryWriter writeDate(Date value) {
+        return writeNullableLong(value != null ? value.getTime() : null);
+    }
+
+    public BinaryWriter writeEnum(Enum<?> value) {
+        return writeInt(value != null ? value.ordinal() : -1);
+    }
+
+    /**
+     * Writes the length and the bytes.
+     */
+    public BinaryWriter writeBytes(byte[] bytes) {
+        writeInt(bytes.length);
+        return writeRaw(bytes);
+    }
+
+    /**
+     * Appends bytes as they are, without a length.
+     */
+    public BinaryWriter writeRaw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        return this;
+    }
+
+    /**
+     * Writes a 4-byte big-endian int, as {@link java.nio.ByteBuffer} does, for the framing of batch records.
+     */
+    public BinaryWriter writeFixedInt(int value) {
+        ensureCapacity(4);
+        setFixedInt(position, value);
+        position += 4;
+        return this;
+    }
+
+    /**
+     * Overwrites a 4-byte int written earlier, to fill in a length or count once it is known.
+     */
+    public void setFixedInt(int at, int value) {
+        buffer[at] = (byte) (value >>> 24);
+        buffer[at + 1] = (byte) (value >>> 16);
+        buffer[at + 2] = (byte) (value >>> 8);
+        buffer[at + 3] = (byte) value;
+    }
+
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Empties the writer, keeping its buffer for the next record.
+     */
+    public void reset() {
+        position = 0;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Copies the written bytes into {@code target}, which must have room for them.
+     */
+    public void writeTo(ByteBuffer target) {
+        target.put(buffer, 0, position);
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+}
@@ -1,27 +1,49 @@
 package com.gitbitex.matchingengine;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Map;
 import java.util.TreeMap;
 
-public class Depth extends TreeMap<BigDecimal, PriceGroupedOrderCollection> {
+public class Depth extends TreeMap<BigDecimal, PriceGroupedOrderCollection> implements PriceLevels {
+    private final boolean fixedPoint;
 
-    public Depth(Comparator<BigDecimal> comparator) {
+    public Depth(Comparator<BigDecimal> comparator, boolean fixedPoint) {
         super(comparator);
+        this.fixedPoint = fixedPoint;
     }
 
+    @Override
     public void addOrder(Order order) {
-        this.computeIfAbsent(order.getPrice(), k -> new PriceGroupedOrderCollection()).put(order.getId(), order);
+        this.computeIfAbsent(order.getPrice(), k -> new PriceGroupedOrderCollection(k, order.getScaledPrice(),
+                fixedPoint))
+                .addOrder(order);
     }
 
-    public void removeOrder(Order order) {
-        var orders = get(order.getPrice());
-        if (orders == null) {
-            return;
-        }
-        orders.remove(order.getId());
-        if (orders.isEmpty()) {
-            remove(order.getPrice());
-        }
+    @Override
+    public PriceGroupedOrderCollection getBestLevel() {
+        return isEmpty() ? null : get(firstKey());
+    }
+
+    @Override
+    public PriceGroupedOrderCollection nextLevel(PriceGroupedOrderCollection level) {
+        Map.Entry<BigDecimal, PriceGroupedOrderCollection> entry = higherEntry(level.getPrice());
+        return entry != null ? entry.getValue() : null;
+    }
+
+    @Override
+    public void removeLevel(PriceGroupedOrderCollection level) {
+        remove(level.getPrice());
+    }
+
+    @Override
+    public int levelCount() {
+        return size();
+    }
+
+    @Override
+    public Collection<PriceGroupedOrderCollection> getLevels() {
+        return values();
     }
 }
@@ -0,0 +1,46 @@
+package com.gitbitex.matchingengine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry the meters of the running engines are registered in, with the values their gauges read.
+ */
+@Component
+public class EngineMeterRegistry {
+    @Getter
+    private final MeterRegistry registry;
+    // a registered gauge keeps reading the value it was registered with, engines created after a rebalance share it
+    private final Map<String, AtomicLong> gaugeValues = new ConcurrentHashMap<>();
+
+    public EngineMeterRegistry(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * A registry whose meters are not published. Engines use it until they run, so that a standby replaying the
+     * commands of a shard does not report them a second time.
+     */
+    public static EngineMeterRegistry noop() {
+        return new EngineMeterRegistry(new CompositeMeterRegistry());
+    }
+
+    /**
+     * Returns the value of the gauge, registering the gauge on first use.
+     */
+    public AtomicLong gaugeValue(String name, Tags tags) {
+        return gaugeValues.computeIfAbsent(name + tags, k -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder(name, value, AtomicLong::get).tags(tags).register(registry);
+            return value;
+        });
+    }
+}
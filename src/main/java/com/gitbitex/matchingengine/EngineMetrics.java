@@ -0,0 +1,169 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.matchingengine.command.CommandType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.lang.Nullable;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters of a matching engine shard, per product and per command type.
+ * <p>
+ * Every meter is registered when the engine or an order book is created, so recording on the engine thread only
+ * looks meters up and never builds tags. Fills, levels swept and hold failures are taken from the running totals of
+ * the order book after each command. Gauges read values the engine thread publishes after each command, it never
+ * hands its own structures to the scraping thread.
+ */
+public class EngineMetrics {
+    private static final String NO_PRODUCT = "none";
+    private static final Set<CommandType> ORDER_BOOK_COMMANDS = EnumSet.of(CommandType.PLACE_ORDER,
+            CommandType.CANCEL_ORDER, CommandType.BATCH_PLACE_ORDER, CommandType.MASS_CANCEL,
+            CommandType.AMEND_ORDER);
+    // commands that match orders, fills and levels swept are recorded for them only
+    private static final Set<CommandType> MATCHING_COMMANDS = EnumSet.of(CommandType.PLACE_ORDER,
+            CommandType.BATCH_PLACE_ORDER, CommandType.AMEND_ORDER);
+
+    private final EngineMeterRegistry registry;
+    private final String shard;
+    private final Counter commandsProcessed;
+    private final Map<CommandType, Timer> commandTimers = new EnumMap<>(CommandType.class);
+    private final Map<String, ProductMetrics> productMetrics = new HashMap<>();
+    private final AtomicLong consumerLag;
+
+    public EngineMetrics(EngineMeterRegistry registry, int shard) {
+        this.registry = registry;
+        this.shard = String.valueOf(shard);
+        this.commandsProcessed = Counter.builder("gbe.matching-engine.command.processed")
+                .tag("shard", this.shard)
+                .register(registry.getRegistry());
+        for (CommandType type : CommandType.values()) {
+            commandTimers.put(type, commandTimer(type, NO_PRODUCT));
+        }
+        this.consumerLag = registry.gaugeValue("gbe.matching-engine.consumer.lag", Tags.of("shard", this.shard));
+    }
+
+    /**
+     * Registers the meters of an order book, called when the book is created.
+     */
+    public void addOrderBook(OrderBook orderBook) {
+        productMetrics.put(orderBook.getProductId(), new ProductMetrics(orderBook));
+    }
+
+    /**
+     * Records a command that took {@code nanos}. {@code orderBook} is the book it ran on, null if it ran on none of
+     * this shard's books.
+     */
+    public void recordCommand(CommandType type, @Nullable OrderBook orderBook, long nanos) {
+        commandsProcessed.increment();
+        ProductMetrics metrics = orderBook != null ? productMetrics.get(orderBook.getProductId()) : null;
+        if (metrics == null) {
+            commandTimers.get(type).record(nanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        Timer timer = metrics.commandTimers.get(type);
+        (timer != null ? timer : commandTimers.get(type)).record(nanos, TimeUnit.NANOSECONDS);
+        if (MATCHING_COMMANDS.contains(type)) {
+            metrics.record(orderBook);
+        }
+        metrics.publish(orderBook);
+    }
+
+    /**
+     * Publishes the state of every book, for commands that touched more than one.
+     */
+    public void publishOrderBooks(Iterable<OrderBook> orderBooks) {
+        for (OrderBook orderBook : orderBooks) {
+            ProductMetrics metrics = productMetrics.get(orderBook.getProductId());
+            if (metrics != null) {
+                metrics.publish(orderBook);
+            }
+        }
+    }
+
+    /**
+     * Commands in the partition after the last executed one.
+     */
+    public void setConsumerLag(long lag) {
+        consumerLag.set(lag);
+    }
+
+    private Timer commandTimer(CommandType type, String productId) {
+        return Timer.builder("gbe.matching-engine.command.execution")
+                .tags("shard", shard, "product", productId, "command", type.name().toLowerCase())
+                .publishPercentileHistogram()
+                .register(registry.getRegistry());
+    }
+
+    private class ProductMetrics {
+        private final Map<CommandType, Timer> commandTimers = new EnumMap<>(CommandType.class);
+        private final DistributionSummary fills;
+        private final DistributionSummary levelsSwept;
+        private final Counter holdFailures;
+        private final AtomicLong bidLevels;
+        private final AtomicLong askLevels;
+        private final AtomicLong restingOrders;
+        private final AtomicLong stopOrders;
+        private long lastTradeSequence;
+        private long lastLevelsSwept;
+        private long lastHoldFailures;
+
+        private ProductMetrics(OrderBook orderBook) {
+            String productId = orderBook.getProductId();
+            for (CommandType type : ORDER_BOOK_COMMANDS) {
+                commandTimers.put(type, commandTimer(type, productId));
+            }
+            Tags tags = Tags.of("shard", shard, "product", productId);
+            this.fills = DistributionSummary.builder("gbe.matching-engine.order-book.fills")
+                    .description("trades per command")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry.getRegistry());
+            this.levelsSwept = DistributionSummary.builder("gbe.matching-engine.order-book.levels-swept")
+                    .description("price levels matched against per command")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry.getRegistry());
+            this.holdFailures = Counter.builder("gbe.matching-engine.order-book.hold-failures")
+                    .tags(tags)
+                    .register(registry.getRegistry());
+            this.bidLevels = registry.gaugeValue("gbe.matching-engine.order-book.levels", tags.and("side", "buy"));
+            this.askLevels = registry.gaugeValue("gbe.matching-engine.order-book.levels", tags.and("side", "sell"));
+            this.restingOrders = registry.gaugeValue("gbe.matching-engine.order-book.orders", tags);
+            this.stopOrders = registry.gaugeValue("gbe.matching-engine.order-book.stop-orders", tags);
+            this.lastTradeSequence = orderBook.getTradeSequence();
+            this.lastLevelsSwept = orderBook.getLevelsSwept();
+            this.lastHoldFailures = orderBook.getHoldFailures();
+            publish(orderBook);
+        }
+
+        /**
+         * Records what the book did since the last matching command.
+         */
+        private void record(OrderBook orderBook) {
+            fills.record(orderBook.getTradeSequence() - lastTradeSequence);
+            levelsSwept.record(orderBook.getLevelsSwept() - lastLevelsSwept);
+            lastTradeSequence = orderBook.getTradeSequence();
+            lastLevelsSwept = orderBook.getLevelsSwept();
+        }
+
+        private void publish(OrderBook orderBook) {
+            if (orderBook.getHoldFailures() != lastHoldFailures) {
+                holdFailures.increment(orderBook.getHoldFailures() - lastHoldFailures);
+                lastHoldFailures = orderBook.getHoldFailures();
+            }
+            bidLevels.set(orderBook.getBids().levelCount());
+            askLevels.set(orderBook.getAsks().levelCount());
+            restingOrders.set(orderBook.getOrderById().size());
+            stopOrders.set(orderBook.getStopBook().size());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.CommandSerializer;
+import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Serializer of the engine's producer, which writes messages, commands forwarded to other shards and batch records
+ * the {@link MessageSender} has already encoded.
+ */
+public class EngineRecordSerializer implements Serializer<Object> {
+    private final MessageSerializer messageSerializer = new MessageSerializer();
+    private final CommandSerializer commandSerializer = new CommandSerializer();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        messageSerializer.configure(configs, isKey);
+        commandSerializer.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (data instanceof Command command) {
+            return commandSerializer.serialize(topic, command);
+        }
+        return messageSerializer.serialize(topic, (Message) data);
+    }
+}
@@ -0,0 +1,58 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.matchingengine.command.AmendOrderCommand;
+import com.gitbitex.matchingengine.command.CancelOrderCommand;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.MassCancelCommand;
+import org.springframework.lang.Nullable;
+
+/**
+ * Assignment of products and commands to matching engine shards.
+ * <p>
+ * Every balance lives in the account shard. Orders for a product on another shard have their funds held by the
+ * account shard first and are then forwarded to the product's shard, which sends the resulting unholds and exchanges
+ * back as a {@link com.gitbitex.matchingengine.command.SettleCommand}. Shard {@code i} consumes partition {@code i}
+ * of the command topic and writes to partition {@code i} of the message topic.
+ */
+public final class EngineShards {
+    public static final int ACCOUNT_SHARD = 0;
+
+    private EngineShards() {
+    }
+
+    public static int shardOf(String productId, int shardCount) {
+        if (shardCount <= 1) {
+            return ACCOUNT_SHARD;
+        }
+        return Math.floorMod(productId.hashCode(), shardCount);
+    }
+
+    /**
+     * Returns the command topic partition a new command goes to, or null to leave it to the producer when the engine
+     * is not sharded. Cancels and amends of one product go straight to the product's shard, everything else starts
+     * at the account shard.
+     */
+    @Nullable
+    public static Integer partitionOf(Command command, int shardCount) {
+        if (shardCount <= 1) {
+            return null;
+        }
+        if (command instanceof CancelOrderCommand cancelOrderCommand) {
+            return shardOf(cancelOrderCommand.getProductId(), shardCount);
+        }
+        if (command instanceof AmendOrderCommand amendOrderCommand) {
+            return shardOf(amendOrderCommand.getProductId(), shardCount);
+        }
+        if (command instanceof MassCancelCommand massCancelCommand && massCancelCommand.getProductId() != null) {
+            return shardOf(massCancelCommand.getProductId(), shardCount);
+        }
+        return ACCOUNT_SHARD;
+    }
+
+    /**
+     * Id of the shard's {@link com.gitbitex.matchingengine.snapshot.EngineState}, shard 0 keeps the unsharded id.
+     */
+    public static String stateId(int shard) {
+        return shard == ACCOUNT_SHARD ? "default" : "shard-" + shard;
+    }
+}
@@ -0,0 +1,99 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderStatus;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel of the resting and pending stop good-till-time orders of a book, with one bucket per second of
+ * expire time.
+ * <p>
+ * Advancing the wheel only visits the buckets of the seconds that passed, so the cost does not grow with the number
+ * of resting orders. Orders that left the book before they expired are dropped lazily when their bucket is visited.
+ * Orders more than a full turn ahead stay in their bucket until their turn comes. A stop order is added when it is
+ * placed and again if it rests once triggered, the second entry is skipped when it expires.
+ */
+public class ExpiryWheel {
+    private static final long TICK_MILLIS = 1000;
+    private static final Comparator<Order> EXPIRY_ORDER = Comparator.comparing(Order::getExpireTime)
+            .thenComparingLong(Order::getSequence);
+    private final List<List<Order>> buckets;
+    private final int mask;
+    private final List<Order> expired = new ArrayList<>();
+    // the last tick whose bucket was visited, the current one is visited again as its orders may expire later in it
+    private long lastTick = -1;
+
+    public ExpiryWheel(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of 2 and at least 4: " + size);
+        }
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.mask = size - 1;
+    }
+
+    public void add(Order order) {
+        // an order that is already due goes to the current bucket, which the next advance visits
+        long tick = Math.max(tick(order.getExpireTime().getTime()), lastTick);
+        buckets.get((int) (tick & mask)).add(order);
+    }
+
+    /**
+     * Calls {@code expirer} for every resting order whose expire time is not after {@code now}, in a deterministic
+     * order, so a replay of the same commands expires the same orders.
+     */
+    public void advance(long now, Consumer<Order> expirer) {
+        long nowTick = tick(now);
+        if (nowTick < lastTick) {
+            return;
+        }
+        if (lastTick < 0 || nowTick - lastTick >= buckets.size()) {
+            for (List<Order> bucket : buckets) {
+                collectExpired(bucket, now);
+            }
+        } else {
+            for (long tick = lastTick; tick <= nowTick; tick++) {
+                collectExpired(buckets.get((int) (tick & mask)), now);
+            }
+        }
+        lastTick = nowTick;
+
+        // expire only after the buckets are visited, the expirer changes the book. Bucket order depends on where the
+        // wheel stood, so the orders are sorted to expire them in the same order after a restart
+        expired.sort(EXPIRY_ORDER);
+        Order last = null;
+        for (Order order : expired) {
+            if (order != last) {
+                expirer.accept(order);
+            }
+            last = order;
+        }
+        expired.clear();
+    }
+
+    private void collectExpired(List<Order> bucket, long now) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Order order = bucket.get(i);
+            if (order.getLevel() == null && order.getStatus() != OrderStatus.PENDING) {
+                // filled or cancelled
+                continue;
+            }
+            if (order.getExpireTime().getTime() <= now) {
+                expired.add(order);
+            } else {
+                bucket.set(kept++, order);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    private static long tick(long time) {
+        return Math.floorDiv(time, TICK_MILLIS);
+    }
+}
@@ -0,0 +1,62 @@
+package com.gitbitex.matchingengine;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Helpers for the fixed-point engine mode, where a value {@code v} with scale {@code s} is held as the long
+ * {@code v * 10^s}. Conversions never round: a value that does not fit the scale raises {@link ArithmeticException}.
+ */
+public final class FixedPoint {
+    // the largest scale a long can hold a value of at least 1 at
+    public static final int MAX_SCALE = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    public static long pow10(int n) {
+        if (n < 0 || n > MAX_SCALE) {
+            throw new ArithmeticException("scale out of range: " + n);
+        }
+        return POWERS_OF_TEN[n];
+    }
+
+    public static long toLong(BigDecimal value, int scale) {
+        if (value == null) {
+            return 0;
+        }
+        return value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long value, int scale) {
+        return BigDecimal.valueOf(value, scale);
+    }
+
+    /**
+     * Converts a scaled value to a larger or equal scale.
+     */
+    public static long rescale(long value, int fromScale, int toScale) {
+        if (fromScale == toScale) {
+            return value;
+        }
+        if (fromScale > toScale) {
+            throw new ArithmeticException("cannot rescale from " + fromScale + " to " + toScale);
+        }
+        return Math.multiplyExact(value, pow10(toScale - fromScale));
+    }
+
+    /**
+     * Returns the scale needed to hold the value without rounding.
+     */
+    public static int scaleOf(BigDecimal value) {
+        return Math.max(value.stripTrailingZeros().scale(), 0);
+    }
+}
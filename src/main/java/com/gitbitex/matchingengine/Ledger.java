@@ -0,0 +1,27 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+
+import java.math.BigDecimal;
+
+/**
+ * Balance operations an {@link OrderBook} needs. {@link AccountBook} applies them to the balances directly,
+ * {@link ShardLedger} records them for the account shard when the order book lives on another shard.
+ */
+public interface Ledger {
+    boolean hold(String userId, String currency, BigDecimal amount);
+
+    boolean hold(String userId, String currency, long amount, int scale);
+
+    void unhold(String userId, String currency, BigDecimal amount);
+
+    void unhold(String userId, String currency, long amount, int scale);
+
+    void exchange(String takerUserId, String makerUserId,
+                  String baseCurrency, String quoteCurrency,
+                  OrderSide takerSide, BigDecimal size, BigDecimal funds);
+
+    void exchange(String takerUserId, String makerUserId,
+                  String baseCurrency, String quoteCurrency,
+                  OrderSide takerSide, long size, int sizeScale, long funds, int fundsScale);
+}
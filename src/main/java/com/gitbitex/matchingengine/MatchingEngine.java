@@ -1,82 +1,403 @@
 package com.gitbitex.matchingengine;
 
 import com.alibaba.fastjson.JSON;
+import com.gitbitex.AppProperties;
+import com.gitbitex.enums.OrderStatus;
 import com.gitbitex.matchingengine.command.*;
 import com.gitbitex.matchingengine.message.CommandEndMessage;
 import com.gitbitex.matchingengine.message.CommandStartMessage;
 import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotter;
 import com.gitbitex.matchingengine.snapshot.EngineState;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.Metrics;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotReader;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotWriter;
+import com.gitbitex.matchingengine.snapshot.SnapshotDelta;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class MatchingEngine {
-    private final Map<String, OrderBook> orderBooks = new HashMap<>();
+    // product ids are interned to dense handles, which index the order books
+    private final SymbolTable productIds = new SymbolTable();
+    private final List<OrderBook> orderBooks = new ArrayList<>();
     private final EngineSnapshotManager stateStore;
-    private final Counter commandProcessedCounter;
+    private final LocalSnapshotStore localSnapshotStore;
+    // messages the local snapshot may be behind the Mongo snapshot and still be restored from
+    private final long localSnapshotMaxLag;
+    private final long localSnapshotIntervalMillis;
+    // orders and accounts changed since the last snapshot, null if the engine takes no snapshots
+    private final SnapshotDirtySet snapshotDirtySet;
+    // sent in the command end messages, null if disabled
+    private final StateDigest stateDigest;
+    private final EngineMeterRegistry meterRegistry;
+    // not published until the engine runs, see open()
+    @Getter
+    private EngineMetrics metrics;
     private final AtomicLong messageSequence = new AtomicLong();
     private final MessageSender messageSender;
     private final ProductBook productBook;
     private final AccountBook accountBook;
+    private final boolean fixedPoint;
+    private final int priceLadderSize;
+    private final int maxOpenOrders;
+    @Getter
+    private final int shard;
+    private final int shardCount;
+    // only on product shards, collects the balance changes that are settled by the account shard
+    private final ShardLedger shardLedger;
+    private final Map<Integer, Long> sourceOffsets = new HashMap<>();
+    private final boolean batchExecution;
+    // source offsets applied since the last command end message
+    private final Map<String, Long> pendingSourceOffsets = new HashMap<>();
+    private boolean batchStarted;
+    private long batchEndOffset;
+    // time of the latest command, GTT orders expire by it
+    private long clock;
+    // the last command end message sent, a standby compares it with the one the running engine published
+    @Getter
+    private CommandEndMessage lastCommandEndMessage;
+    // offset of the last command executed, and of the last one in the latest snapshot
     @Getter
-    private Long startupCommandOffset;
+    private Long commandOffset;
+    private Long snapshotCommandOffset;
+    // offset of the message record of the state's last command end message, or of an older one, a standby starts
+    // reading the published messages after it. Null once the engine runs, it does not learn the offsets it sends to
+    @Getter
+    @Setter
+    private Long messageOffset;
+    private long lastSnapshotTime;
+    // created when the engine starts running, if it takes snapshots
+    private EngineSnapshotter engineSnapshotter;
 
-    public MatchingEngine(EngineSnapshotManager stateStore, MessageSender messageSender) {
+    public MatchingEngine(EngineSnapshotManager stateStore, LocalSnapshotStore localSnapshotStore,
+                          MessageSender messageSender, EngineMeterRegistry meterRegistry, AppProperties appProperties,
+                          int shard) {
         this.stateStore = stateStore;
+        this.localSnapshotStore = localSnapshotStore;
+        this.localSnapshotMaxLag = appProperties.getMatchingEngineLocalSnapshotMaxLag();
+        this.localSnapshotIntervalMillis = appProperties.getMatchingEngineLocalSnapshotInterval() * 1000L;
+        this.snapshotDirtySet = localSnapshotStore.isEnabled() && localSnapshotIntervalMillis > 0
+                ? new SnapshotDirtySet() : null;
         this.messageSender = messageSender;
-        this.commandProcessedCounter = Counter.builder("gbe.matching-engine.command.processed")
-                .register(Metrics.globalRegistry);
+        this.fixedPoint = appProperties.isMatchingEngineFixedPoint();
+        this.priceLadderSize = appProperties.getMatchingEnginePriceLadderSize();
+        if (priceLadderSize > 0 && !fixedPoint) {
+            logger.warn("price ladder needs fixed-point mode, falling back to tree depth");
+        }
+        this.maxOpenOrders = appProperties.getMatchingEngineMaxOpenOrders();
+        this.shard = shard;
+        this.shardCount = Math.max(appProperties.getMatchingEngineShards(), 1);
+        this.shardLedger = shard != EngineShards.ACCOUNT_SHARD ? new ShardLedger() : null;
+        this.batchExecution = appProperties.isMatchingEngineBatchExecution();
+        this.meterRegistry = meterRegistry;
+        this.metrics = new EngineMetrics(EngineMeterRegistry.noop(), shard);
         this.productBook = new ProductBook(messageSender, this.messageSequence);
-        this.accountBook = new AccountBook(messageSender, this.messageSequence);
+        this.stateDigest = appProperties.isMatchingEngineStateDigest() ? new StateDigest() : null;
+        this.accountBook = new AccountBook(messageSender, this.messageSequence, fixedPoint, snapshotDirtySet,
+                stateDigest);
+
+        restoreSnapshot(stateStore);
+    }
+
+    /**
+     * Opens the message sender and starts publishing the meters of the engine, must be called by the thread that is
+     * going to run the engine.
+     */
+    public void open() {
+        messageOffset = null;
+        messageSender.open();
+        metrics = new EngineMetrics(meterRegistry, shard);
+        orderBooks.forEach(metrics::addOrderBook);
+        startSnapshots();
+    }
+
+    /**
+     * Starts taking local snapshots if they are enabled, the first one holds the whole state. A standby starts them
+     * once it is loaded, so that taking it over does not copy the whole state on the engine thread.
+     */
+    public void startSnapshots() {
+        if (snapshotDirtySet != null && engineSnapshotter == null) {
+            engineSnapshotter = new EngineSnapshotter(localSnapshotStore, shard);
+            engineSnapshotter.submit(fullSnapshot());
+            snapshotCommandOffset = commandOffset;
+            lastSnapshotTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Stops the snapshot thread of an engine that is replaced or dropped, once it has written the snapshots already
+     * taken, and closes its message sender.
+     */
+    public void close() {
+        if (engineSnapshotter != null) {
+            engineSnapshotter.close();
+        }
+        messageSender.close();
+    }
+
+    /**
+     * Drops an engine whose state turned out to be wrong, with its local snapshot file so that the shard is not
+     * restored from it.
+     */
+    public void discard() {
+        close();
+        if (localSnapshotStore.isEnabled()) {
+            localSnapshotStore.delete(shard);
+        }
+    }
+
+    public void beginBatch() {
+        messageSender.beginBatch();
+    }
+
+    /**
+     * Ends the batch, in batch execution mode the single command end message of the batch is sent here.
+     */
+    public void commitBatch() {
+        if (batchStarted) {
+            accountBook.flushAccountMessages();
+            sendCommandEndMessage(batchEndOffset);
+            batchStarted = false;
+        }
+        messageSender.commitBatch();
+        if (engineSnapshotter != null && !Objects.equals(commandOffset, snapshotCommandOffset)
+                && System.currentTimeMillis() - lastSnapshotTime >= localSnapshotIntervalMillis) {
+            takeSnapshot();
+        } else if (engineSnapshotter == null && snapshotDirtySet != null) {
+            // snapshots are not started yet, they start with a full one
+            snapshotDirtySet.clear();
+        }
+    }
 
-        restoreSnapshot(stateStore, messageSender);
+    /**
+     * Sequence of the last message the engine sent.
+     */
+    public long getMessageSequence() {
+        return messageSequence.get();
     }
 
     public void executeCommand(Command command, long offset) {
-        commandProcessedCounter.increment();
+        // a command forwarded on, like an amend the account shard held, gets this shard as its source
+        Integer sourceShard = command.getSourceShard();
+        Long sourceOffset = command.getSourceOffset();
+        if (sourceShard != null) {
+            Long lastSourceOffset = sourceOffsets.get(sourceShard);
+            if (lastSourceOffset != null && sourceOffset <= lastSourceOffset) {
+                logger.info("skipping command already applied from shard {}: {}", sourceShard, sourceOffset);
+                return;
+            }
+        }
+
+        long startTime = System.nanoTime();
 
-        sendCommandStartMessage(command, offset);
+        if (!batchExecution) {
+            sendCommandStartMessage(offset);
+        } else if (!batchStarted) {
+            sendCommandStartMessage(offset);
+            batchStarted = true;
+        }
+        if (command.getTime() != null) {
+            advanceClock(command.getTime().getTime());
+        }
         if (command instanceof PlaceOrderCommand placeOrderCommand) {
-            executeCommand(placeOrderCommand);
+            executeCommand(placeOrderCommand, offset);
         } else if (command instanceof CancelOrderCommand cancelOrderCommand) {
-            executeCommand(cancelOrderCommand);
+            executeCommand(cancelOrderCommand, offset);
         } else if (command instanceof DepositCommand depositCommand) {
             executeCommand(depositCommand);
         } else if (command instanceof PutProductCommand putProductCommand) {
-            executeCommand(putProductCommand);
+            executeCommand(putProductCommand, offset);
+        } else if (command instanceof SettleCommand settleCommand) {
+            executeCommand(settleCommand);
+        } else if (command instanceof BatchPlaceOrderCommand batchPlaceOrderCommand) {
+            executeCommand(batchPlaceOrderCommand, offset);
+        } else if (command instanceof MassCancelCommand massCancelCommand) {
+            executeCommand(massCancelCommand, offset);
+        } else if (command instanceof AmendOrderCommand amendOrderCommand) {
+            executeCommand(amendOrderCommand, offset);
         } else {
             logger.warn("Unhandled command: {} {}", command.getClass().getName(), JSON.toJSONString(command));
         }
-        sendCommandEndMessage(command, offset);
+        String productId = productIdOf(command);
+        metrics.recordCommand(command.getType(), productId != null ? orderBook(productId) : null,
+                System.nanoTime() - startTime);
+        if (command instanceof MassCancelCommand && productId == null) {
+            metrics.publishOrderBooks(orderBooks);
+        }
+        if (shardLedger != null && shardLedger.hasSettlements()) {
+            SettleCommand settleCommand = new SettleCommand();
+            settleCommand.setTime(command.getTime());
+            settleCommand.setSettlements(shardLedger.drainSettlements());
+            forward(settleCommand, EngineShards.ACCOUNT_SHARD, offset);
+        }
+        if (sourceShard != null) {
+            sourceOffsets.put(sourceShard, sourceOffset);
+            pendingSourceOffsets.put(sourceShard.toString(), sourceOffset);
+        }
+        if (batchExecution) {
+            batchEndOffset = offset;
+        } else {
+            accountBook.flushAccountMessages();
+            sendCommandEndMessage(offset);
+        }
+        commandOffset = offset;
+    }
+
+    @Nullable
+    private String productIdOf(Command command) {
+        if (command instanceof PlaceOrderCommand placeOrderCommand) {
+            return placeOrderCommand.getProductId();
+        } else if (command instanceof CancelOrderCommand cancelOrderCommand) {
+            return cancelOrderCommand.getProductId();
+        } else if (command instanceof BatchPlaceOrderCommand batchPlaceOrderCommand) {
+            return batchPlaceOrderCommand.getProductId();
+        } else if (command instanceof MassCancelCommand massCancelCommand) {
+            return massCancelCommand.getProductId();
+        } else if (command instanceof AmendOrderCommand amendOrderCommand) {
+            return amendOrderCommand.getProductId();
+        }
+        return null;
     }
 
     private void executeCommand(DepositCommand command) {
+        if (!isAccountShard()) {
+            logger.warn("deposit sent to product shard {}: {}", shard, JSON.toJSONString(command));
+            return;
+        }
         accountBook.deposit(command.getUserId(), command.getCurrency(), command.getAmount(),
                 command.getTransactionId());
     }
 
-    private void executeCommand(PutProductCommand command) {
-        productBook.putProduct(new Product(command));
-        createOrderBook(command.getProductId());
+    private void executeCommand(PutProductCommand command, long offset) {
+        Product product = new Product(command);
+        if (isAccountShard()) {
+            productBook.putProduct(product);
+            accountBook.addProduct(product);
+        } else {
+            // the account shard already published the product
+            productBook.addProduct(product);
+        }
+        int productShard = EngineShards.shardOf(command.getProductId(), shardCount);
+        if (productShard == shard) {
+            createOrderBook(command.getProductId());
+        } else if (isAccountShard()) {
+            forward(command, productShard, offset);
+        }
+    }
+
+    private void executeCommand(PlaceOrderCommand command, long offset) {
+        int productShard = EngineShards.shardOf(command.getProductId(), shardCount);
+        if (productShard != shard) {
+            if (isAccountShard() && command.getSourceShard() == null) {
+                Product product = productBook.getProduct(command.getProductId());
+                if (product == null) {
+                    logger.warn("no such product: {}", command.getProductId());
+                    return;
+                }
+                holdOrderFunds(command, product);
+                forward(command, productShard, offset);
+            } else {
+                logger.warn("order sent to wrong shard {}: {}", shard, JSON.toJSONString(command));
+            }
+            return;
+        }
+        placeOrder(command);
+    }
+
+    private void executeCommand(BatchPlaceOrderCommand command, long offset) {
+        int productShard = EngineShards.shardOf(command.getProductId(), shardCount);
+        if (productShard != shard) {
+            if (isAccountShard() && command.getSourceShard() == null) {
+                Product product = productBook.getProduct(command.getProductId());
+                if (product == null) {
+                    logger.warn("no such product: {}", command.getProductId());
+                    return;
+                }
+                for (PlaceOrderCommand order : command.getOrders()) {
+                    if (isBatchOrder(command, order)) {
+                        holdOrderFunds(order, product);
+                    }
+                }
+                forward(command, productShard, offset);
+            } else {
+                logger.warn("order sent to wrong shard {}: {}", shard, JSON.toJSONString(command));
+            }
+            return;
+        }
+        for (PlaceOrderCommand order : command.getOrders()) {
+            if (isBatchOrder(command, order)) {
+                if (order.getTime() != null) {
+                    advanceClock(order.getTime().getTime());
+                }
+                placeOrder(order);
+            }
+        }
     }
 
-    private void executeCommand(PlaceOrderCommand command) {
-        OrderBook orderBook = orderBooks.get(command.getProductId());
+    /**
+     * Whether the order belongs to the batch's product, other orders are skipped by both the account shard and the
+     * product shard.
+     */
+    private boolean isBatchOrder(BatchPlaceOrderCommand command, PlaceOrderCommand order) {
+        if (!command.getProductId().equals(order.getProductId())) {
+            logger.warn("order of another product in batch for {}: {}", command.getProductId(),
+                    JSON.toJSONString(order));
+            return false;
+        }
+        return true;
+    }
+
+    private void placeOrder(PlaceOrderCommand command) {
+        OrderBook orderBook = orderBook(command.getProductId());
         if (orderBook == null) {
             logger.warn("no such order book: {}", command.getProductId());
             return;
         }
+        if (shardLedger != null) {
+            shardLedger.setFundsHeld(command.isFundsHeld());
+        }
         orderBook.placeOrder(new Order(command));
     }
 
-    private void executeCommand(CancelOrderCommand command) {
-        OrderBook orderBook = orderBooks.get(command.getProductId());
+    /**
+     * Holds the funds of an order for a product on another shard before it is forwarded there. The order is forwarded
+     * even if the funds could not be held, so that the product shard rejects it with its own order sequence.
+     */
+    private void holdOrderFunds(PlaceOrderCommand command, Product product) {
+        Order order = new Order(command);
+        boolean fundsHeld;
+        try {
+            if (fixedPoint) {
+                order.toScaled(product);
+            }
+            fundsHeld = OrderBook.holdOrderFunds(accountBook, order, product, fixedPoint);
+        } catch (ArithmeticException e) {
+            // the product shard rejects it with BAD_SCALE
+            fundsHeld = false;
+        }
+        command.setFundsHeld(fundsHeld);
+    }
+
+    private void executeCommand(CancelOrderCommand command, long offset) {
+        int productShard = EngineShards.shardOf(command.getProductId(), shardCount);
+        if (productShard != shard) {
+            if (command.getSourceShard() == null) {
+                forward(command, productShard, offset);
+            }
+            return;
+        }
+        OrderBook orderBook = orderBook(command.getProductId());
         if (orderBook == null) {
             logger.warn("no such order book: {}", command.getProductId());
             return;
@@ -84,70 +405,386 @@ public class MatchingEngine {
         orderBook.cancelOrder(command.getOrderId());
     }
 
-    private void sendCommandStartMessage(Command command, long offset) {
+    /**
+     * Amends go to the product shard, which cannot hold funds. One that needs a larger hold is sent on to the account
+     * shard, which holds the difference and sends it back with {@code fundsHeld}, the product shard then applies it
+     * or releases what was held.
+     */
+    private void executeCommand(AmendOrderCommand command, long offset) {
+        int productShard = EngineShards.shardOf(command.getProductId(), shardCount);
+        if (productShard != shard) {
+            if (command.getSourceShard() == null) {
+                forward(command, productShard, offset);
+            } else if (isAccountShard() && command.getHoldAmount() != null) {
+                holdAmendFunds(command, productShard, offset);
+            }
+            return;
+        }
+        if (shardLedger != null) {
+            // what the account shard held for the amend, nothing on its first pass
+            shardLedger.beginAmend(command.isFundsHeld() ? command.getHoldAmount() : BigDecimal.ZERO);
+        }
+        OrderBook orderBook = orderBook(command.getProductId());
+        if (orderBook == null) {
+            logger.warn("no such order book: {}", command.getProductId());
+        } else {
+            orderBook.amendOrder(command.getOrderId(), command.getUserId(), command.getSize(), command.getPrice());
+        }
+        if (shardLedger != null) {
+            shardLedger.endAmend(command.getUserId(), command.getHoldCurrency());
+            if (command.getHoldAmount() == null && shardLedger.getMissingHold() != null) {
+                command.setHoldCurrency(shardLedger.getMissingHoldCurrency());
+                command.setHoldAmount(shardLedger.getMissingHold());
+                forward(command, EngineShards.ACCOUNT_SHARD, offset);
+            }
+        }
+    }
+
+    /**
+     * Holds the larger hold a product shard asked for an amend and sends the amend back to it.
+     */
+    private void holdAmendFunds(AmendOrderCommand command, int productShard, long offset) {
+        boolean fundsHeld;
+        try {
+            if (fixedPoint) {
+                int scale = FixedPoint.scaleOf(command.getHoldAmount());
+                fundsHeld = accountBook.hold(command.getUserId(), command.getHoldCurrency(),
+                        FixedPoint.toLong(command.getHoldAmount(), scale), scale);
+            } else {
+                fundsHeld = accountBook.hold(command.getUserId(), command.getHoldCurrency(), command.getHoldAmount());
+            }
+        } catch (ArithmeticException e) {
+            fundsHeld = false;
+        }
+        if (!fundsHeld) {
+            logger.warn("amend rejected, reason: INSUFFICIENT_FUNDS: {} {}", command.getOrderId(),
+                    command.getHoldAmount());
+            return;
+        }
+        command.setFundsHeld(true);
+        forward(command, productShard, offset);
+    }
+
+    private void executeCommand(MassCancelCommand command, long offset) {
+        if (command.getProductId() != null) {
+            int productShard = EngineShards.shardOf(command.getProductId(), shardCount);
+            if (productShard != shard) {
+                if (command.getSourceShard() == null) {
+                    forward(command, productShard, offset);
+                }
+                return;
+            }
+            OrderBook orderBook = orderBook(command.getProductId());
+            if (orderBook == null) {
+                logger.warn("no such order book: {}", command.getProductId());
+                return;
+            }
+            orderBook.cancelOrders(command.getUserId(), command.getSide());
+            return;
+        }
+
+        // all products, the account shard passes it on to every other shard
+        if (isAccountShard() && command.getSourceShard() == null) {
+            for (int i = 0; i < shardCount; i++) {
+                if (i != shard) {
+                    forward(command, i, offset);
+                }
+            }
+        }
+        for (OrderBook orderBook : orderBooks) {
+            orderBook.cancelOrders(command.getUserId(), command.getSide());
+        }
+    }
+
+    private void executeCommand(SettleCommand command) {
+        if (!isAccountShard()) {
+            logger.warn("settlement sent to product shard {}: {}", shard, JSON.toJSONString(command));
+            return;
+        }
+        command.getSettlements().forEach(accountBook::settle);
+    }
+
+    /**
+     * Moves the clock to the time of a command and expires the GTT orders that became due before the command is
+     * executed. Every command that carries a time moves it, but only commands do: the orders of a shard that gets no
+     * commands expire when its next command arrives, and a replay expires the same orders at the same point.
+     */
+    private void advanceClock(long time) {
+        if (time <= clock) {
+            return;
+        }
+        clock = time;
+        for (OrderBook orderBook : orderBooks) {
+            orderBook.expireOrders(time);
+        }
+    }
+
+    private void forward(Command command, int targetShard, long offset) {
+        command.setSourceShard(shard);
+        command.setSourceOffset(offset);
+        messageSender.forward(command, targetShard);
+    }
+
+    private boolean isAccountShard() {
+        return shard == EngineShards.ACCOUNT_SHARD;
+    }
+
+    private Ledger ledger() {
+        return shardLedger != null ? shardLedger : accountBook;
+    }
+
+    private void sendCommandStartMessage(long offset) {
         CommandStartMessage message = new CommandStartMessage();
         message.setSequence(messageSequence.incrementAndGet());
         message.setCommandOffset(offset);
         messageSender.send(message);
     }
 
-    private void sendCommandEndMessage(Command command, long offset) {
+    private void sendCommandEndMessage(long offset) {
         CommandEndMessage message = new CommandEndMessage();
         message.setSequence(messageSequence.incrementAndGet());
         message.setCommandOffset(offset);
+        if (!pendingSourceOffsets.isEmpty()) {
+            message.setSourceOffsets(new HashMap<>(pendingSourceOffsets));
+            pendingSourceOffsets.clear();
+        }
+        if (stateDigest != null) {
+            message.setStateDigest(stateDigest.getValue());
+        }
         messageSender.send(message);
+        lastCommandEndMessage = message;
     }
 
-    private void restoreSnapshot(EngineSnapshotManager stateStore, MessageSender messageSender) {
-        logger.info("restoring snapshot");
+    private void restoreSnapshot(EngineSnapshotManager stateStore) {
+        logger.info("restoring snapshot of shard {}", shard);
         stateStore.runInSession(session -> {
             // restore engine states
-            EngineState engineState = stateStore.getEngineState(session);
+            EngineState engineState = stateStore.getEngineState(session, shard);
+            EngineState localState = localSnapshotStore.getEngineState(shard);
+            if (localState != null
+                    && messageSequenceOf(engineState) - messageSequenceOf(localState) <= localSnapshotMaxLag) {
+                restoreLocalSnapshot();
+                if (messageOffset == null && engineState != null && engineState.getMessageOffset() != null
+                        && messageSequenceOf(engineState) <= messageSequenceOf(localState)) {
+                    // the messages after the local snapshot were first published after those of the older one
+                    messageOffset = engineState.getMessageOffset();
+                }
+                return;
+            }
             if (engineState == null) {
                 logger.info("no snapshot found");
                 return;
             }
 
             logger.info("snapshot found, state: {}", JSON.toJSONString(engineState));
-
-
-            if (engineState.getCommandOffset() != null) {
-                this.startupCommandOffset = engineState.getCommandOffset();
-            }
-            if (engineState.getMessageSequence() != null) {
-                this.messageSequence.set(engineState.getMessageSequence());
-            }
+            restoreEngineState(engineState);
 
             // restore product book
             stateStore.getProducts(session).forEach(productBook::addProduct);
+            productBook.getAllProducts().forEach(accountBook::addProduct);
 
             // restore account book
-            stateStore.getAccounts(session).forEach(accountBook::add);
+            if (isAccountShard()) {
+                stateStore.getAccounts(session).forEach(accountBook::add);
+            }
 
             // restore order books
-            for (Product product : this.productBook.getAllProducts()) {
-                OrderBook orderBook = new OrderBook(product.getId(),
-                        engineState.getOrderSequences().getOrDefault(product.getId(), 0L),
-                        engineState.getTradeSequences().getOrDefault(product.getId(), 0L),
-                        engineState.getOrderBookSequences().getOrDefault(product.getId(), 0L),
-                        accountBook, productBook, messageSender, this.messageSequence);
-                orderBooks.put(orderBook.getProductId(), orderBook);
-
-
-                for (Order order : stateStore.getOrders(session, product.getId())) {
-                    orderBook.addOrder(order);
+            for (OrderBook orderBook : restoreOrderBooks(engineState)) {
+                for (Order order : stateStore.getOrders(session, orderBook.getProductId())) {
+                    orderBook.restoreOrder(order);
                 }
+                metrics.addOrderBook(orderBook);
+            }
+            restoreStateDigest(engineState);
+
+            if (localSnapshotStore.isEnabled()) {
+                saveLocalSnapshot();
             }
         });
         logger.info("snapshot restored");
     }
 
+    private void restoreLocalSnapshot() {
+        logger.info("restoring local snapshot of shard {}", shard);
+        try (LocalSnapshotReader reader = localSnapshotStore.openReader(shard)) {
+            EngineState engineState = reader.readState();
+            logger.info("local snapshot found, state: {}", JSON.toJSONString(engineState));
+            restoreEngineState(engineState);
+            reader.readProducts(productBook::addProduct);
+            productBook.getAllProducts().forEach(accountBook::addProduct);
+            reader.readAccounts(accountBook::add);
+            restoreOrderBooks(engineState);
+            reader.readOrders(order -> {
+                OrderBook orderBook = orderBook(order.getProductId());
+                if (orderBook == null) {
+                    throw new RuntimeException("order of a book not on this shard: " + order.getId());
+                }
+                orderBook.restoreOrder(order);
+            });
+            reader.readEnd();
+            restoreStateDigest(engineState);
+        } catch (RuntimeException e) {
+            // the next engine is restored from Mongo
+            logger.error("local snapshot of shard {} is broken, deleting it", shard, e);
+            localSnapshotStore.delete(shard);
+            throw e;
+        }
+        orderBooks.forEach(metrics::addOrderBook);
+    }
+
+    /**
+     * Writes the state of the engine to the local snapshot file of the shard. Must be called by the thread running
+     * the engine, between commands.
+     */
+    private void saveLocalSnapshot() {
+        long startTime = System.currentTimeMillis();
+        try (LocalSnapshotWriter writer = localSnapshotStore.openWriter(shard)) {
+            writer.writeState(engineState());
+            productBook.getAllProducts().forEach(writer::writeProduct);
+            if (isAccountShard()) {
+                accountBook.forEachAccount(writer::writeAccount);
+            }
+            for (OrderBook orderBook : orderBooks) {
+                orderBook.getSnapshotOrders().forEach(writer::writeOrder);
+            }
+            writer.commit();
+        }
+        logger.info("local snapshot of shard {} saved in {}ms", shard, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Hands the snapshotter copies of the orders and accounts changed since the last snapshot. Called between
+     * batches, once their messages are acknowledged: a snapshot ahead of the message topic would restore an engine
+     * that never sends the messages in between.
+     */
+    private void takeSnapshot() {
+        long startTime = System.nanoTime();
+        messageSender.flush();
+        SnapshotDelta delta = new SnapshotDelta();
+        delta.setEngineState(engineState());
+        productBook.getAllProducts().forEach(product -> delta.getProducts().add(product.clone()));
+        for (Account account : snapshotDirtySet.getAccounts()) {
+            delta.getAccounts().add(account.clone());
+        }
+        for (Order order : snapshotDirtySet.getOrders()) {
+            if (fixedPoint && (order.getStatus() == OrderStatus.OPEN || order.getStatus() == OrderStatus.PENDING)) {
+                order.fromScaled(productBook.getProduct(order.getProductId()));
+            }
+            delta.getOrders().add(order.clone());
+        }
+        snapshotDirtySet.clear();
+        engineSnapshotter.submit(delta);
+        snapshotCommandOffset = commandOffset;
+        lastSnapshotTime = System.currentTimeMillis();
+        logger.info("snapshot of shard {} taken in {}us: {} account(s), {} order(s)", shard,
+                (System.nanoTime() - startTime) / 1000, delta.getAccounts().size(), delta.getOrders().size());
+    }
+
+    /**
+     * Copies of the whole state of the engine, the first snapshot handed to the snapshotter.
+     */
+    private SnapshotDelta fullSnapshot() {
+        SnapshotDelta delta = new SnapshotDelta();
+        delta.setEngineState(engineState());
+        productBook.getAllProducts().forEach(product -> delta.getProducts().add(product.clone()));
+        accountBook.forEachAccount(account -> delta.getAccounts().add(account.clone()));
+        for (OrderBook orderBook : orderBooks) {
+            orderBook.getSnapshotOrders().forEach(order -> delta.getOrders().add(order.clone()));
+        }
+        snapshotDirtySet.clear();
+        return delta;
+    }
+
+    private EngineState engineState() {
+        EngineState engineState = new EngineState();
+        engineState.setId(EngineShards.stateId(shard));
+        engineState.setCommandOffset(commandOffset);
+        engineState.setMessageSequence(messageSequence.get());
+        engineState.setMessageOffset(messageOffset);
+        engineState.setStateDigest(stateDigest != null ? stateDigest.getValue() : null);
+        sourceOffsets.forEach((k, v) -> engineState.getSourceOffsets().put(String.valueOf(k), v));
+        for (OrderBook orderBook : orderBooks) {
+            engineState.getOrderSequences().put(orderBook.getProductId(), orderBook.getOrderSequence());
+            engineState.getTradeSequences().put(orderBook.getProductId(), orderBook.getTradeSequence());
+            engineState.getOrderBookSequences().put(orderBook.getProductId(), orderBook.getOrderBookSequence());
+        }
+        return engineState;
+    }
+
+    private void restoreEngineState(EngineState engineState) {
+        if (engineState.getCommandOffset() != null) {
+            this.commandOffset = engineState.getCommandOffset();
+        }
+        if (engineState.getMessageSequence() != null) {
+            this.messageSequence.set(engineState.getMessageSequence());
+        }
+        this.messageOffset = engineState.getMessageOffset();
+        engineState.getSourceOffsets().forEach((k, v) -> sourceOffsets.put(Integer.valueOf(k), v));
+    }
+
+    /**
+     * Creates the order books of the products of this shard, empty, with the sequences of the snapshot.
+     */
+    private List<OrderBook> restoreOrderBooks(EngineState engineState) {
+        List<OrderBook> restored = new ArrayList<>();
+        for (Product product : this.productBook.getAllProducts()) {
+            if (EngineShards.shardOf(product.getId(), shardCount) != shard) {
+                continue;
+            }
+            OrderBook orderBook = new OrderBook(product.getId(),
+                    engineState.getOrderSequences().getOrDefault(product.getId(), 0L),
+                    engineState.getTradeSequences().getOrDefault(product.getId(), 0L),
+                    engineState.getOrderBookSequences().getOrDefault(product.getId(), 0L),
+                    ledger(), productBook, messageSender, this.messageSequence, fixedPoint,
+                    priceLadderSize, maxOpenOrders, snapshotDirtySet, stateDigest);
+            addOrderBook(orderBook);
+            restored.add(orderBook);
+        }
+        return restored;
+    }
+
+    /**
+     * Computes the digest of the restored state and checks it against the digest the snapshot was taken with, if
+     * it has one.
+     */
+    private void restoreStateDigest(EngineState engineState) {
+        if (stateDigest == null) {
+            return;
+        }
+        accountBook.forEachAccount(stateDigest::update);
+        for (OrderBook orderBook : orderBooks) {
+            orderBook.getSnapshotOrders().forEach(stateDigest::update);
+        }
+        if (engineState.getStateDigest() != null && engineState.getStateDigest() != stateDigest.getValue()) {
+            throw new RuntimeException(String.format("snapshot of shard %s does not match its state digest: %s, "
+                    + "expected %s", shard, stateDigest.getValue(), engineState.getStateDigest()));
+        }
+    }
+
+    private static long messageSequenceOf(@Nullable EngineState engineState) {
+        return engineState != null && engineState.getMessageSequence() != null ? engineState.getMessageSequence() : 0;
+    }
+
     private void createOrderBook(String productId) {
-        if (orderBooks.containsKey(productId)) {
+        if (orderBook(productId) != null) {
             return;
         }
-        OrderBook orderBook = new OrderBook(productId, 0, 0, 0, accountBook, productBook, messageSender, messageSequence);
-        orderBooks.put(productId, orderBook);
+        OrderBook orderBook = new OrderBook(productId, 0, 0, 0, ledger(), productBook, messageSender, messageSequence,
+                fixedPoint, priceLadderSize, maxOpenOrders, snapshotDirtySet, stateDigest);
+        addOrderBook(orderBook);
+        metrics.addOrderBook(orderBook);
+    }
+
+    @Nullable
+    private OrderBook orderBook(String productId) {
+        int handle = productIds.handleOf(productId);
+        return handle >= 0 ? orderBooks.get(handle) : null;
+    }
+
+    private void addOrderBook(OrderBook orderBook) {
+        // order books are never removed, so the handles stay the indexes of the list
+        productIds.intern(orderBook.getProductId());
+        orderBooks.add(orderBook);
     }
 
 }
@@ -1,39 +1,160 @@
 package com.gitbitex.matchingengine;
 
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.CommandDeserializer;
+import com.gitbitex.matchingengine.message.MatchingEngineMessageDeserializer;
+import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageType;
 import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
-import lombok.Getter;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import com.gitbitex.middleware.kafka.KafkaProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Loads the engines of the shards. A node keeps a standby engine of every shard it does not run, loaded once and kept
+ * up to date in the background, see {@link MatchingEngineStandbyThread}. When the group assigns such a shard to an
+ * engine thread, the thread takes the standby over. A shard is only loaded on demand if its standby is not usable.
+ * <p>
+ * Standbys are started a while after startup, once the group has assigned the shards this node runs, and are
+ * restarted after they failed. A shard keeps no standby while an engine of this node runs it.
+ */
 @Slf4j
 @Component
 public class MatchingEngineLoader {
+    private static final long STANDBY_CHECK_INTERVAL_SECONDS = 30;
     private final EngineSnapshotManager engineSnapshotManager;
-    private final MessageSender messageSender;
-    @Getter
-    @Nullable
-    private volatile MatchingEngine preperedMatchingEngine;
+    private final LocalSnapshotStore localSnapshotStore;
+    private final AppProperties appProperties;
+    private final KafkaProperties kafkaProperties;
+    private final EngineMeterRegistry meterRegistry;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MatchingEngineLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // engines of each shard taken by the engine threads and not released, a shard that moves between two threads of
+    // the node is briefly held by both
+    private final Map<Integer, Integer> runningEngines = new HashMap<>();
+    private final Map<Integer, MatchingEngineStandbyThread> standbyThreads = new HashMap<>();
 
-    public MatchingEngineLoader(EngineSnapshotManager engineSnapshotManager, MessageSender messageSender) {
+    public MatchingEngineLoader(EngineSnapshotManager engineSnapshotManager, LocalSnapshotStore localSnapshotStore,
+                                AppProperties appProperties, KafkaProperties kafkaProperties,
+                                EngineMeterRegistry meterRegistry) {
         this.engineSnapshotManager = engineSnapshotManager;
-        this.messageSender = messageSender;
-        startRefreshPreparingMatchingEnginePeriodically();
-    }
-
-    private void startRefreshPreparingMatchingEnginePeriodically() {
-        Executors.newScheduledThreadPool(1).scheduleWithFixedDelay(() -> {
-            try {
-                logger.info("reloading latest snapshot");
-                preperedMatchingEngine = new MatchingEngine(engineSnapshotManager, messageSender);
-                logger.info("done");
-            } catch (Exception e) {
-                logger.error("matching engine create error: {}", e.getMessage(), e);
+        this.localSnapshotStore = localSnapshotStore;
+        this.appProperties = appProperties;
+        this.kafkaProperties = kafkaProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (appProperties.isMatchingEngineStandby()) {
+            executor.scheduleWithFixedDelay(this::startStandbys, STANDBY_CHECK_INTERVAL_SECONDS,
+                    STANDBY_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Starts a standby of every shard no engine of this node runs, unless it has a live one.
+     */
+    public synchronized void startStandbys() {
+        int shardCount = Math.max(appProperties.getMatchingEngineShards(), 1);
+        for (int shard = 0; shard < shardCount; shard++) {
+            MatchingEngineStandbyThread thread = standbyThreads.get(shard);
+            if (thread == null || !thread.isAlive()) {
+                startStandby(shard);
             }
-        }, 0, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Returns the standby engine of the shard, or loads the shard if there is no usable standby. The caller runs
+     * the engine, it must open it and release it when it stops running it.
+     */
+    public MatchingEngine takeMatchingEngine(int shard) {
+        MatchingEngineStandbyThread thread;
+        synchronized (this) {
+            runningEngines.merge(shard, 1, Integer::sum);
+            thread = standbyThreads.remove(shard);
+        }
+        // the standby may still be loading, it is not waited for while holding the lock
+        MatchingEngine matchingEngine = thread != null ? thread.handOver() : null;
+        if (matchingEngine != null) {
+            logger.info("taking over standby of shard {}: commandOffset={}, messageSequence={}", shard,
+                    matchingEngine.getCommandOffset(), matchingEngine.getMessageSequence());
+            return matchingEngine;
+        }
+        logger.info("no standby of shard {}, loading it", shard);
+        return loadMatchingEngine(shard);
+    }
+
+    /**
+     * Called once an engine taken from {@link #takeMatchingEngine} was closed, the shard gets a standby again if no
+     * other engine of this node runs it.
+     */
+    public synchronized void releaseMatchingEngine(int shard) {
+        if (runningEngines.merge(shard, -1, Integer::sum) <= 0) {
+            runningEngines.remove(shard);
+            startStandby(shard);
+        }
+    }
+
+    /**
+     * Loads the shard from the snapshots. Its sender drops everything and its meters are not published until the
+     * engine is opened.
+     */
+    public MatchingEngine loadMatchingEngine(int shard) {
+        int shardCount = Math.max(appProperties.getMatchingEngineShards(), 1);
+        MessageSender messageSender = new MessageSender(appProperties, kafkaProperties,
+                shardCount > 1 ? shard : null);
+        return new MatchingEngine(engineSnapshotManager, localSnapshotStore, messageSender, meterRegistry,
+                appProperties, shard);
     }
 
+    protected MatchingEngineStandbyThread newStandbyThread(int shard) {
+        return new MatchingEngineStandbyThread(getCommandKafkaConsumer(), getCommandEndKafkaConsumer(), this,
+                appProperties, shard);
+    }
+
+    private void startStandby(int shard) {
+        if (!appProperties.isMatchingEngineStandby() || runningEngines.containsKey(shard)) {
+            return;
+        }
+        MatchingEngineStandbyThread thread = newStandbyThread(shard);
+        thread.start();
+        standbyThreads.put(shard, thread);
+    }
+
+    private KafkaConsumer<String, Command> getCommandKafkaConsumer() {
+        return new KafkaConsumer<>(getProperties(), new StringDeserializer(), new CommandDeserializer());
+    }
+
+    private KafkaConsumer<String, Message> getCommandEndKafkaConsumer() {
+        return new KafkaConsumer<>(getProperties(), new StringDeserializer(),
+                new MatchingEngineMessageDeserializer(MessageType.COMMAND_END));
+    }
+
+    private Properties getProperties() {
+        Properties properties = new Properties();
+        properties.put("bootstrap.servers", kafkaProperties.getBootstrapServers());
+        // no group, the standby assigns its partitions and seeks itself
+        properties.put("enable.auto.commit", "false");
+        properties.put("auto.offset.reset", "earliest");
+        properties.put("max.poll.records", 2000);
+        properties.put("isolation.level", "read_committed");
+        return properties;
+    }
 }
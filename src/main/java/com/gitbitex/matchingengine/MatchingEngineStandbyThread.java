@@ -0,0 +1,259 @@
+package com.gitbitex.matchingengine;
+
+import com.alibaba.fastjson.JSON;
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.message.CommandEndMessage;
+import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatch;
+import com.gitbitex.middleware.kafka.KafkaConsumerThread;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * Keeps a standby engine of a shard up to date, so the shard can be taken over without loading a snapshot.
+ * <p>
+ * The standby loads the shard once and then replays the command topic with its output dropped, see
+ * {@link MessageSender}. It only runs the commands of batches whose command end message was published by the running
+ * engine, and runs them as the same batches, so it never gets ahead of the published messages and its message
+ * sequence follows theirs. After each batch, the command end message the standby would have sent is checked against
+ * the published one, including the state digest if both engines keep one. A standby that diverged is dropped, the
+ * shard is then loaded from the snapshots when it is taken over.
+ * <p>
+ * The standby is only handed over once it has caught up with the published messages, having checked every batch
+ * published so far. A standby that is still loading or catching up is dropped, and the shard is loaded instead.
+ * <p>
+ * The standby takes the local snapshots of the shard while it follows, so its engine is taken over with them
+ * running and the file stays current for restarts. They keep the offset of the published messages they match, the
+ * next standby loaded from them starts reading right after it.
+ */
+@Slf4j
+public class MatchingEngineStandbyThread extends KafkaConsumerThread<String, Command> {
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    // command end messages of the shard, other messages are not decoded
+    private final KafkaConsumer<String, Message> messageConsumer;
+    private final MatchingEngineLoader matchingEngineLoader;
+    private final AppProperties appProperties;
+    private final int shard;
+    // published batches not run yet, the offsets of their records, and their commands fetched so far
+    private final Deque<CommandEndMessage> commandEnds = new ArrayDeque<>();
+    private final Deque<Long> commandEndOffsets = new ArrayDeque<>();
+    private final Deque<ConsumerRecord<String, Command>> commands = new ArrayDeque<>();
+    private TopicPartition messagePartition;
+    private long lastEndSequence;
+    // null until the shard is loaded, and after the standby failed
+    private volatile MatchingEngine matchingEngine;
+    // set once the standby caught up with the published messages
+    private volatile boolean verified;
+
+    public MatchingEngineStandbyThread(KafkaConsumer<String, Command> consumer,
+                                       KafkaConsumer<String, Message> messageConsumer,
+                                       MatchingEngineLoader matchingEngineLoader, AppProperties appProperties,
+                                       int shard) {
+        super(consumer, logger);
+        this.messageConsumer = messageConsumer;
+        this.matchingEngineLoader = matchingEngineLoader;
+        this.appProperties = appProperties;
+        this.shard = shard;
+        setName("MatchingEngineStandby-" + shard);
+        setDaemon(true);
+    }
+
+    /**
+     * Stops the standby and returns its engine, at the end of the last batch it ran. Null if it failed or has not
+     * caught up yet.
+     */
+    public MatchingEngine handOver() {
+        shutdown();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (matchingEngine != null && !verified) {
+            logger.warn("standby of shard {} has not caught up yet, dropping it", shard);
+            matchingEngine.close();
+            return null;
+        }
+        return matchingEngine;
+    }
+
+    @Override
+    public void run() {
+        try {
+            super.run();
+        } finally {
+            messageConsumer.close();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        messageConsumer.wakeup();
+    }
+
+    @Override
+    protected void doSubscribe() {
+        matchingEngine = matchingEngineLoader.loadMatchingEngine(shard);
+        matchingEngine.startSnapshots();
+        lastEndSequence = matchingEngine.getMessageSequence();
+        logger.info("standby of shard {} loaded: commandOffset={}, messageSequence={}", shard,
+                matchingEngine.getCommandOffset(), lastEndSequence);
+
+        TopicPartition commandPartition = new TopicPartition(appProperties.getMatchingEngineCommandTopic(), shard);
+        consumer.assign(Collections.singletonList(commandPartition));
+        if (matchingEngine.getCommandOffset() != null) {
+            consumer.seek(commandPartition, matchingEngine.getCommandOffset() + 1);
+        }
+        // the unsharded engine writes to a single partition
+        messagePartition = new TopicPartition(appProperties.getMatchingEngineMessageTopic(), shard);
+        messageConsumer.assign(Collections.singletonList(messagePartition));
+        if (matchingEngine.getMessageOffset() != null) {
+            logger.info("standby of shard {} reads command end messages from offset {}", shard,
+                    matchingEngine.getMessageOffset() + 1);
+            messageConsumer.seek(messagePartition, matchingEngine.getMessageOffset() + 1);
+        } else {
+            seekToSequence(messagePartition, lastEndSequence);
+        }
+    }
+
+    @Override
+    protected void doPoll() {
+        try {
+            var records = messageConsumer.poll(commandEnds.isEmpty() ? POLL_TIMEOUT : Duration.ZERO);
+            for (ConsumerRecord<String, Message> record : records) {
+                MessageBatch.forEach(record.value(), message -> {
+                    // batches replayed by a later engine are published again, the first copy was run already
+                    if (message instanceof CommandEndMessage commandEnd && message.getSequence() > lastEndSequence) {
+                        commandEnds.add(commandEnd);
+                        commandEndOffsets.add(record.offset());
+                        lastEndSequence = message.getSequence();
+                    }
+                });
+            }
+            runPublishedBatches();
+            if (!verified && commandEnds.isEmpty() && messageConsumer.currentLag(messagePartition).orElse(-1) == 0) {
+                logger.info("standby of shard {} caught up: commandOffset={}, messageSequence={}", shard,
+                        matchingEngine.getCommandOffset(), matchingEngine.getMessageSequence());
+                verified = true;
+            }
+        } catch (WakeupException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (matchingEngine != null) {
+                matchingEngine.close();
+                matchingEngine = null;
+            }
+            throw e;
+        }
+    }
+
+    private void runPublishedBatches() {
+        while (!commandEnds.isEmpty()) {
+            CommandEndMessage commandEnd = commandEnds.peek();
+            if (!fetchCommands(commandEnd.getCommandOffset())) {
+                return;
+            }
+            // the snapshots taken at the end of the batch start the next standby right after its messages
+            matchingEngine.setMessageOffset(commandEndOffsets.peek());
+            matchingEngine.beginBatch();
+            while (!commands.isEmpty() && commands.peek().offset() <= commandEnd.getCommandOffset()) {
+                ConsumerRecord<String, Command> record = commands.poll();
+                matchingEngine.executeCommand(record.value(), record.offset());
+            }
+            matchingEngine.commitBatch();
+            commandEnds.poll();
+            commandEndOffsets.poll();
+            verify(commandEnd);
+        }
+    }
+
+    private void verify(CommandEndMessage published) {
+        CommandEndMessage commandEnd = matchingEngine.getLastCommandEndMessage();
+        if (commandEnd == null || commandEnd.getSequence() != published.getSequence()
+                || commandEnd.getCommandOffset() != published.getCommandOffset()
+                || !Objects.equals(commandEnd.getSourceOffsets(), published.getSourceOffsets())
+                || published.getStateDigest() != null && commandEnd.getStateDigest() != null
+                && !published.getStateDigest().equals(commandEnd.getStateDigest())) {
+            matchingEngine.discard();
+            matchingEngine = null;
+            throw new RuntimeException(String.format("standby of shard %s diverged: %s, published: %s", shard,
+                    JSON.toJSONString(commandEnd), JSON.toJSONString(published)));
+        }
+    }
+
+    /**
+     * Fetches commands up to the one at {@code offset}, false if it has not arrived yet.
+     */
+    private boolean fetchCommands(long offset) {
+        while (commands.isEmpty() || commands.peekLast().offset() < offset) {
+            ConsumerRecords<String, Command> records = consumer.poll(POLL_TIMEOUT);
+            if (records.isEmpty()) {
+                return false;
+            }
+            records.forEach(commands::add);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the message consumer to the first command end message after {@code sequence}, for a standby loaded from
+     * a snapshot that does not know the offset of its messages. The binary search assumes that sequences grow with the
+     * offsets of the partition, which does not hold where an engine that took over from an older snapshot published
+     * batches again. A standby that starts at the wrong place diverges and is dropped.
+     */
+    private void seekToSequence(TopicPartition partition, long sequence) {
+        long low = messageConsumer.beginningOffsets(Collections.singletonList(partition)).get(partition);
+        long high = messageConsumer.endOffsets(Collections.singletonList(partition)).get(partition);
+        if (sequence == 0) {
+            high = low;
+        }
+        while (low < high) {
+            long middle = low + (high - low) / 2;
+            if (nextCommandEndSequence(partition, middle, high) > sequence) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        logger.info("standby of shard {} reads command end messages from offset {}", shard, low);
+        messageConsumer.seek(partition, low);
+    }
+
+    /**
+     * Sequence of the first command end message at or after {@code offset}, {@link Long#MAX_VALUE} if there is none
+     * before {@code endOffset}.
+     */
+    private long nextCommandEndSequence(TopicPartition partition, long offset, long endOffset) {
+        messageConsumer.seek(partition, offset);
+        while (messageConsumer.position(partition) < endOffset) {
+            for (ConsumerRecord<String, Message> record : messageConsumer.poll(POLL_TIMEOUT)) {
+                if (record.offset() >= endOffset) {
+                    return Long.MAX_VALUE;
+                }
+                long[] sequence = {-1};
+                MessageBatch.forEach(record.value(), message -> {
+                    if (sequence[0] == -1 && message instanceof CommandEndMessage) {
+                        sequence[0] = message.getSequence();
+                    }
+                });
+                if (sequence[0] != -1) {
+                    return sequence[0];
+                }
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -7,24 +7,49 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ProducerFencedException;
 
 import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Runs the engines of the command partitions assigned to the thread by its consumer group. On a sharded engine each
+ * partition is a shard, so the shards are spread over the threads and nodes of the group and move when it rebalances.
+ * <p>
+ * An engine whose producer is fenced lost its shard to another one, it is dropped and the thread fails, so that it is
+ * restarted with a new consumer.
+ */
 @Slf4j
 public class MatchingEngineThread extends KafkaConsumerThread<String, Command>
         implements ConsumerRebalanceListener {
     private final AppProperties appProperties;
     private final MatchingEngineLoader matchingEngineLoader;
-    private MatchingEngine matchingEngine;
+    private final Map<Integer, MatchingEngine> matchingEngines = new HashMap<>();
 
     public MatchingEngineThread(KafkaConsumer<String, Command> consumer, MatchingEngineLoader matchingEngineLoader,
                                 AppProperties appProperties) {
         super(consumer, logger);
         this.appProperties = appProperties;
         this.matchingEngineLoader = matchingEngineLoader;
+    }
 
+    @Override
+    public void run() {
+        try {
+            super.run();
+        } finally {
+            matchingEngines.forEach((shard, matchingEngine) -> {
+                matchingEngine.close();
+                matchingEngineLoader.releaseMatchingEngine(shard);
+            });
+            matchingEngines.clear();
+        }
     }
 
     @Override
@@ -36,15 +61,31 @@ public class MatchingEngineThread extends KafkaConsumerThread<String, Command>
 
     @Override
     public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        Set<Integer> assignedShards = consumer.assignment().stream()
+                .map(this::shardOf)
+                .collect(Collectors.toSet());
+        Iterator<Map.Entry<Integer, MatchingEngine>> iterator = matchingEngines.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, MatchingEngine> entry = iterator.next();
+            if (!assignedShards.contains(entry.getKey())) {
+                logger.warn("shard {} moved to another engine thread, keeping a standby of it", entry.getKey());
+                entry.getValue().close();
+                iterator.remove();
+                matchingEngineLoader.releaseMatchingEngine(entry.getKey());
+            }
+        }
+
         for (TopicPartition partition : partitions) {
             logger.info("partition assigned: {}", partition.toString());
-            matchingEngine = matchingEngineLoader.getPreperedMatchingEngine();
-            if (matchingEngine == null) {
-                throw new RuntimeException("no prepared matching engine");
-            }
-            if (matchingEngine.getStartupCommandOffset() != null) {
-                logger.info("seek to offset: {}", matchingEngine.getStartupCommandOffset() + 1);
-                consumer.seek(partition, matchingEngine.getStartupCommandOffset() + 1);
+            // an engine that keeps its partition across a rebalance continues where it stopped
+            MatchingEngine matchingEngine = matchingEngines.computeIfAbsent(shardOf(partition), shard -> {
+                MatchingEngine engine = matchingEngineLoader.takeMatchingEngine(shard);
+                engine.open();
+                return engine;
+            });
+            if (matchingEngine.getCommandOffset() != null) {
+                logger.info("seek to offset: {}", matchingEngine.getCommandOffset() + 1);
+                consumer.seek(partition, matchingEngine.getCommandOffset() + 1);
             }
         }
     }
@@ -56,7 +97,47 @@ public class MatchingEngineThread extends KafkaConsumerThread<String, Command>
 
     @Override
     protected void doPoll() {
-        consumer.poll(Duration.ofSeconds(5))
-                .forEach(x -> matchingEngine.executeCommand(x.value(), x.offset()));
+        var records = consumer.poll(Duration.ofSeconds(5));
+        if (records.isEmpty()) {
+            matchingEngines.values().forEach(x -> x.getMetrics().setConsumerLag(0));
+            return;
+        }
+        for (TopicPartition partition : records.partitions()) {
+            int shard = shardOf(partition);
+            MatchingEngine matchingEngine = matchingEngines.get(shard);
+            try {
+                // messages and forwarded commands of a batch are committed together on a sharded engine
+                matchingEngine.beginBatch();
+                records.records(partition).forEach(x -> matchingEngine.executeCommand(x.value(), x.offset()));
+                matchingEngine.commitBatch();
+            } catch (RuntimeException e) {
+                if (isFatal(e)) {
+                    // the engine ran commands whose messages were not committed, its state is dropped
+                    logger.error("engine of shard {} was fenced by another one", shard);
+                    matchingEngines.remove(shard);
+                    matchingEngine.close();
+                    matchingEngineLoader.releaseMatchingEngine(shard);
+                }
+                throw e;
+            }
+            // computed from the last fetch, it does not ask the broker
+            matchingEngine.getMetrics().setConsumerLag(consumer.currentLag(partition).orElse(0));
+        }
+    }
+
+    @Override
+    protected boolean isFatal(Exception e) {
+        // a send that failed is reported by the commit, with the fencing as its cause
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProducerFencedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int shardOf(TopicPartition partition) {
+        // the unsharded engine has a single command partition
+        return appProperties.getMatchingEngineShards() > 1 ? partition.partition() : 0;
     }
 }
@@ -1,7 +1,9 @@
 package com.gitbitex.matchingengine;
 
 import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.Command;
 import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.message.MessageBatchWriter;
 import com.gitbitex.matchingengine.message.MessageSerializer;
 import com.gitbitex.middleware.kafka.KafkaProperties;
 import lombok.extern.slf4j.Slf4j;
@@ -9,6 +11,8 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import java.util.Properties;
@@ -16,26 +20,139 @@ import java.util.Properties;
 @Slf4j
 @Component
 public class MessageSender {
+    // keeps a batch record well below the default 1MB record size limit
+    private static final int MAX_BATCH_MESSAGES = 500;
+    private static final int BATCH_BUFFER_SIZE = 256 * 1024;
     private final AppProperties appProperties;
     private final KafkaProperties kafkaProperties;
-    private final KafkaProducer<String, Message> kafkaProducer;
+    // set for the sender of an engine shard, which writes to its own partition inside one transaction per batch
+    private final Integer shard;
+    private final boolean batchExecution;
+    // messages of the current batch, encoded as they are sent so the engine can reuse its message objects
+    private final MessageBatchWriter batchWriter;
+    private KafkaProducer<String, Object> kafkaProducer;
+    private boolean inBatch;
 
+    @Autowired
     public MessageSender(AppProperties appProperties, KafkaProperties kafkaProperties) {
+        this(appProperties, kafkaProperties, null);
+    }
+
+    /**
+     * Creates the sender of an engine, of a shard or of the unsharded engine if {@code shard} is null. Its producer
+     * is only created by {@link #open()}, so that engines prepared in the background neither fence the one that is
+     * running nor send anything: until then, messages and commands are dropped.
+     */
+    public MessageSender(AppProperties appProperties, KafkaProperties kafkaProperties, @Nullable Integer shard) {
         this.appProperties = appProperties;
         this.kafkaProperties = kafkaProperties;
-        this.kafkaProducer = kafkaProducer();
+        this.shard = shard;
+        this.batchExecution = appProperties.isMatchingEngineBatchExecution();
+        this.batchWriter = new MessageBatchWriter(new MessageSerializer(appProperties.isMatchingEngineBinaryFormat()),
+                BATCH_BUFFER_SIZE);
+    }
+
+    public void open() {
+        if (kafkaProducer == null) {
+            kafkaProducer = kafkaProducer();
+            if (shard != null) {
+                kafkaProducer.initTransactions();
+            }
+        }
     }
 
     public void send(Message message) {
-        ProducerRecord<String, Message> record = new ProducerRecord<>(appProperties.getMatchingEngineMessageTopic(), message);
+        if (kafkaProducer == null) {
+            return;
+        }
+        if (inBatch) {
+            batchWriter.add(message);
+            if (batchWriter.getCount() >= MAX_BATCH_MESSAGES) {
+                sendPendingMessages();
+            }
+            return;
+        }
+        // the producer serializes the message before send returns, so it is not kept either
+        ProducerRecord<String, Object> record = new ProducerRecord<>(appProperties.getMatchingEngineMessageTopic(),
+                shard, null, message);
+        kafkaProducer.send(record);
+    }
+
+    /**
+     * Sends a command to another engine shard, in the same transaction as the messages of the batch.
+     */
+    public void forward(Command command, int targetShard) {
+        if (shard == null) {
+            throw new IllegalStateException("forwarding needs a shard sender");
+        }
+        if (kafkaProducer == null) {
+            return;
+        }
+        ProducerRecord<String, Object> record = new ProducerRecord<>(appProperties.getMatchingEngineCommandTopic(),
+                targetShard, null, command);
+        kafkaProducer.send(record);
+    }
+
+    public void beginBatch() {
+        if (kafkaProducer == null) {
+            return;
+        }
+        if (shard != null) {
+            kafkaProducer.beginTransaction();
+        }
+        inBatch = batchExecution;
+    }
+
+    public void commitBatch() {
+        if (kafkaProducer == null) {
+            return;
+        }
+        if (inBatch) {
+            sendPendingMessages();
+            inBatch = false;
+        }
+        if (shard != null) {
+            kafkaProducer.commitTransaction();
+        } else if (batchExecution) {
+            kafkaProducer.flush();
+        }
+    }
+
+    /**
+     * Waits until every message sent so far is acknowledged by the broker.
+     */
+    public void flush() {
+        if (kafkaProducer != null) {
+            kafkaProducer.flush();
+        }
+    }
+
+    /**
+     * Closes the producer of an engine that stops running, its shard may be taken over by a new producer.
+     */
+    public void close() {
+        if (kafkaProducer != null) {
+            kafkaProducer.close();
+            kafkaProducer = null;
+        }
+    }
+
+    private void sendPendingMessages() {
+        if (batchWriter.isEmpty()) {
+            return;
+        }
+        ProducerRecord<String, Object> record = new ProducerRecord<>(appProperties.getMatchingEngineMessageTopic(),
+                shard, null, batchWriter.toByteArray());
+        batchWriter.reset();
         kafkaProducer.send(record);
     }
 
-    private KafkaProducer<String, Message> kafkaProducer() {
+    private KafkaProducer<String, Object> kafkaProducer() {
         Properties properties = new Properties();
         properties.put("bootstrap.servers", kafkaProperties.getBootstrapServers());
         properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, MessageSerializer.class.getName());
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EngineRecordSerializer.class.getName());
+        properties.put(BinaryWriter.BINARY_FORMAT_CONFIG, appProperties.isMatchingEngineBinaryFormat());
         properties.put("compression.type", "zstd");
         properties.put("retries", 2147483647);
         properties.put("linger.ms", 100);
@@ -43,6 +160,9 @@ public class MessageSender {
         properties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true"); //Important, prevent message duplication
         properties.put("max.in.flight.requests.per.connection", 5); // Must be less than or equal to 5
         properties.put(ProducerConfig.ACKS_CONFIG, "all");
+        if (shard != null) {
+            properties.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, "matching-engine-shard-" + shard);
+        }
         return new KafkaProducer<>(properties);
     }
 }
@@ -3,6 +3,8 @@ package com.gitbitex.matchingengine;
 import com.gitbitex.enums.OrderSide;
 import com.gitbitex.enums.OrderStatus;
 import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
+import com.gitbitex.enums.TimeInForce;
 import com.gitbitex.matchingengine.command.PlaceOrderCommand;
 import lombok.Getter;
 import lombok.Setter;
@@ -28,6 +30,26 @@ public class Order implements Cloneable {
     private String productId;
     private OrderStatus status;
     private String clientOid;
+    private TimeInForce timeInForce;
+    private Date expireTime;
+    private SelfTradePrevention selfTradePrevention;
+    // set for stop and stop-limit orders
+    private BigDecimal stopPrice;
+    // scaled copies of price/remainingSize/remainingFunds, only used in fixed-point mode
+    private transient long scaledPrice;
+    private transient long scaledRemainingSize;
+    private transient long scaledRemainingFunds;
+    // links of the price level queue the order is resting in
+    private transient PriceGroupedOrderCollection level;
+    private transient Order prev;
+    private transient Order next;
+    // links of the user's resting orders in the book, or of its stop orders while the order waits, see UserOrderIndex
+    private transient Order userPrev;
+    private transient Order userNext;
+    // epoch of the snapshot dirty set the order was last added to, see SnapshotDirtySet
+    private transient long snapshotEpoch;
+    // hash the order last added to the state digest, see StateDigest
+    private transient long stateHash;
 
     public Order() {
     }
@@ -48,12 +70,40 @@ public class Order implements Cloneable {
         this.remainingSize = this.size;
         this.remainingFunds = this.funds;
         this.time = command.getTime();
+        this.timeInForce = command.getTimeInForce();
+        this.expireTime = command.getExpireTime();
+        this.postOnly = command.isPostOnly();
+        this.selfTradePrevention = command.getSelfTradePrevention();
+        this.stopPrice = command.getStopPrice();
+    }
+
+    /**
+     * Loads the scaled fields from the decimal fields when the order enters a fixed-point order book.
+     */
+    public void toScaled(Product product) {
+        this.scaledPrice = FixedPoint.toLong(price, product.getQuoteScale());
+        this.scaledRemainingSize = FixedPoint.toLong(remainingSize, product.getBaseScale());
+        this.scaledRemainingFunds = FixedPoint.toLong(remainingFunds, product.fundsScale());
+    }
+
+    /**
+     * Writes the scaled fields back to the decimal fields before the order leaves the engine.
+     */
+    public void fromScaled(Product product) {
+        this.remainingSize = FixedPoint.toBigDecimal(scaledRemainingSize, product.getBaseScale());
+        this.remainingFunds = FixedPoint.toBigDecimal(scaledRemainingFunds, product.fundsScale());
     }
 
     @Override
     public Order clone() {
         try {
-            return (Order) super.clone();
+            Order order = (Order) super.clone();
+            order.level = null;
+            order.prev = null;
+            order.next = null;
+            order.userPrev = null;
+            order.userNext = null;
+            return order;
         } catch (CloneNotSupportedException e) {
             throw new AssertionError();
         }
@@ -4,16 +4,20 @@ import com.alibaba.fastjson.JSON;
 import com.gitbitex.enums.OrderSide;
 import com.gitbitex.enums.OrderStatus;
 import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
+import com.gitbitex.enums.TimeInForce;
 import com.gitbitex.matchingengine.message.OrderMessage;
 import com.gitbitex.matchingengine.message.TradeMessage;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Getter
@@ -21,27 +25,70 @@ import java.util.concurrent.atomic.AtomicLong;
 public class OrderBook {
     private final String productId;
     private final ProductBook productBook;
-    private final AccountBook accountBook;
-    private final Depth asks = new Depth(Comparator.naturalOrder());
-    private final Depth bids = new Depth(Comparator.reverseOrder());
-    private final Map<String, Order> orderById = new HashMap<>();
+    private final Ledger ledger;
+    private final PriceLevels asks;
+    private final PriceLevels bids;
+    private final OrderIndex orderById = new OrderIndex();
+    private final UserOrderIndex ordersByUser = new UserOrderIndex();
     private final MessageSender messageSender;
     private final AtomicLong messageSequence;
+    private final boolean fixedPoint;
+    // resting orders a user may have in the book, 0 for no limit
+    private final int maxOpenOrders;
+    // collects the orders changed since the last engine snapshot, null if the engine takes no snapshots
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private final SnapshotDirtySet snapshotDirtySet;
+    // null if the engine keeps no state digest
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private final StateDigest stateDigest;
+    // reused for every message, the message sender encodes a message before send returns
+    @Getter(AccessLevel.NONE)
+    private final OrderMessage orderMessage = new OrderMessage();
+    @Getter(AccessLevel.NONE)
+    private final TradeMessage tradeMessage = new TradeMessage();
+    @Getter(AccessLevel.NONE)
+    private final Trade reusedTrade = new Trade();
+    @Getter(AccessLevel.NONE)
+    private final ExpiryWheel expiryWheel = new ExpiryWheel(4096);
+    private final StopBook stopBook = new StopBook();
+    // range of the trade prices since stop orders were last triggered, null if there was no trade
+    @Getter(AccessLevel.NONE)
+    private BigDecimal lowTradePrice;
+    @Getter(AccessLevel.NONE)
+    private BigDecimal highTradePrice;
     private long orderSequence;
     private long tradeSequence;
     private long orderBookSequence;
+    // running totals read by EngineMetrics
+    private long levelsSwept;
+    private long holdFailures;
 
     public OrderBook(String productId,
                      long orderSequence, long tradeSequence, long orderBookSequence,
-                     AccountBook accountBook, ProductBook productBook, MessageSender messageSender, AtomicLong messageSequence) {
+                     Ledger ledger, ProductBook productBook, MessageSender messageSender, AtomicLong messageSequence,
+                     boolean fixedPoint, int priceLadderSize, int maxOpenOrders,
+                     @Nullable SnapshotDirtySet snapshotDirtySet, @Nullable StateDigest stateDigest) {
         this.productId = productId;
         this.productBook = productBook;
-        this.accountBook = accountBook;
+        this.ledger = ledger;
         this.orderSequence = orderSequence;
         this.tradeSequence = tradeSequence;
         this.orderBookSequence = orderBookSequence;
         this.messageSender = messageSender;
         this.messageSequence = messageSequence;
+        this.fixedPoint = fixedPoint;
+        this.maxOpenOrders = maxOpenOrders;
+        this.snapshotDirtySet = snapshotDirtySet;
+        this.stateDigest = stateDigest;
+        if (fixedPoint && priceLadderSize > 0) {
+            this.asks = new PriceLadder(priceLadderSize, true);
+            this.bids = new PriceLadder(priceLadderSize, false);
+        } else {
+            this.asks = new Depth(Comparator.naturalOrder(), fixedPoint);
+            this.bids = new Depth(Comparator.reverseOrder(), fixedPoint);
+        }
     }
 
     public void placeOrder(Order takerOrder) {
@@ -53,109 +100,455 @@ public class OrderBook {
 
         takerOrder.setSequence(++orderSequence);
 
-        boolean ok;
-        if (takerOrder.getSide() == OrderSide.BUY) {
-            ok = accountBook.hold(takerOrder.getUserId(), product.getQuoteCurrency(), takerOrder.getRemainingFunds());
-        } else {
-            ok = accountBook.hold(takerOrder.getUserId(), product.getBaseCurrency(), takerOrder.getRemainingSize());
+        if (fixedPoint) {
+            try {
+                takerOrder.toScaled(product);
+            } catch (ArithmeticException e) {
+                logger.warn("order rejected, reason: BAD_SCALE: {}", JSON.toJSONString(takerOrder));
+                takerOrder.setStatus(OrderStatus.REJECTED);
+                messageSender.send(orderMessage(takerOrder, product));
+                return;
+            }
         }
-        if (!ok) {
+
+        if (!holdOrderFunds(takerOrder, product)) {
             logger.warn("order rejected, reason: INSUFFICIENT_FUNDS: {}", JSON.toJSONString(takerOrder));
+            holdFailures++;
+            takerOrder.setStatus(OrderStatus.REJECTED);
+            messageSender.send(orderMessage(takerOrder, product));
+            return;
+        }
+
+        if (takerOrder.getStopPrice() != null) {
+            // the funds stay held while the order waits, so it can be placed the moment it triggers
+            takerOrder.setStatus(OrderStatus.PENDING);
+            addStopOrder(takerOrder);
+            messageSender.send(orderMessage(takerOrder, product));
+            return;
+        }
+
+        submitOrder(takerOrder, product);
+        triggerStopOrders(product);
+    }
+
+    /**
+     * Matches an order whose funds are held and rests what is left of it, for new orders and triggered stop orders.
+     */
+    private void submitOrder(Order takerOrder, Product product) {
+        if (takerOrder.getTimeInForce() == TimeInForce.FOK && !isFillable(takerOrder)) {
+            unholdOrderFunds(takerOrder, product);
+            takerOrder.setStatus(OrderStatus.REJECTED);
+            messageSender.send(orderMessage(takerOrder, product));
+            return;
+        }
+
+        if (isOpenOrderLimitReached(takerOrder)) {
+            logger.warn("order rejected, reason: TOO_MANY_OPEN_ORDERS: {}", JSON.toJSONString(takerOrder));
+            unholdOrderFunds(takerOrder, product);
+            takerOrder.setStatus(OrderStatus.REJECTED);
+            messageSender.send(orderMessage(takerOrder, product));
+            return;
+        }
+
+        // a post-only order must not take liquidity, the top of the book tells whether it would
+        var makerDepth = takerOrder.getSide() == OrderSide.BUY ? asks : bids;
+        if (takerOrder.isPostOnly() && makerDepth.getBestLevel() != null
+                && isPriceCrossed(takerOrder, makerDepth.getBestLevel())) {
+            unholdOrderFunds(takerOrder, product);
             takerOrder.setStatus(OrderStatus.REJECTED);
-            messageSender.send(orderMessage(takerOrder.clone()));
+            messageSender.send(orderMessage(takerOrder, product));
             return;
         }
 
         // order received
         takerOrder.setStatus(OrderStatus.RECEIVED);
-        messageSender.send(orderMessage(takerOrder.clone()));
+        messageSender.send(orderMessage(takerOrder, product));
 
-        // start matching
-        var makerDepth = takerOrder.getSide() == OrderSide.BUY ? asks : bids;
-        var depthEntryItr = makerDepth.entrySet().iterator();
-        MATCHING:
-        while (depthEntryItr.hasNext()) {
-            var entry = depthEntryItr.next();
-            var price = entry.getKey();
-            var orders = entry.getValue();
+        boolean takerCancelled = matchOrder(takerOrder, makerDepth, product);
 
+        // If the taker order is not fully filled, put the taker order into the order book, otherwise mark
+        // the order as done,The market order will never be added to the order book, and the market order without
+        // fully filled will be cancelled, so will IOC and FOK orders
+        if (takerOrder.getType() == OrderType.LIMIT && hasRemainingSize(takerOrder) && !isImmediate(takerOrder)
+                && !takerCancelled) {
+            addOrder(takerOrder);
+            takerOrder.setStatus(OrderStatus.OPEN);
+            orderBookSequence++;
+        } else {
+            if (hasRemainingSize(takerOrder) || takerCancelled) {
+                takerOrder.setStatus(OrderStatus.CANCELLED);
+            } else {
+                takerOrder.setStatus(OrderStatus.FILLED);
+            }
+            unholdOrderFunds(takerOrder, product);
+        }
+
+        messageSender.send(orderMessage(takerOrder, product));
+    }
+
+    /**
+     * Matches the taker against the maker side until it is filled or no longer crosses. Returns whether self-trade
+     * prevention cancelled the rest of the taker.
+     */
+    private boolean matchOrder(Order takerOrder, PriceLevels makerDepth, Product product) {
+        PriceGroupedOrderCollection orders;
+        boolean takerCancelled = false;
+        MATCHING:
+        while ((orders = makerDepth.getBestLevel()) != null) {
             // check whether there is price crossing between the taker and the maker
-            if (!isPriceCrossed(takerOrder, price)) {
+            if (!isPriceCrossed(takerOrder, orders)) {
                 break;
             }
-
-            var orderItr = orders.entrySet().iterator();
-            while (orderItr.hasNext()) {
-                var orderEntry = orderItr.next();
-                var makerOrder = orderEntry.getValue();
+            levelsSwept++;
+
+            Order makerOrder = orders.getHead();
+            while (makerOrder != null) {
+                Order nextMakerOrder = makerOrder.getNext();
+
+                if (isSelfTrade(takerOrder, makerOrder)) {
+                    SelfTradePrevention stp = takerOrder.getSelfTradePrevention();
+                    if (stp == SelfTradePrevention.CANCEL_NEWEST) {
+                        takerCancelled = true;
+                        break;
+                    }
+                    if (stp == SelfTradePrevention.DECREMENT_AND_CANCEL) {
+                        if (!decrementSelfTrade(takerOrder, makerOrder, product, orders)) {
+                            break MATCHING;
+                        }
+                    }
+                    if (stp == SelfTradePrevention.CANCEL_OLDEST || !hasRemainingSize(makerOrder)) {
+                        orders.removeOrder(makerOrder);
+                        unindexOrder(makerOrder);
+                        makerOrder.setStatus(OrderStatus.CANCELLED);
+                        unholdOrderFunds(makerOrder, product);
+                    }
+                    orderBookSequence++;
+                    messageSender.send(orderMessage(makerOrder, product));
+                    // a market buy only knows its funds, it stops when they no longer buy anything
+                    if (!hasRemainingSize(takerOrder) && !isMarketBuy(takerOrder)) {
+                        takerCancelled = true;
+                        break;
+                    }
+                    makerOrder = nextMakerOrder;
+                    continue;
+                }
 
                 // make trade
-                Trade trade = trade(takerOrder, makerOrder);
+                long makerSize = makerOrder.getScaledRemainingSize();
+                Trade trade = fixedPoint
+                        ? scaledTrade(takerOrder, makerOrder, product)
+                        : trade(takerOrder, makerOrder, product);
                 if (trade == null) {
                     break MATCHING;
                 }
-
-                // exchange account funds
-                accountBook.exchange(takerOrder.getUserId(), makerOrder.getUserId(), product.getBaseCurrency(),
-                        product.getQuoteCurrency(), takerOrder.getSide(), trade.getSize(), trade.getFunds());
+                if (fixedPoint) {
+                    orders.decrScaledRemainingSize(makerSize - makerOrder.getScaledRemainingSize());
+                } else {
+                    orders.decrRemainingSize(trade.getSize());
+                }
 
                 // if the maker order is filled or cancelled, remove it from the order book.
                 if (makerOrder.getStatus() == OrderStatus.FILLED || makerOrder.getStatus() == OrderStatus.CANCELLED) {
-                    orderItr.remove();
-                    orderById.remove(makerOrder.getId());
+                    orders.removeOrder(makerOrder);
+                    unindexOrder(makerOrder);
                     unholdOrderFunds(makerOrder, product);
                 }
 
                 orderBookSequence++;
-                messageSender.send(orderMessage(makerOrder.clone()));
+                messageSender.send(orderMessage(makerOrder, product));
                 messageSender.send(tradeMessage(trade));
+                makerOrder = nextMakerOrder;
             }
 
             // remove price line with empty order list
             if (orders.isEmpty()) {
-                depthEntryItr.remove();
+                makerDepth.removeLevel(orders);
+            }
+            if (takerCancelled) {
+                break;
             }
         }
+        return takerCancelled;
+    }
 
-        // If the taker order is not fully filled, put the taker order into the order book, otherwise mark
-        // the order as done,The market order will never be added to the order book, and the market order without
-        // fully filled will be cancelled
-        if (takerOrder.getType() == OrderType.LIMIT && takerOrder.getRemainingSize().compareTo(BigDecimal.ZERO) > 0) {
-            addOrder(takerOrder);
-            takerOrder.setStatus(OrderStatus.OPEN);
-            orderBookSequence++;
+    /**
+     * Places the stop orders triggered by the trades of the command, and those triggered by their trades in turn.
+     */
+    private void triggerStopOrders(Product product) {
+        while (highTradePrice != null) {
+            List<Order> triggered = stopBook.trigger(lowTradePrice, highTradePrice);
+            lowTradePrice = null;
+            highTradePrice = null;
+            for (Order order : triggered) {
+                submitOrder(order, product);
+            }
+        }
+    }
+
+    /**
+     * Changes the size and the price of a resting order in one step. {@code size} is the new total size including
+     * what was already filled, a null size or price keeps the current one. A smaller size keeps the order's place in
+     * the queue, a larger size or another price puts it at the back of the queue, and a price that crosses the book
+     * matches it first, like a new order. The hold follows the new remaining size and price. An amend that cannot be
+     * applied is rejected and leaves the order as it was.
+     */
+    public void amendOrder(String orderId, String userId, @Nullable BigDecimal size, @Nullable BigDecimal price) {
+        var order = orderById.get(orderId);
+        if (order == null) {
+            logger.warn("amend rejected, reason: ORDER_NOT_FOUND: {}", orderId);
+            return;
+        }
+        if (!order.getUserId().equals(userId)) {
+            logger.warn("amend rejected, reason: NOT_ORDER_OWNER: {} {}", orderId, userId);
+            return;
+        }
+        var product = productBook.getProduct(productId);
+        if (fixedPoint) {
+            order.fromScaled(product);
+        }
+
+        BigDecimal newPrice = price != null ? price : order.getPrice();
+        BigDecimal newSize = size != null ? size : order.getSize();
+        BigDecimal newRemainingSize = newSize.subtract(order.getSize().subtract(order.getRemainingSize()));
+        if (newRemainingSize.signum() <= 0 || newPrice.signum() <= 0) {
+            logger.warn("amend rejected, reason: BAD_SIZE_OR_PRICE: {} {} {}", orderId, size, price);
+            return;
+        }
+        long scaledPrice = 0;
+        long scaledRemainingSize = 0;
+        long scaledRemainingFunds = 0;
+        BigDecimal newRemainingFunds;
+        if (fixedPoint) {
+            try {
+                scaledPrice = FixedPoint.toLong(newPrice, product.getQuoteScale());
+                scaledRemainingSize = FixedPoint.toLong(newRemainingSize, product.getBaseScale());
+                scaledRemainingFunds = Math.multiplyExact(scaledRemainingSize, scaledPrice);
+            } catch (ArithmeticException e) {
+                logger.warn("amend rejected, reason: BAD_SCALE: {} {} {}", orderId, size, price);
+                return;
+            }
+            newRemainingFunds = FixedPoint.toBigDecimal(scaledRemainingFunds, product.fundsScale());
         } else {
-            if (takerOrder.getRemainingSize().compareTo(BigDecimal.ZERO) > 0) {
-                takerOrder.setStatus(OrderStatus.CANCELLED);
-            } else {
-                takerOrder.setStatus(OrderStatus.FILLED);
+            newRemainingFunds = newRemainingSize.multiply(newPrice);
+        }
+
+        var depth = order.getSide() == OrderSide.BUY ? bids : asks;
+        var makerDepth = order.getSide() == OrderSide.BUY ? asks : bids;
+        var bestLevel = makerDepth.getBestLevel();
+        boolean crossed = bestLevel != null && (order.getSide() == OrderSide.BUY
+                ? newPrice.compareTo(bestLevel.getPrice()) >= 0
+                : newPrice.compareTo(bestLevel.getPrice()) <= 0);
+        if (crossed && order.isPostOnly()) {
+            logger.warn("amend rejected, reason: POST_ONLY: {} {}", orderId, price);
+            return;
+        }
+        if (!adjustOrderHold(order, product, newRemainingSize, newRemainingFunds, scaledRemainingSize,
+                scaledRemainingFunds)) {
+            if (ledger instanceof ShardLedger shardLedger && shardLedger.getMissingHold() != null) {
+                // asked from the account shard, the amend comes back once it is held
+                return;
             }
-            unholdOrderFunds(takerOrder, product);
+            logger.warn("amend rejected, reason: INSUFFICIENT_FUNDS: {} {} {}", orderId, size, price);
+            holdFailures++;
+            return;
         }
 
-        messageSender.send(orderMessage(takerOrder.clone()));
+        boolean keepsPlace = newPrice.compareTo(order.getPrice()) == 0
+                && newRemainingSize.compareTo(order.getRemainingSize()) <= 0;
+        if (keepsPlace && fixedPoint) {
+            order.getLevel().decrScaledRemainingSize(order.getScaledRemainingSize() - scaledRemainingSize);
+        } else if (keepsPlace) {
+            order.getLevel().decrRemainingSize(order.getRemainingSize().subtract(newRemainingSize));
+        } else {
+            depth.removeOrder(order);
+        }
+        order.setFunds(order.getFunds().subtract(order.getRemainingFunds()).add(newRemainingFunds));
+        order.setSize(newSize);
+        order.setPrice(newPrice);
+        order.setRemainingSize(newRemainingSize);
+        order.setRemainingFunds(newRemainingFunds);
+        if (fixedPoint) {
+            order.setScaledPrice(scaledPrice);
+            order.setScaledRemainingSize(scaledRemainingSize);
+            order.setScaledRemainingFunds(scaledRemainingFunds);
+        }
+
+        // the order stays in the id and user indexes and in the expiry wheel unless it leaves the book
+        boolean takerCancelled = crossed && matchOrder(order, makerDepth, product);
+        if (!hasRemainingSize(order) || takerCancelled) {
+            unindexOrder(order);
+            order.setStatus(takerCancelled ? OrderStatus.CANCELLED : OrderStatus.FILLED);
+            unholdOrderFunds(order, product);
+        } else if (!keepsPlace) {
+            depth.addOrder(order);
+        }
+        orderBookSequence++;
+        messageSender.send(orderMessage(order, product));
+        triggerStopOrders(product);
+    }
+
+    /**
+     * Holds or releases the difference between what the order holds and what it will hold after an amend. Only a
+     * larger hold can fail, on a product shard it takes what the account shard held for the amend, see
+     * {@link ShardLedger#beginAmend}.
+     */
+    private boolean adjustOrderHold(Order order, Product product, BigDecimal newRemainingSize,
+                                    BigDecimal newRemainingFunds, long scaledRemainingSize,
+                                    long scaledRemainingFunds) {
+        boolean buy = order.getSide() == OrderSide.BUY;
+        String currency = buy ? product.getQuoteCurrency() : product.getBaseCurrency();
+        if (fixedPoint) {
+            int scale = buy ? product.fundsScale() : product.getBaseScale();
+            long delta = buy
+                    ? scaledRemainingFunds - order.getScaledRemainingFunds()
+                    : scaledRemainingSize - order.getScaledRemainingSize();
+            if (delta > 0) {
+                return ledger.hold(order.getUserId(), currency, delta, scale);
+            }
+            if (delta < 0) {
+                ledger.unhold(order.getUserId(), currency, -delta, scale);
+            }
+            return true;
+        }
+        BigDecimal delta = buy
+                ? newRemainingFunds.subtract(order.getRemainingFunds())
+                : newRemainingSize.subtract(order.getRemainingSize());
+        if (delta.signum() > 0) {
+            return ledger.hold(order.getUserId(), currency, delta);
+        }
+        if (delta.signum() < 0) {
+            ledger.unhold(order.getUserId(), currency, delta.negate());
+        }
+        return true;
     }
 
     public void cancelOrder(String orderId) {
-        var order = orderById.remove(orderId);
+        var order = orderById.get(orderId);
+        if (order == null) {
+            order = stopBook.get(orderId);
+        }
         if (order == null) {
             return;
         }
+        cancelOrder(order);
+    }
 
-        // remove order from depth
-        var depth = order.getSide() == OrderSide.BUY ? bids : asks;
-        depth.removeOrder(order);
+    /**
+     * Cancels all resting and pending stop orders of the user, on one side or on both if {@code side} is null. Resting
+     * orders go first, in the order they entered the book.
+     */
+    public void cancelOrders(String userId, @Nullable OrderSide side) {
+        Order order = ordersByUser.getHead(userId);
+        while (order != null) {
+            // cancelling unlinks the order from the user's list
+            Order next = order.getUserNext();
+            if (side == null || order.getSide() == side) {
+                cancelOrder(order);
+            }
+            order = next;
+        }
+        order = stopBook.getHead(userId);
+        while (order != null) {
+            Order next = order.getUserNext();
+            if (side == null || order.getSide() == side) {
+                cancelOrder(order);
+            }
+            order = next;
+        }
+    }
+
+    public int countOpenOrders(String userId) {
+        return ordersByUser.count(userId);
+    }
+
+    /**
+     * Cancels the GTT orders whose expire time is not after {@code now}, the engine's clock.
+     */
+    public void expireOrders(long now) {
+        expiryWheel.advance(now, this::cancelOrder);
+    }
+
+    private void cancelOrder(Order order) {
+        if (order.getStatus() == OrderStatus.PENDING) {
+            stopBook.remove(order);
+        } else {
+            // remove order from depth
+            var depth = order.getSide() == OrderSide.BUY ? bids : asks;
+            depth.removeOrder(order);
+            unindexOrder(order);
+        }
 
         order.setStatus(OrderStatus.CANCELLED);
 
-        messageSender.send(orderMessage(order.clone()));
+        var product = productBook.getProduct(productId);
+        messageSender.send(orderMessage(order, product));
 
         // un-hold funds
-        var product = productBook.getProduct(productId);
         unholdOrderFunds(order, product);
     }
 
-    private Trade trade(Order takerOrder, Order makerOrder) {
+    /**
+     * Decrement-and-cancel self-trade prevention: shrinks both orders by the size they would have traded, without a
+     * trade, and the maker's level with them. For a single user the exchange of a trade nets out to releasing what
+     * both orders held for it, so that is released instead. Returns false if the taker has nothing left, like a null
+     * trade.
+     */
+    private boolean decrementSelfTrade(Order takerOrder, Order makerOrder, Product product,
+                                       PriceGroupedOrderCollection level) {
+        Order buyOrder = takerOrder.getSide() == OrderSide.BUY ? takerOrder : makerOrder;
+        if (fixedPoint) {
+            long price = makerOrder.getScaledPrice();
+            long takerSize = isMarketBuy(takerOrder)
+                    ? takerOrder.getScaledRemainingFunds() / price
+                    : takerOrder.getScaledRemainingSize();
+            if (takerSize == 0) {
+                return false;
+            }
+            long size = Math.min(takerSize, makerOrder.getScaledRemainingSize());
+            long funds = Math.multiplyExact(size, price);
+            takerOrder.setScaledRemainingSize(takerOrder.getScaledRemainingSize() - size);
+            makerOrder.setScaledRemainingSize(makerOrder.getScaledRemainingSize() - size);
+            buyOrder.setScaledRemainingFunds(buyOrder.getScaledRemainingFunds() - funds);
+            level.decrScaledRemainingSize(size);
+            // the order totals have no scaled fields
+            shrinkOrders(takerOrder, makerOrder, buyOrder, FixedPoint.toBigDecimal(size, product.getBaseScale()),
+                    FixedPoint.toBigDecimal(funds, product.fundsScale()));
+            ledger.unhold(takerOrder.getUserId(), product.getBaseCurrency(), size, product.getBaseScale());
+            ledger.unhold(takerOrder.getUserId(), product.getQuoteCurrency(), funds, product.fundsScale());
+            return true;
+        }
+
+        BigDecimal price = makerOrder.getPrice();
+        BigDecimal takerSize = isMarketBuy(takerOrder)
+                ? takerOrder.getRemainingFunds().divide(price, 4, RoundingMode.DOWN)
+                : takerOrder.getRemainingSize();
+        if (takerSize.compareTo(BigDecimal.ZERO) == 0) {
+            return false;
+        }
+        BigDecimal size = takerSize.min(makerOrder.getRemainingSize());
+        BigDecimal funds = size.multiply(price);
+        takerOrder.setRemainingSize(takerOrder.getRemainingSize().subtract(size));
+        makerOrder.setRemainingSize(makerOrder.getRemainingSize().subtract(size));
+        buyOrder.setRemainingFunds(buyOrder.getRemainingFunds().subtract(funds));
+        level.decrRemainingSize(size);
+        shrinkOrders(takerOrder, makerOrder, buyOrder, size, funds);
+        ledger.unhold(takerOrder.getUserId(), product.getBaseCurrency(), size);
+        ledger.unhold(takerOrder.getUserId(), product.getQuoteCurrency(), funds);
+        return true;
+    }
+
+    /**
+     * Takes the decremented size and funds off the orders' totals as well, so they do not count as filled.
+     */
+    private void shrinkOrders(Order takerOrder, Order makerOrder, Order buyOrder, BigDecimal size, BigDecimal funds) {
+        if (!isMarketBuy(takerOrder)) {
+            takerOrder.setSize(takerOrder.getSize().subtract(size));
+        }
+        makerOrder.setSize(makerOrder.getSize().subtract(size));
+        buyOrder.setFunds(buyOrder.getFunds().subtract(funds));
+    }
+
+    private Trade trade(Order takerOrder, Order makerOrder, Product product) {
         BigDecimal price = makerOrder.getPrice();
 
         // get taker size
@@ -188,61 +581,326 @@ public class OrderBook {
             makerOrder.setStatus(OrderStatus.FILLED);
         }
 
-        Trade trade = new Trade();
-        trade.setSequence(++tradeSequence);
-        trade.setProductId(productId);
-        trade.setSize(tradeSize);
-        trade.setFunds(tradeFunds);
-        trade.setPrice(price);
-        trade.setSide(makerOrder.getSide());
-        trade.setTime(takerOrder.getTime());
-        trade.setTakerOrderId(takerOrder.getId());
-        trade.setMakerOrderId(makerOrder.getId());
-        return trade;
+        // exchange account funds
+        ledger.exchange(takerOrder.getUserId(), makerOrder.getUserId(), product.getBaseCurrency(),
+                product.getQuoteCurrency(), takerOrder.getSide(), tradeSize, tradeFunds);
+
+        return newTrade(takerOrder, makerOrder, tradeSize, tradeFunds, price);
+    }
+
+    /**
+     * Fixed-point variant of {@link #trade(Order, Order, Product)}. Sizes are scaled by the base scale, prices by the
+     * quote scale and funds by the sum of both, so size * price is exact and needs no rounding. Decimals are only
+     * created for the outgoing trade, the orders get theirs when their messages are sent.
+     */
+    private Trade scaledTrade(Order takerOrder, Order makerOrder, Product product) {
+        long price = makerOrder.getScaledPrice();
+
+        // get taker size
+        long takerSize;
+        if (takerOrder.getSide() == OrderSide.BUY && takerOrder.getType() == OrderType.MARKET) {
+            // funds / price leaves the size scaled by the base scale, rounded down
+            takerSize = takerOrder.getScaledRemainingFunds() / price;
+        } else {
+            takerSize = takerOrder.getScaledRemainingSize();
+        }
+
+        if (takerSize == 0) {
+            return null;
+        }
+
+        // take the minimum size of taker and maker as trade size
+        long tradeSize = Math.min(takerSize, makerOrder.getScaledRemainingSize());
+        long tradeFunds = Math.multiplyExact(tradeSize, price);
+
+        // fill order
+        takerOrder.setScaledRemainingSize(takerOrder.getScaledRemainingSize() - tradeSize);
+        makerOrder.setScaledRemainingSize(makerOrder.getScaledRemainingSize() - tradeSize);
+        if (takerOrder.getSide() == OrderSide.BUY) {
+            takerOrder.setScaledRemainingFunds(takerOrder.getScaledRemainingFunds() - tradeFunds);
+        } else {
+            makerOrder.setScaledRemainingFunds(makerOrder.getScaledRemainingFunds() - tradeFunds);
+        }
+        if (makerOrder.getScaledRemainingSize() == 0) {
+            makerOrder.setStatus(OrderStatus.FILLED);
+        }
+
+        // exchange account funds
+        ledger.exchange(takerOrder.getUserId(), makerOrder.getUserId(), product.getBaseCurrency(),
+                product.getQuoteCurrency(), takerOrder.getSide(), tradeSize, product.getBaseScale(), tradeFunds,
+                product.fundsScale());
+
+        return newTrade(takerOrder, makerOrder,
+                FixedPoint.toBigDecimal(tradeSize, product.getBaseScale()),
+                FixedPoint.toBigDecimal(tradeFunds, product.fundsScale()),
+                makerOrder.getPrice());
+    }
+
+    private Trade newTrade(Order takerOrder, Order makerOrder, BigDecimal size, BigDecimal funds, BigDecimal price) {
+        reusedTrade.setSequence(++tradeSequence);
+        reusedTrade.setProductId(productId);
+        reusedTrade.setSize(size);
+        reusedTrade.setFunds(funds);
+        reusedTrade.setPrice(price);
+        reusedTrade.setSide(makerOrder.getSide());
+        reusedTrade.setTime(takerOrder.getTime());
+        reusedTrade.setTakerOrderId(takerOrder.getId());
+        reusedTrade.setMakerOrderId(makerOrder.getId());
+        if (highTradePrice == null) {
+            lowTradePrice = price;
+            highTradePrice = price;
+        } else {
+            lowTradePrice = lowTradePrice.min(price);
+            highTradePrice = highTradePrice.max(price);
+        }
+        return reusedTrade;
     }
 
     public void addOrder(Order order) {
         var depth = order.getSide() == OrderSide.BUY ? bids : asks;
         depth.addOrder(order);
-        orderById.put(order.getId(), order);
+        orderById.put(order);
+        ordersByUser.add(order);
+        if (order.getTimeInForce() == TimeInForce.GTT && order.getExpireTime() != null) {
+            expiryWheel.add(order);
+        }
+    }
+
+    private void addStopOrder(Order order) {
+        stopBook.add(order);
+        if (order.getTimeInForce() == TimeInForce.GTT && order.getExpireTime() != null) {
+            expiryWheel.add(order);
+        }
+    }
+
+    private void unindexOrder(Order order) {
+        orderById.remove(order.getId());
+        ordersByUser.remove(order);
+    }
+
+    /**
+     * The resting and pending stop orders of the book in sequence order, the order a snapshot restores them in, with
+     * their decimal fields up to date.
+     */
+    public List<Order> getSnapshotOrders() {
+        List<Order> orders = new ArrayList<>(orderById.size() + stopBook.size());
+        orderById.forEach(orders::add);
+        orders.addAll(stopBook.getOrders());
+        orders.sort(Comparator.comparingLong(Order::getSequence));
+        if (fixedPoint) {
+            Product product = productBook.getProduct(productId);
+            for (Order order : orders) {
+                order.fromScaled(product);
+            }
+        }
+        return orders;
     }
 
-    private boolean isPriceCrossed(Order takerOrder, BigDecimal makerOrderPrice) {
+    /**
+     * Adds an order loaded from a snapshot, a resting order or a pending stop order.
+     */
+    public void restoreOrder(Order order) {
+        if (fixedPoint) {
+            order.toScaled(productBook.getProduct(productId));
+        }
+        if (order.getStatus() == OrderStatus.PENDING) {
+            addStopOrder(order);
+        } else {
+            addOrder(order);
+        }
+    }
+
+    private boolean isPriceCrossed(Order takerOrder, PriceGroupedOrderCollection makerOrders) {
         if (takerOrder.getType() == OrderType.MARKET) {
             return true;
         }
+        int cmp = fixedPoint
+                ? Long.compare(takerOrder.getScaledPrice(), makerOrders.getScaledPrice())
+                : takerOrder.getPrice().compareTo(makerOrders.getPrice());
         if (takerOrder.getSide() == OrderSide.BUY) {
-            return takerOrder.getPrice().compareTo(makerOrderPrice) >= 0;
+            return cmp >= 0;
         } else {
-            return takerOrder.getPrice().compareTo(makerOrderPrice) <= 0;
+            return cmp <= 0;
+        }
+    }
+
+    /**
+     * Whether a limit order that may rest would take the user over the open order limit. Checked before matching,
+     * even though the order may be filled without resting, so whether it is accepted does not depend on the book.
+     */
+    private boolean isOpenOrderLimitReached(Order order) {
+        return maxOpenOrders > 0 && order.getType() == OrderType.LIMIT && !isImmediate(order)
+                && ordersByUser.count(order.getUserId()) >= maxOpenOrders;
+    }
+
+    private boolean isImmediate(Order order) {
+        return order.getTimeInForce() == TimeInForce.IOC || order.getTimeInForce() == TimeInForce.FOK;
+    }
+
+    /**
+     * Whether the maker levels crossing a fill-or-kill order hold enough to fill it entirely, checked before it takes
+     * anything. Market buys only know their funds, so they are checked against the funds of the levels.
+     */
+    private boolean isFillable(Order takerOrder) {
+        if (fixedPoint) {
+            return isScaledFillable(takerOrder);
+        }
+        var makerDepth = takerOrder.getSide() == OrderSide.BUY ? asks : bids;
+        boolean byFunds = takerOrder.getSide() == OrderSide.BUY && takerOrder.getType() == OrderType.MARKET;
+        BigDecimal wanted = byFunds ? takerOrder.getRemainingFunds() : takerOrder.getRemainingSize();
+        BigDecimal available = BigDecimal.ZERO;
+        for (var level = makerDepth.getBestLevel(); level != null && isPriceCrossed(takerOrder, level);
+             level = makerDepth.nextLevel(level)) {
+            if (takerOrder.getSelfTradePrevention() == null) {
+                available = available.add(byFunds
+                        ? level.getRemainingSize().multiply(level.getPrice())
+                        : level.getRemainingSize());
+                if (available.compareTo(wanted) >= 0) {
+                    return true;
+                }
+                continue;
+            }
+            // own orders do not fill the order: they are cancelled, or they stop it before it is filled
+            for (Order order = level.getHead(); order != null; order = order.getNext()) {
+                if (isSelfTrade(takerOrder, order)) {
+                    if (takerOrder.getSelfTradePrevention() != SelfTradePrevention.CANCEL_OLDEST) {
+                        return false;
+                    }
+                    continue;
+                }
+                available = available.add(byFunds
+                        ? order.getRemainingSize().multiply(level.getPrice())
+                        : order.getRemainingSize());
+                if (available.compareTo(wanted) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fixed-point variant of {@link #isFillable(Order)}, on the scaled sizes the levels and orders are kept in. Funds
+     * are scaled by the funds scale, like size * price.
+     */
+    private boolean isScaledFillable(Order takerOrder) {
+        var makerDepth = takerOrder.getSide() == OrderSide.BUY ? asks : bids;
+        boolean byFunds = takerOrder.getSide() == OrderSide.BUY && takerOrder.getType() == OrderType.MARKET;
+        long wanted = byFunds ? takerOrder.getScaledRemainingFunds() : takerOrder.getScaledRemainingSize();
+        long available = 0;
+        for (var level = makerDepth.getBestLevel(); level != null && isPriceCrossed(takerOrder, level);
+             level = makerDepth.nextLevel(level)) {
+            if (takerOrder.getSelfTradePrevention() == null) {
+                available += byFunds
+                        ? Math.multiplyExact(level.getScaledRemainingSize(), level.getScaledPrice())
+                        : level.getScaledRemainingSize();
+                if (available >= wanted) {
+                    return true;
+                }
+                continue;
+            }
+            for (Order order = level.getHead(); order != null; order = order.getNext()) {
+                if (isSelfTrade(takerOrder, order)) {
+                    if (takerOrder.getSelfTradePrevention() != SelfTradePrevention.CANCEL_OLDEST) {
+                        return false;
+                    }
+                    continue;
+                }
+                available += byFunds
+                        ? Math.multiplyExact(order.getScaledRemainingSize(), level.getScaledPrice())
+                        : order.getScaledRemainingSize();
+                if (available >= wanted) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isSelfTrade(Order takerOrder, Order makerOrder) {
+        return takerOrder.getSelfTradePrevention() != null && takerOrder.getUserId().equals(makerOrder.getUserId());
+    }
+
+    private boolean isMarketBuy(Order order) {
+        return order.getSide() == OrderSide.BUY && order.getType() == OrderType.MARKET;
+    }
+
+    private boolean hasRemainingSize(Order order) {
+        return fixedPoint
+                ? order.getScaledRemainingSize() > 0
+                : order.getRemainingSize().compareTo(BigDecimal.ZERO) > 0;
+    }
+
+    private boolean holdOrderFunds(Order order, Product product) {
+        return holdOrderFunds(ledger, order, product, fixedPoint);
+    }
+
+    /**
+     * Holds what a new order can spend, also used by the account shard before forwarding an order.
+     */
+    static boolean holdOrderFunds(Ledger ledger, Order order, Product product, boolean fixedPoint) {
+        if (fixedPoint) {
+            if (order.getSide() == OrderSide.BUY) {
+                return ledger.hold(order.getUserId(), product.getQuoteCurrency(),
+                        order.getScaledRemainingFunds(), product.fundsScale());
+            } else {
+                return ledger.hold(order.getUserId(), product.getBaseCurrency(),
+                        order.getScaledRemainingSize(), product.getBaseScale());
+            }
+        }
+        if (order.getSide() == OrderSide.BUY) {
+            return ledger.hold(order.getUserId(), product.getQuoteCurrency(), order.getRemainingFunds());
+        } else {
+            return ledger.hold(order.getUserId(), product.getBaseCurrency(), order.getRemainingSize());
         }
     }
 
     private void unholdOrderFunds(Order makerOrder, Product product) {
+        if (fixedPoint) {
+            if (makerOrder.getSide() == OrderSide.BUY) {
+                if (makerOrder.getScaledRemainingFunds() > 0) {
+                    ledger.unhold(makerOrder.getUserId(), product.getQuoteCurrency(),
+                            makerOrder.getScaledRemainingFunds(), product.fundsScale());
+                }
+            } else {
+                if (makerOrder.getScaledRemainingSize() > 0) {
+                    ledger.unhold(makerOrder.getUserId(), product.getBaseCurrency(),
+                            makerOrder.getScaledRemainingSize(), product.getBaseScale());
+                }
+            }
+            return;
+        }
         if (makerOrder.getSide() == OrderSide.BUY) {
             if (makerOrder.getRemainingFunds().compareTo(BigDecimal.ZERO) > 0) {
-                accountBook.unhold(makerOrder.getUserId(), product.getQuoteCurrency(), makerOrder.getRemainingFunds());
+                ledger.unhold(makerOrder.getUserId(), product.getQuoteCurrency(), makerOrder.getRemainingFunds());
             }
         } else {
             if (makerOrder.getRemainingSize().compareTo(BigDecimal.ZERO) > 0) {
-                accountBook.unhold(makerOrder.getUserId(), product.getBaseCurrency(), makerOrder.getRemainingSize());
+                ledger.unhold(makerOrder.getUserId(), product.getBaseCurrency(), makerOrder.getRemainingSize());
             }
         }
     }
 
-
-    private OrderMessage orderMessage(Order order) {
-        OrderMessage message = new OrderMessage();
-        message.setSequence(messageSequence.incrementAndGet());
-        message.setOrderBookSequence(orderBookSequence);
-        message.setOrder(order);
-        return message;
+    private OrderMessage orderMessage(Order order, Product product) {
+        // rejected orders never got to change, their decimals are still the ones from the command
+        if (fixedPoint && order.getStatus() != OrderStatus.REJECTED) {
+            order.fromScaled(product);
+        }
+        if (snapshotDirtySet != null) {
+            snapshotDirtySet.add(order);
+        }
+        if (stateDigest != null) {
+            stateDigest.update(order);
+        }
+        orderMessage.setSequence(messageSequence.incrementAndGet());
+        orderMessage.setOrderBookSequence(orderBookSequence);
+        orderMessage.setOrder(order);
+        return orderMessage;
     }
 
     private TradeMessage tradeMessage(Trade trade) {
-        TradeMessage message = new TradeMessage();
-        message.setSequence(messageSequence.incrementAndGet());
-        message.setTrade(trade);
-        return message;
+        tradeMessage.setSequence(messageSequence.incrementAndGet());
+        tradeMessage.setTrade(trade);
+        return tradeMessage;
     }
 }
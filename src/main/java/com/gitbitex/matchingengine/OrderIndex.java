@@ -0,0 +1,183 @@
+package com.gitbitex.matchingengine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Index of the resting orders of a book by order id.
+ * <p>
+ * Order ids are UUIDs in their canonical lowercase form, see {@code OrderController}. They are parsed into two longs
+ * and kept in an open-addressing table with linear probing, so lookups neither hash strings nor follow entry
+ * objects. Any other id, such as one sent by an admin, falls back to a plain map.
+ */
+public class OrderIndex {
+    private static final float LOAD_FACTOR = 0.5f;
+    private final Map<String, Order> otherOrders = new HashMap<>();
+    private long[] highs;
+    private long[] lows;
+    // a null order marks a free slot
+    private Order[] orders;
+    private int size;
+    // the two halves of the last id parsed by parseUuid
+    private long high;
+    private long low;
+
+    public OrderIndex() {
+        this(1024);
+    }
+
+    public OrderIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.highs = new long[capacity];
+        this.lows = new long[capacity];
+        this.orders = new Order[capacity];
+    }
+
+    public Order get(String orderId) {
+        if (!parseUuid(orderId)) {
+            return otherOrders.get(orderId);
+        }
+        int mask = orders.length - 1;
+        for (int i = slot(high, low, mask); orders[i] != null; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                return orders[i];
+            }
+        }
+        return null;
+    }
+
+    public void put(Order order) {
+        if (!parseUuid(order.getId())) {
+            otherOrders.put(order.getId(), order);
+            return;
+        }
+        int mask = orders.length - 1;
+        int i = slot(high, low, mask);
+        for (; orders[i] != null; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                orders[i] = order;
+                return;
+            }
+        }
+        highs[i] = high;
+        lows[i] = low;
+        orders[i] = order;
+        if (++size > orders.length * LOAD_FACTOR) {
+            rehash(orders.length * 2);
+        }
+    }
+
+    public Order remove(String orderId) {
+        if (!parseUuid(orderId)) {
+            return otherOrders.remove(orderId);
+        }
+        int mask = orders.length - 1;
+        for (int i = slot(high, low, mask); orders[i] != null; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                Order order = orders[i];
+                shiftBack(i, mask);
+                size--;
+                return order;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size + otherOrders.size();
+    }
+
+    /**
+     * Calls {@code action} for every order, in no particular order.
+     */
+    public void forEach(Consumer<Order> action) {
+        for (Order order : orders) {
+            if (order != null) {
+                action.accept(order);
+            }
+        }
+        otherOrders.values().forEach(action);
+    }
+
+    /**
+     * Frees slot {@code i} and moves back every following entry of the probe run whose home slot does not lie
+     * between the freed slot and its current slot.
+     */
+    private void shiftBack(int i, int mask) {
+        int free = i;
+        for (int j = (i + 1) & mask; orders[j] != null; j = (j + 1) & mask) {
+            int home = slot(highs[j], lows[j], mask);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                highs[free] = highs[j];
+                lows[free] = lows[j];
+                orders[free] = orders[j];
+                free = j;
+            }
+        }
+        orders[free] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        Order[] oldOrders = orders;
+        highs = new long[capacity];
+        lows = new long[capacity];
+        orders = new Order[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldOrders.length; j++) {
+            if (oldOrders[j] != null) {
+                int i = slot(oldHighs[j], oldLows[j], mask);
+                while (orders[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                highs[i] = oldHighs[j];
+                lows[i] = oldLows[j];
+                orders[i] = oldOrders[j];
+            }
+        }
+    }
+
+    private static int slot(long high, long low, int mask) {
+        long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Parses a canonical lowercase UUID into {@link #high} and {@link #low}. Only one spelling of each UUID is
+     * accepted, so distinct ids never share a key.
+     */
+    private boolean parseUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        long h = 0;
+        long l = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+                continue;
+            }
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return false;
+            }
+            if (i < 18) {
+                h = (h << 4) | digit;
+            } else {
+                l = (l << 4) | digit;
+            }
+        }
+        high = h;
+        low = l;
+        return true;
+    }
+}
@@ -3,25 +3,133 @@ package com.gitbitex.matchingengine;
 import lombok.Getter;
 
 import java.math.BigDecimal;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * FIFO queue of the orders resting at one price. Orders are linked through their own prev/next fields, so adding
+ * and removing an order costs no allocation and no hashing. In fixed-point mode the level total is kept in scaled
+ * sizes, from the scaled remaining sizes of the orders, so that filling an order allocates no decimal.
+ */
 @Getter
-public class PriceGroupedOrderCollection extends LinkedHashMap<String, Order> {
-    //public BigDecimal remainingSize = BigDecimal.ZERO;
+public class PriceGroupedOrderCollection {
+    private final BigDecimal price;
+    // only set in fixed-point mode
+    private final long scaledPrice;
+    private final boolean fixedPoint;
+    private Order head;
+    private Order tail;
+    private int count;
+    // sum of the remaining sizes of all orders in the queue, kept in step on add, fill and remove, only in decimal
+    // mode
+    private BigDecimal remainingSize = BigDecimal.ZERO;
+    // the same sum in fixed-point mode
+    private long scaledRemainingSize;
+
+    public PriceGroupedOrderCollection(BigDecimal price, long scaledPrice, boolean fixedPoint) {
+        this.price = price;
+        this.scaledPrice = scaledPrice;
+        this.fixedPoint = fixedPoint;
+    }
 
     public void addOrder(Order order) {
-        put(order.getId(), order);
-        //remainingSize = remainingSize.add(order.getRemainingSize());
+        order.setLevel(this);
+        order.setPrev(tail);
+        order.setNext(null);
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.setNext(order);
+        }
+        tail = order;
+        count++;
+        if (fixedPoint) {
+            scaledRemainingSize += order.getScaledRemainingSize();
+        } else {
+            remainingSize = remainingSize.add(order.getRemainingSize());
+        }
+    }
+
+    public void removeOrder(Order order) {
+        Order prev = order.getPrev();
+        Order next = order.getNext();
+        if (prev == null) {
+            head = next;
+        } else {
+            prev.setNext(next);
+        }
+        if (next == null) {
+            tail = prev;
+        } else {
+            next.setPrev(prev);
+        }
+        order.setLevel(null);
+        order.setPrev(null);
+        order.setNext(null);
+        count--;
+        if (fixedPoint) {
+            scaledRemainingSize -= order.getScaledRemainingSize();
+        } else {
+            remainingSize = remainingSize.subtract(order.getRemainingSize());
+        }
+    }
+
+    /**
+     * Puts {@code order} in the place of {@code oldOrder}, keeping its position in the queue. The level total follows
+     * the difference between their remaining sizes.
+     */
+    public void replaceOrder(Order oldOrder, Order order) {
+        Order prev = oldOrder.getPrev();
+        Order next = oldOrder.getNext();
+        order.setLevel(this);
+        order.setPrev(prev);
+        order.setNext(next);
+        if (prev == null) {
+            head = order;
+        } else {
+            prev.setNext(order);
+        }
+        if (next == null) {
+            tail = order;
+        } else {
+            next.setPrev(order);
+        }
+        oldOrder.setLevel(null);
+        oldOrder.setPrev(null);
+        oldOrder.setNext(null);
+        if (fixedPoint) {
+            scaledRemainingSize += order.getScaledRemainingSize() - oldOrder.getScaledRemainingSize();
+        } else {
+            remainingSize = remainingSize.add(order.getRemainingSize()).subtract(oldOrder.getRemainingSize());
+        }
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
     }
 
+    /**
+     * Must be called whenever an order in the queue is filled by {@code size}, in decimal mode.
+     */
     public void decrRemainingSize(BigDecimal size) {
-        //remainingSize=remainingSize.subtract(size);
+        remainingSize = remainingSize.subtract(size);
+    }
+
+    /**
+     * Fixed-point variant of {@link #decrRemainingSize(BigDecimal)}, {@code size} is scaled by the base scale.
+     */
+    public void decrScaledRemainingSize(long size) {
+        scaledRemainingSize -= size;
     }
 
-    public BigDecimal getRemainingSize() {
-        return values().stream()
-                .map(Order::getRemainingSize)
-                .reduce(BigDecimal::add)
-                .get();
+    /**
+     * Returns the orders in queue order, not meant for the matching path.
+     */
+    public List<Order> getOrders() {
+        List<Order> orders = new ArrayList<>(count);
+        for (Order order = head; order != null; order = order.getNext()) {
+            orders.add(order);
+        }
+        return orders;
     }
 }
@@ -0,0 +1,231 @@
+package com.gitbitex.matchingengine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Price levels of a fixed-point order book, indexed by scaled price (ticks).
+ * <p>
+ * Levels inside a window of {@code capacity} ticks near the touch live in a ring indexed by {@code price & mask}, so
+ * adding a level and reading the best level are O(1) there. Levels outside the window fall back to a sorted map. The
+ * window is moved whenever the touch leaves it, keeping a quarter of it in front of the best price for improving
+ * orders and the rest behind it for resting depth.
+ */
+public class PriceLadder implements PriceLevels {
+    private final PriceGroupedOrderCollection[] ring;
+    private final int mask;
+    // true for asks (lowest price first), false for bids (highest price first)
+    private final boolean ascending;
+    private final TreeMap<Long, PriceGroupedOrderCollection> farLevels;
+    private boolean anchored;
+    // lowest price covered by the window
+    private long base;
+    private int windowLevelCount;
+    // best price inside the window, only valid if windowLevelCount > 0
+    private long windowBestPrice;
+
+    public PriceLadder(int capacity, boolean ascending) {
+        if (capacity < 4 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2 and at least 4: " + capacity);
+        }
+        this.ring = new PriceGroupedOrderCollection[capacity];
+        this.mask = capacity - 1;
+        this.ascending = ascending;
+        this.farLevels = new TreeMap<>(ascending ? Comparator.<Long>naturalOrder() : Comparator.<Long>reverseOrder());
+    }
+
+    @Override
+    public void addOrder(Order order) {
+        long price = order.getScaledPrice();
+        PriceGroupedOrderCollection level = getLevel(price);
+        if (level == null) {
+            level = new PriceGroupedOrderCollection(order.getPrice(), price, true);
+            putLevel(level);
+        }
+        level.addOrder(order);
+    }
+
+    @Override
+    public PriceGroupedOrderCollection getBestLevel() {
+        PriceGroupedOrderCollection windowBest = windowLevelCount > 0 ? ring[slot(windowBestPrice)] : null;
+        if (farLevels.isEmpty()) {
+            return windowBest;
+        }
+        long farBestPrice = farLevels.firstKey();
+        if (windowBest == null || isBetter(farBestPrice, windowBestPrice)) {
+            return farLevels.get(farBestPrice);
+        }
+        return windowBest;
+    }
+
+    @Override
+    public PriceGroupedOrderCollection nextLevel(PriceGroupedOrderCollection level) {
+        long price = level.getScaledPrice();
+        PriceGroupedOrderCollection windowNext = null;
+        if (windowLevelCount > 0) {
+            // walk the window from behind the price, or from its better edge if the price is in front of it
+            long step = ascending ? 1 : -1;
+            long windowEdge = ascending ? base : base + ring.length - 1;
+            for (long next = isBetter(price, windowEdge) ? windowEdge : price + step; inWindow(next); next += step) {
+                if (ring[slot(next)] != null) {
+                    windowNext = ring[slot(next)];
+                    break;
+                }
+            }
+        }
+        Long farNext = farLevels.higherKey(price);
+        if (farNext != null && (windowNext == null || isBetter(farNext, windowNext.getScaledPrice()))) {
+            return farLevels.get(farNext);
+        }
+        return windowNext;
+    }
+
+    @Override
+    public void removeLevel(PriceGroupedOrderCollection level) {
+        long price = level.getScaledPrice();
+        if (!inWindow(price) || ring[slot(price)] != level) {
+            farLevels.remove(price);
+            return;
+        }
+
+        ring[slot(price)] = null;
+        windowLevelCount--;
+        if (windowLevelCount > 0) {
+            if (price == windowBestPrice) {
+                // every other level in the window is behind the removed best, walk towards them
+                long step = ascending ? 1 : -1;
+                long next = price + step;
+                while (ring[slot(next)] == null) {
+                    next += step;
+                }
+                windowBestPrice = next;
+            }
+        } else if (!farLevels.isEmpty()) {
+            moveWindow(farLevels.firstKey());
+        }
+    }
+
+    @Override
+    public int levelCount() {
+        return windowLevelCount + farLevels.size();
+    }
+
+    @Override
+    public Collection<PriceGroupedOrderCollection> getLevels() {
+        List<PriceGroupedOrderCollection> levels = new ArrayList<>();
+        if (!anchored) {
+            return levels;
+        }
+        long step = ascending ? 1 : -1;
+        long windowEdge = ascending ? base : base + ring.length - 1;
+        boolean windowAdded = false;
+        for (PriceGroupedOrderCollection level : farLevels.values()) {
+            if (!windowAdded && !isBetter(level.getScaledPrice(), windowEdge)) {
+                addWindowLevels(levels, windowEdge, step);
+                windowAdded = true;
+            }
+            levels.add(level);
+        }
+        if (!windowAdded) {
+            addWindowLevels(levels, windowEdge, step);
+        }
+        return levels;
+    }
+
+    private void addWindowLevels(List<PriceGroupedOrderCollection> levels, long windowEdge, long step) {
+        for (int i = 0; i < ring.length; i++) {
+            PriceGroupedOrderCollection level = ring[slot(windowEdge + i * step)];
+            if (level != null) {
+                levels.add(level);
+            }
+        }
+    }
+
+    private PriceGroupedOrderCollection getLevel(long price) {
+        return inWindow(price) ? ring[slot(price)] : farLevels.get(price);
+    }
+
+    private void putLevel(PriceGroupedOrderCollection level) {
+        long price = level.getScaledPrice();
+        if (!anchored || (!inWindow(price) && isBetterThanBest(price))) {
+            // the touch is moving out of the window
+            moveWindow(price);
+        }
+        if (inWindow(price)) {
+            ring[slot(price)] = level;
+            if (windowLevelCount++ == 0 || isBetter(price, windowBestPrice)) {
+                windowBestPrice = price;
+            }
+        } else {
+            farLevels.put(price, level);
+        }
+    }
+
+    /**
+     * Moves the window so that {@code touch} sits a quarter of the window behind its better edge, swapping levels
+     * between the ring and the far map as needed. This costs O(capacity) and only happens when the touch leaves the
+     * window.
+     */
+    private void moveWindow(long touch) {
+        int capacity = ring.length;
+        long newBase = ascending ? touch - capacity / 4 : touch - capacity + 1 + capacity / 4;
+
+        // evict levels that fall outside the new window
+        for (int i = 0; i < capacity; i++) {
+            PriceGroupedOrderCollection level = ring[i];
+            if (level != null) {
+                long price = level.getScaledPrice();
+                if (price < newBase || price - newBase >= capacity) {
+                    ring[i] = null;
+                    windowLevelCount--;
+                    farLevels.put(price, level);
+                }
+            }
+        }
+        base = newBase;
+        anchored = true;
+
+        // pull in far levels that are now inside the window
+        long low = newBase;
+        long high = newBase + capacity - 1;
+        NavigableMap<Long, PriceGroupedOrderCollection> inside = ascending
+                ? farLevels.subMap(low, true, high, true)
+                : farLevels.subMap(high, true, low, true);
+        for (PriceGroupedOrderCollection level : inside.values()) {
+            ring[slot(level.getScaledPrice())] = level;
+            windowLevelCount++;
+        }
+        inside.clear();
+
+        // find the best price in the window
+        if (windowLevelCount > 0) {
+            long step = ascending ? 1 : -1;
+            long price = ascending ? low : high;
+            while (ring[slot(price)] == null) {
+                price += step;
+            }
+            windowBestPrice = price;
+        }
+    }
+
+    private boolean isBetterThanBest(long price) {
+        PriceGroupedOrderCollection best = getBestLevel();
+        return best == null || isBetter(price, best.getScaledPrice());
+    }
+
+    private boolean isBetter(long price, long otherPrice) {
+        return ascending ? price < otherPrice : price > otherPrice;
+    }
+
+    private boolean inWindow(long price) {
+        return anchored && price >= base && price - base < ring.length;
+    }
+
+    private int slot(long price) {
+        return (int) (price & mask);
+    }
+}
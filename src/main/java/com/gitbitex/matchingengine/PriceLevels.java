@@ -0,0 +1,50 @@
+package com.gitbitex.matchingengine;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Collection;
+
+/**
+ * One side of an order book, as seen by the matching loop: price levels in priority order.
+ */
+public interface PriceLevels {
+    void addOrder(Order order);
+
+    /**
+     * Removes a resting order, which must be the instance that was added.
+     */
+    default void removeOrder(Order order) {
+        PriceGroupedOrderCollection level = order.getLevel();
+        if (level == null) {
+            return;
+        }
+        level.removeOrder(order);
+        if (level.isEmpty()) {
+            removeLevel(level);
+        }
+    }
+
+    /**
+     * Returns the level with the best price, or null if the side is empty.
+     */
+    @Nullable
+    PriceGroupedOrderCollection getBestLevel();
+
+    /**
+     * Returns the level after {@code level} in priority order, or null if it is the last one.
+     */
+    @Nullable
+    PriceGroupedOrderCollection nextLevel(PriceGroupedOrderCollection level);
+
+    void removeLevel(PriceGroupedOrderCollection level);
+
+    /**
+     * Returns the number of levels, without walking them.
+     */
+    int levelCount();
+
+    /**
+     * Returns all levels in priority order, not meant for the matching path.
+     */
+    Collection<PriceGroupedOrderCollection> getLevels();
+}
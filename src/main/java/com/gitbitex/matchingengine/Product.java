@@ -10,6 +10,8 @@ public class Product implements Cloneable {
     private String id;
     private String baseCurrency;
     private String quoteCurrency;
+    private int baseScale;
+    private int quoteScale;
 
     public Product() {
     }
@@ -18,6 +20,15 @@ public class Product implements Cloneable {
         this.id = command.getProductId();
         this.baseCurrency = command.getBaseCurrency();
         this.quoteCurrency = command.getQuoteCurrency();
+        this.baseScale = command.getBaseScale();
+        this.quoteScale = command.getQuoteScale();
+    }
+
+    /**
+     * Funds are size * price, so they need the sum of both scales to be exact.
+     */
+    public int fundsScale() {
+        return baseScale + quoteScale;
     }
 
     @Override
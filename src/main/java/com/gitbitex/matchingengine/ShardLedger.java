@@ -0,0 +1,138 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.matchingengine.command.SettleCommand;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ledger of an order book on a product shard. The funds of every order were already held by the account shard
+ * before the order was forwarded, so holding only reports whether that worked, and unholds and exchanges are
+ * collected to be sent back to the account shard at the end of the command.
+ * <p>
+ * An amend is held the other way round: the product shard first finds the larger hold it needs and asks the account
+ * shard for it, which holds it and sends the amend back, see {@link #beginAmend}.
+ */
+public class ShardLedger implements Ledger {
+    private final List<SettleCommand.Settlement> settlements = new ArrayList<>();
+    // whether the account shard held the funds of the order being placed, consumed by the next hold
+    @Setter
+    private boolean fundsHeld;
+    // what the account shard held for the amend being executed, null once the amend's hold took it
+    private BigDecimal amendFunds;
+    // the larger hold the amend could not get without funds, and its currency
+    @Getter
+    private BigDecimal missingHold;
+    @Getter
+    private String missingHoldCurrency;
+
+    @Override
+    public boolean hold(String userId, String currency, BigDecimal amount) {
+        if (amendFunds != null) {
+            return holdAmend(userId, currency, amount);
+        }
+        boolean held = fundsHeld;
+        fundsHeld = false;
+        return held;
+    }
+
+    @Override
+    public boolean hold(String userId, String currency, long amount, int scale) {
+        return hold(userId, currency, amendFunds != null ? FixedPoint.toBigDecimal(amount, scale) : null);
+    }
+
+    /**
+     * Starts an amend with the funds the account shard held for it, zero when it has not been there yet. A larger
+     * hold is taken from them and what it does not need is released. A hold they do not cover fails, without funds it
+     * is recorded as the missing hold to ask the account shard for.
+     */
+    public void beginAmend(BigDecimal heldFunds) {
+        amendFunds = heldFunds;
+        missingHold = null;
+        missingHoldCurrency = null;
+    }
+
+    /**
+     * Ends an amend, releasing the held funds when its hold did not take them because it was rejected or needed none.
+     */
+    public void endAmend(String userId, String currency) {
+        if (amendFunds != null && amendFunds.signum() > 0) {
+            unhold(userId, currency, amendFunds);
+        }
+        amendFunds = null;
+    }
+
+    private boolean holdAmend(String userId, String currency, BigDecimal amount) {
+        BigDecimal funds = amendFunds;
+        amendFunds = null;
+        if (amount.compareTo(funds) > 0) {
+            if (funds.signum() > 0) {
+                unhold(userId, currency, funds);
+            } else {
+                missingHold = amount;
+                missingHoldCurrency = currency;
+            }
+            return false;
+        }
+        if (amount.compareTo(funds) < 0) {
+            unhold(userId, currency, funds.subtract(amount));
+        }
+        return true;
+    }
+
+    @Override
+    public void unhold(String userId, String currency, BigDecimal amount) {
+        SettleCommand.Settlement settlement = new SettleCommand.Settlement();
+        settlement.setType(SettleCommand.SettlementType.UNHOLD);
+        settlement.setUserId(userId);
+        settlement.setCurrency(currency);
+        settlement.setAmount(amount);
+        settlements.add(settlement);
+    }
+
+    @Override
+    public void unhold(String userId, String currency, long amount, int scale) {
+        unhold(userId, currency, FixedPoint.toBigDecimal(amount, scale));
+    }
+
+    @Override
+    public void exchange(String takerUserId, String makerUserId, String baseCurrency, String quoteCurrency,
+                         OrderSide takerSide, BigDecimal size, BigDecimal funds) {
+        SettleCommand.Settlement settlement = new SettleCommand.Settlement();
+        settlement.setType(SettleCommand.SettlementType.EXCHANGE);
+        settlement.setTakerUserId(takerUserId);
+        settlement.setMakerUserId(makerUserId);
+        settlement.setBaseCurrency(baseCurrency);
+        settlement.setQuoteCurrency(quoteCurrency);
+        settlement.setTakerSide(takerSide);
+        settlement.setSize(size);
+        settlement.setFunds(funds);
+        settlements.add(settlement);
+    }
+
+    @Override
+    public void exchange(String takerUserId, String makerUserId, String baseCurrency, String quoteCurrency,
+                         OrderSide takerSide, long size, int sizeScale, long funds, int fundsScale) {
+        exchange(takerUserId, makerUserId, baseCurrency, quoteCurrency, takerSide,
+                FixedPoint.toBigDecimal(size, sizeScale), FixedPoint.toBigDecimal(funds, fundsScale));
+    }
+
+    public boolean hasSettlements() {
+        return !settlements.isEmpty();
+    }
+
+    /**
+     * Returns the settlements collected since the last call and starts a new batch.
+     */
+    public List<SettleCommand.Settlement> drainSettlements() {
+        List<SettleCommand.Settlement> drained = new ArrayList<>(settlements);
+        settlements.clear();
+        fundsHeld = false;
+        amendFunds = null;
+        return drained;
+    }
+}
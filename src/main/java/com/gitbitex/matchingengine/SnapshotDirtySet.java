@@ -0,0 +1,41 @@
+package com.gitbitex.matchingengine;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders and accounts changed since the engine last took a snapshot, see
+ * {@link com.gitbitex.matchingengine.snapshot.EngineSnapshotter}.
+ * <p>
+ * Each object keeps the epoch it was last added in, so adding one that is already in the set is a field compare
+ * instead of a hash lookup. Taking a snapshot reads the set and clears it, which starts a new epoch.
+ */
+@Getter
+public class SnapshotDirtySet {
+    private final List<Order> orders = new ArrayList<>();
+    private final List<Account> accounts = new ArrayList<>();
+    // starts at 1, objects that were never added have epoch 0
+    private long epoch = 1;
+
+    public void add(Order order) {
+        if (order.getSnapshotEpoch() != epoch) {
+            order.setSnapshotEpoch(epoch);
+            orders.add(order);
+        }
+    }
+
+    public void add(Account account) {
+        if (account.getSnapshotEpoch() != epoch) {
+            account.setSnapshotEpoch(epoch);
+            accounts.add(account);
+        }
+    }
+
+    public void clear() {
+        orders.clear();
+        accounts.clear();
+        epoch++;
+    }
+}
@@ -0,0 +1,67 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderStatus;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Digest of the state of an engine: its accounts and its open and pending orders, the objects a snapshot holds.
+ * <p>
+ * The digest is the sum of a hash of each object. Each object keeps the hash it last added, so an object that changed
+ * is updated by replacing its hash with the new one when its message is sent, and the digest does not depend on the
+ * order of the changes. Two engines in the same state have the same digest, whether they got there by running the
+ * same commands or by restoring a snapshot of it. Decimals are hashed by value, not by scale, and in fixed-point mode
+ * they are hashed after being written back from the scaled fields.
+ */
+@Getter
+public class StateDigest {
+    private long value;
+
+    public void update(Order order) {
+        long hash = order.getStatus() == OrderStatus.OPEN || order.getStatus() == OrderStatus.PENDING
+                ? hash(order) : 0;
+        value += hash - order.getStateHash();
+        order.setStateHash(hash);
+    }
+
+    public void update(Account account) {
+        long hash = hash(account);
+        value += hash - account.getStateHash();
+        account.setStateHash(hash);
+    }
+
+    private static long hash(Order order) {
+        long hash = order.getId().hashCode();
+        hash = hash * 31 + order.getStatus().ordinal();
+        hash = hash * 31 + hash(order.getPrice());
+        hash = hash * 31 + hash(order.getSize());
+        hash = hash * 31 + hash(order.getRemainingSize());
+        hash = hash * 31 + hash(order.getRemainingFunds());
+        return mix(hash);
+    }
+
+    private static long hash(Account account) {
+        long hash = account.getId().hashCode();
+        hash = hash * 31 + hash(account.getAvailable());
+        hash = hash * 31 + hash(account.getHold());
+        return mix(hash);
+    }
+
+    private static int hash(BigDecimal value) {
+        return value == null || value.signum() == 0 ? Objects.hashCode(value) : value.stripTrailingZeros().hashCode();
+    }
+
+    /**
+     * Spreads the bits of the hash, so the sum of the hashes of different objects does not cancel out.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,96 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stop orders of a book waiting for their trigger, sorted by stop price in the order a moving price reaches them.
+ * <p>
+ * A buy stop triggers when a trade is at or above its stop price, a sell stop when a trade is at or below it. Orders
+ * with the same stop price trigger in the order they were placed. The stops of a user are chained through the same
+ * {@code userPrev}/{@code userNext} links as resting orders, which a stop does not use until it triggers.
+ */
+public class StopBook {
+    // lowest stop price first
+    private final TreeMap<BigDecimal, List<Order>> buyStops = new TreeMap<>();
+    // highest stop price first
+    private final TreeMap<BigDecimal, List<Order>> sellStops = new TreeMap<>(Comparator.reverseOrder());
+    // in the order the stops were placed, so walking it is the same on every replica
+    private final Map<String, Order> orderById = new LinkedHashMap<>();
+    private final UserOrderIndex ordersByUser = new UserOrderIndex();
+
+    public void add(Order order) {
+        stops(order.getSide()).computeIfAbsent(order.getStopPrice(), k -> new ArrayList<>()).add(order);
+        orderById.put(order.getId(), order);
+        ordersByUser.add(order);
+    }
+
+    public Order get(String orderId) {
+        return orderById.get(orderId);
+    }
+
+    public void remove(Order order) {
+        if (orderById.remove(order.getId()) == null) {
+            return;
+        }
+        ordersByUser.remove(order);
+        TreeMap<BigDecimal, List<Order>> stops = stops(order.getSide());
+        List<Order> orders = stops.get(order.getStopPrice());
+        orders.remove(order);
+        if (orders.isEmpty()) {
+            stops.remove(order.getStopPrice());
+        }
+    }
+
+    /**
+     * Returns all stop orders, oldest first.
+     */
+    public List<Order> getOrders() {
+        return new ArrayList<>(orderById.values());
+    }
+
+    /**
+     * The oldest stop order of the user, the others follow through {@link Order#getUserNext()}.
+     */
+    public Order getHead(String userId) {
+        return ordersByUser.getHead(userId);
+    }
+
+    /**
+     * Removes and returns the stop orders triggered by trades between {@code low} and {@code high}: buy stops first,
+     * then sell stops, each in the order the price reached them.
+     */
+    public List<Order> trigger(BigDecimal low, BigDecimal high) {
+        List<Order> triggered = new ArrayList<>();
+        while (!buyStops.isEmpty() && buyStops.firstKey().compareTo(high) <= 0) {
+            takeAll(buyStops.pollFirstEntry().getValue(), triggered);
+        }
+        while (!sellStops.isEmpty() && sellStops.firstKey().compareTo(low) >= 0) {
+            takeAll(sellStops.pollFirstEntry().getValue(), triggered);
+        }
+        return triggered;
+    }
+
+    public int size() {
+        return orderById.size();
+    }
+
+    private void takeAll(List<Order> orders, List<Order> triggered) {
+        for (Order order : orders) {
+            orderById.remove(order.getId());
+            ordersByUser.remove(order);
+            triggered.add(order);
+        }
+    }
+
+    private TreeMap<BigDecimal, List<Order>> stops(OrderSide side) {
+        return side == OrderSide.BUY ? buyStops : sellStops;
+    }
+}
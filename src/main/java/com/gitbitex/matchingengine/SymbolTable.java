@@ -0,0 +1,104 @@
+package com.gitbitex.matchingengine;
+
+import java.util.Arrays;
+
+/**
+ * Maps strings such as user ids and currencies to dense int handles 0, 1, 2... and back. Handles are never reused,
+ * so they can be packed into primitive keys, see {@link LongObjectMap}.
+ */
+public class SymbolTable {
+    private static final float LOAD_FACTOR = 0.5f;
+    // open-addressing index from symbol to handle, linear probing, null marks a free slot
+    private String[] slots;
+    private int[] slotHandles;
+    private String[] symbols;
+    private int size;
+
+    public SymbolTable() {
+        this(64);
+    }
+
+    public SymbolTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.slots = new String[capacity];
+        this.slotHandles = new int[capacity];
+        this.symbols = new String[Math.max(4, expectedSize)];
+    }
+
+    /**
+     * Returns the handle of the symbol, assigning the next one if the symbol is new.
+     */
+    public int intern(String symbol) {
+        int mask = slots.length - 1;
+        for (int i = slot(symbol, mask); ; i = (i + 1) & mask) {
+            String key = slots[i];
+            if (key == null) {
+                return add(symbol, i);
+            }
+            if (key.equals(symbol)) {
+                return slotHandles[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the handle of the symbol, or -1 if it was never interned.
+     */
+    public int handleOf(String symbol) {
+        int mask = slots.length - 1;
+        for (int i = slot(symbol, mask); ; i = (i + 1) & mask) {
+            String key = slots[i];
+            if (key == null) {
+                return -1;
+            }
+            if (key.equals(symbol)) {
+                return slotHandles[i];
+            }
+        }
+    }
+
+    public String symbol(int handle) {
+        return symbols[handle];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String symbol, int slot) {
+        int handle = size++;
+        if (handle == symbols.length) {
+            symbols = Arrays.copyOf(symbols, handle * 2);
+        }
+        symbols[handle] = symbol;
+        slots[slot] = symbol;
+        slotHandles[slot] = handle;
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash(slots.length * 2);
+        }
+        return handle;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldSlots = slots;
+        int[] oldHandles = slotHandles;
+        slots = new String[capacity];
+        slotHandles = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] != null) {
+                int i = slot(oldSlots[j], mask);
+                while (slots[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = oldSlots[j];
+                slotHandles[i] = oldHandles[j];
+            }
+        }
+    }
+
+    private static int slot(String symbol, int mask) {
+        int h = symbol.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
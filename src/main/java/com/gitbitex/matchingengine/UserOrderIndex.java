@@ -0,0 +1,72 @@
+package com.gitbitex.matchingengine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the resting orders of a book by user, and of the stop orders waiting in its {@link StopBook}.
+ * <p>
+ * The orders of a user are chained into a list through their {@code userPrev}/{@code userNext} links in the order
+ * they entered the book, so adding and removing an order is O(1) and the orders of a user are found without walking
+ * the book.
+ */
+public class UserOrderIndex {
+    private final Map<String, UserOrders> ordersByUser = new HashMap<>();
+
+    public void add(Order order) {
+        UserOrders orders = ordersByUser.computeIfAbsent(order.getUserId(), k -> new UserOrders());
+        order.setUserPrev(orders.tail);
+        order.setUserNext(null);
+        if (orders.tail != null) {
+            orders.tail.setUserNext(order);
+        } else {
+            orders.head = order;
+        }
+        orders.tail = order;
+        orders.count++;
+    }
+
+    public void remove(Order order) {
+        UserOrders orders = ordersByUser.get(order.getUserId());
+        if (orders == null) {
+            return;
+        }
+        Order prev = order.getUserPrev();
+        Order next = order.getUserNext();
+        if (prev != null) {
+            prev.setUserNext(next);
+        } else {
+            orders.head = next;
+        }
+        if (next != null) {
+            next.setUserPrev(prev);
+        } else {
+            orders.tail = prev;
+        }
+        order.setUserPrev(null);
+        order.setUserNext(null);
+        if (--orders.count == 0) {
+            ordersByUser.remove(order.getUserId());
+        }
+    }
+
+    /**
+     * The resting order of the user that entered the book first, the others follow through
+     * {@link Order#getUserNext()}.
+     */
+    public Order getHead(String userId) {
+        UserOrders orders = ordersByUser.get(userId);
+        return orders != null ? orders.head : null;
+    }
+
+    public int count(String userId) {
+        UserOrders orders = ordersByUser.get(userId);
+        return orders != null ? orders.count : 0;
+    }
+
+    private static class UserOrders {
+        private Order head;
+        private Order tail;
+        private int count;
+    }
+}
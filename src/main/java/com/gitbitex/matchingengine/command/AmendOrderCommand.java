@@ -0,0 +1,31 @@
+package com.gitbitex.matchingengine.command;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Changes the size and/or the price of a resting limit order in one step, see
+ * {@link com.gitbitex.matchingengine.OrderBook#amendOrder}.
+ */
+@Getter
+@Setter
+public class AmendOrderCommand extends Command {
+    private String productId;
+    private String orderId;
+    private String userId;
+    // new total size including what was filled, null keeps the size
+    private BigDecimal size;
+    // null keeps the price
+    private BigDecimal price;
+    // larger hold a product shard asks the account shard for before it applies the amend, null on its first pass
+    private String holdCurrency;
+    private BigDecimal holdAmount;
+    // whether the account shard held it
+    private boolean fundsHeld;
+
+    public AmendOrderCommand() {
+        this.setType(CommandType.AMEND_ORDER);
+    }
+}
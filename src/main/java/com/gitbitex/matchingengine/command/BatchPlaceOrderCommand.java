@@ -0,0 +1,23 @@
+package com.gitbitex.matchingengine.command;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders of one product placed in one command, executed in the given order. On a sharded engine the account shard
+ * holds the funds of all orders before forwarding the batch, so an order cannot spend what an earlier order of the
+ * same batch bought.
+ */
+@Getter
+@Setter
+public class BatchPlaceOrderCommand extends Command {
+    private String productId;
+    private List<PlaceOrderCommand> orders = new ArrayList<>();
+
+    public BatchPlaceOrderCommand() {
+        this.setType(CommandType.BATCH_PLACE_ORDER);
+    }
+}
@@ -0,0 +1,164 @@
+package com.gitbitex.matchingengine.command;
+
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
+import com.gitbitex.enums.TimeInForce;
+import com.gitbitex.matchingengine.BinaryReader;
+import com.gitbitex.matchingengine.BinaryWriter;
+
+/**
+ * Binary layouts of the order commands. Other commands stay JSON. Fields are written in declaration order, see
+ * {@link BinaryWriter}, fields added later are only read from records of the version that added them. The time of a
+ * command other than a place order comes last, older commands do not have it.
+ */
+public final class BinaryCommandCodec {
+    private BinaryCommandCodec() {
+    }
+
+    public static boolean supports(Command command) {
+        return switch (command.getType()) {
+            case PLACE_ORDER, CANCEL_ORDER, BATCH_PLACE_ORDER, MASS_CANCEL, AMEND_ORDER -> true;
+            default -> false;
+        };
+    }
+
+    public static byte[] encode(Command command) {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeHeader(command.getType().getByteValue());
+        writer.writeNullableInt(command.getSourceShard());
+        writer.writeNullableLong(command.getSourceOffset());
+        if (command instanceof PlaceOrderCommand placeOrderCommand) {
+            writePlaceOrder(writer, placeOrderCommand);
+        } else if (command instanceof CancelOrderCommand cancelOrderCommand) {
+            writer.writeString(cancelOrderCommand.getProductId());
+            writer.writeString(cancelOrderCommand.getOrderId());
+        } else if (command instanceof BatchPlaceOrderCommand batchPlaceOrderCommand) {
+            writer.writeString(batchPlaceOrderCommand.getProductId());
+            writer.writeInt(batchPlaceOrderCommand.getOrders().size());
+            for (PlaceOrderCommand placeOrderCommand : batchPlaceOrderCommand.getOrders()) {
+                writePlaceOrder(writer, placeOrderCommand);
+            }
+        } else if (command instanceof MassCancelCommand massCancelCommand) {
+            writer.writeString(massCancelCommand.getUserId());
+            writer.writeString(massCancelCommand.getProductId());
+            writer.writeEnum(massCancelCommand.getSide());
+        } else if (command instanceof AmendOrderCommand amendOrderCommand) {
+            writer.writeString(amendOrderCommand.getProductId());
+            writer.writeString(amendOrderCommand.getOrderId());
+            writer.writeString(amendOrderCommand.getUserId());
+            writer.writeDecimal(amendOrderCommand.getSize());
+            writer.writeDecimal(amendOrderCommand.getPrice());
+            writer.writeString(amendOrderCommand.getHoldCurrency());
+            writer.writeDecimal(amendOrderCommand.getHoldAmount());
+            writer.writeBoolean(amendOrderCommand.isFundsHeld());
+        } else {
+            throw new RuntimeException("no binary layout for command type: " + command.getType());
+        }
+        if (!(command instanceof PlaceOrderCommand)) {
+            writer.writeDate(command.getTime());
+        }
+        return writer.toByteArray();
+    }
+
+    public static Command decode(byte[] bytes) {
+        BinaryReader reader = new BinaryReader(bytes);
+        CommandType commandType = CommandType.valueOfByte(reader.readHeader());
+        Integer sourceShard = reader.readNullableInt();
+        Long sourceOffset = reader.readNullableLong();
+        Command command;
+        switch (commandType) {
+            case PLACE_ORDER -> command = readPlaceOrder(reader);
+            case CANCEL_ORDER -> {
+                CancelOrderCommand cancelOrderCommand = new CancelOrderCommand();
+                cancelOrderCommand.setProductId(reader.readString());
+                cancelOrderCommand.setOrderId(reader.readString());
+                command = cancelOrderCommand;
+            }
+            case BATCH_PLACE_ORDER -> {
+                BatchPlaceOrderCommand batchPlaceOrderCommand = new BatchPlaceOrderCommand();
+                batchPlaceOrderCommand.setProductId(reader.readString());
+                int count = reader.readInt();
+                for (int i = 0; i < count; i++) {
+                    batchPlaceOrderCommand.getOrders().add(readPlaceOrder(reader));
+                }
+                command = batchPlaceOrderCommand;
+            }
+            case MASS_CANCEL -> {
+                MassCancelCommand massCancelCommand = new MassCancelCommand();
+                massCancelCommand.setUserId(reader.readString());
+                massCancelCommand.setProductId(reader.readString());
+                massCancelCommand.setSide(reader.readEnum(OrderSide.values()));
+                command = massCancelCommand;
+            }
+            case AMEND_ORDER -> {
+                AmendOrderCommand amendOrderCommand = new AmendOrderCommand();
+                amendOrderCommand.setProductId(reader.readString());
+                amendOrderCommand.setOrderId(reader.readString());
+                amendOrderCommand.setUserId(reader.readString());
+                amendOrderCommand.setSize(reader.readDecimal());
+                amendOrderCommand.setPrice(reader.readDecimal());
+                if (reader.getVersion() >= 5) {
+                    amendOrderCommand.setHoldCurrency(reader.readString());
+                    amendOrderCommand.setHoldAmount(reader.readDecimal());
+                    amendOrderCommand.setFundsHeld(reader.readBoolean());
+                }
+                command = amendOrderCommand;
+            }
+            default -> throw new RuntimeException("no binary layout for command type: " + commandType);
+        }
+        if (commandType != CommandType.PLACE_ORDER && reader.hasRemaining()) {
+            command.setTime(reader.readDate());
+        }
+        command.setSourceShard(sourceShard);
+        command.setSourceOffset(sourceOffset);
+        return command;
+    }
+
+    /**
+     * Writes the fields of a place order command, without header, also used for the orders of a batch.
+     */
+    private static void writePlaceOrder(BinaryWriter writer, PlaceOrderCommand command) {
+        writer.writeString(command.getProductId());
+        writer.writeString(command.getOrderId());
+        writer.writeString(command.getUserId());
+        writer.writeDecimal(command.getSize());
+        writer.writeDecimal(command.getPrice());
+        writer.writeDecimal(command.getFunds());
+        writer.writeEnum(command.getOrderType());
+        writer.writeEnum(command.getOrderSide());
+        writer.writeDate(command.getTime());
+        writer.writeBoolean(command.isFundsHeld());
+        writer.writeEnum(command.getTimeInForce());
+        writer.writeDate(command.getExpireTime());
+        writer.writeBoolean(command.isPostOnly());
+        writer.writeEnum(command.getSelfTradePrevention());
+        writer.writeDecimal(command.getStopPrice());
+    }
+
+    private static PlaceOrderCommand readPlaceOrder(BinaryReader reader) {
+        PlaceOrderCommand command = new PlaceOrderCommand();
+        command.setProductId(reader.readString());
+        command.setOrderId(reader.readString());
+        command.setUserId(reader.readString());
+        command.setSize(reader.readDecimal());
+        command.setPrice(reader.readDecimal());
+        command.setFunds(reader.readDecimal());
+        command.setOrderType(reader.readEnum(OrderType.values()));
+        command.setOrderSide(reader.readEnum(OrderSide.values()));
+        command.setTime(reader.readDate());
+        command.setFundsHeld(reader.readBoolean());
+        if (reader.getVersion() >= 2) {
+            command.setTimeInForce(reader.readEnum(TimeInForce.values()));
+            command.setExpireTime(reader.readDate());
+        }
+        if (reader.getVersion() >= 3) {
+            command.setPostOnly(reader.readBoolean());
+            command.setSelfTradePrevention(reader.readEnum(SelfTradePrevention.values()));
+        }
+        if (reader.getVersion() >= 4) {
+            command.setStopPrice(reader.readDecimal());
+        }
+        return command;
+    }
+}
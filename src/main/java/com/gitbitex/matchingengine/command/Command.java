@@ -3,8 +3,16 @@ package com.gitbitex.matchingengine.command;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Date;
+
 @Getter
 @Setter
 public class Command {
     private CommandType type;
+    // when the command was sent, the engine's clock follows it, see MatchingEngine
+    private Date time;
+    // set on commands forwarded between engine shards: the sending shard and the offset of the command that caused
+    // the forward, the receiving shard skips forwards it has already applied
+    private Integer sourceShard;
+    private Long sourceOffset;
 }
@@ -1,6 +1,7 @@
 package com.gitbitex.matchingengine.command;
 
 import com.alibaba.fastjson.JSON;
+import com.gitbitex.matchingengine.BinaryWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.common.serialization.Deserializer;
 
@@ -11,6 +12,9 @@ public class CommandDeserializer implements Deserializer<Command> {
     @Override
     public Command deserialize(String topic, byte[] bytes) {
         try {
+            if (BinaryWriter.isBinary(bytes)) {
+                return BinaryCommandCodec.decode(bytes);
+            }
             CommandType commandType = CommandType.valueOfByte(bytes[0]);
             return switch (commandType) {
                 case PUT_PRODUCT ->
@@ -23,6 +27,14 @@ public class CommandDeserializer implements Deserializer<Command> {
                         CancelOrderCommand.class);
                 case WITHDRAWAL -> JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
                         WithdrawalCommand.class);
+                case SETTLE -> JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                        SettleCommand.class);
+                case BATCH_PLACE_ORDER -> JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                        BatchPlaceOrderCommand.class);
+                case MASS_CANCEL -> JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                        MassCancelCommand.class);
+                case AMEND_ORDER -> JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                        AmendOrderCommand.class);
                 default -> {
                     logger.warn("Unhandled command type: {}", commandType);
                     yield JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
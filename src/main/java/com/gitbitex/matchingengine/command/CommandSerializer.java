@@ -1,16 +1,36 @@
 package com.gitbitex.matchingengine.command;
 
 import com.alibaba.fastjson.JSON;
+import com.gitbitex.matchingengine.BinaryWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.common.serialization.Serializer;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 @Slf4j
 public class CommandSerializer implements Serializer<Command> {
+    // write the commands that have a binary layout in the binary format, see BinaryCommandCodec
+    private boolean binaryFormat;
+
+    public CommandSerializer() {
+    }
+
+    public CommandSerializer(boolean binaryFormat) {
+        this.binaryFormat = binaryFormat;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        this.binaryFormat = BinaryWriter.isBinaryFormat(configs);
+    }
+
     @Override
     public byte[] serialize(String topic, Command command) {
         try {
+            if (binaryFormat && BinaryCommandCodec.supports(command)) {
+                return BinaryCommandCodec.encode(command);
+            }
             byte[] jsonBytes = JSON.toJSONString(command).getBytes(StandardCharsets.UTF_8);
             byte[] messageBytes = new byte[jsonBytes.length + 1];
             messageBytes[0] = command.getType().getByteValue();
@@ -8,7 +8,11 @@ public enum CommandType {
     CANCEL_ORDER((byte) 2),
     DEPOSIT((byte) 3),
     WITHDRAWAL((byte) 4),
-    PUT_PRODUCT((byte) 5);
+    PUT_PRODUCT((byte) 5),
+    SETTLE((byte) 6),
+    BATCH_PLACE_ORDER((byte) 7),
+    MASS_CANCEL((byte) 8),
+    AMEND_ORDER((byte) 9);
 
     private final byte byteValue;
 
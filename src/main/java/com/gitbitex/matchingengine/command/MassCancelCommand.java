@@ -0,0 +1,22 @@
+package com.gitbitex.matchingengine.command;
+
+import com.gitbitex.enums.OrderSide;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Cancels all resting orders of a user, optionally only those of one product and one side.
+ */
+@Getter
+@Setter
+public class MassCancelCommand extends Command {
+    private String userId;
+    // null for all products
+    private String productId;
+    // null for both sides
+    private OrderSide side;
+
+    public MassCancelCommand() {
+        this.setType(CommandType.MASS_CANCEL);
+    }
+}
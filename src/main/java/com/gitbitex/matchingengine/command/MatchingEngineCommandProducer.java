@@ -1,6 +1,8 @@
 package com.gitbitex.matchingengine.command;
 
 import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.BinaryWriter;
+import com.gitbitex.matchingengine.EngineShards;
 import com.gitbitex.middleware.kafka.KafkaProperties;
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -9,6 +11,7 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
 import java.util.Properties;
 
 @Component
@@ -24,7 +27,12 @@ public class MatchingEngineCommandProducer {
     }
 
     public void send(Command command, Callback callback) {
-        ProducerRecord<String, Command> record = new ProducerRecord<>(appProperties.getMatchingEngineCommandTopic(), command);
+        if (command.getTime() == null) {
+            command.setTime(new Date());
+        }
+        Integer partition = EngineShards.partitionOf(command, appProperties.getMatchingEngineShards());
+        ProducerRecord<String, Command> record = new ProducerRecord<>(appProperties.getMatchingEngineCommandTopic(),
+                partition, null, command);
         kafkaProducer.send(record, callback);
     }
 
@@ -33,6 +41,7 @@ public class MatchingEngineCommandProducer {
         properties.put("bootstrap.servers", kafkaProperties.getBootstrapServers());
         properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, CommandSerializer.class.getName());
+        properties.put(BinaryWriter.BINARY_FORMAT_CONFIG, appProperties.isMatchingEngineBinaryFormat());
         properties.put("compression.type", "zstd");
         properties.put("retries", 2147483647);
         properties.put("linger.ms", 100);
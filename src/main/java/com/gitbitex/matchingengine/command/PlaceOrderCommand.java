@@ -2,6 +2,8 @@ package com.gitbitex.matchingengine.command;
 
 import com.gitbitex.enums.OrderSide;
 import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
+import com.gitbitex.enums.TimeInForce;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -19,7 +21,15 @@ public class PlaceOrderCommand extends Command {
     private BigDecimal funds;
     private OrderType orderType;
     private OrderSide orderSide;
-    private Date time;
+    private TimeInForce timeInForce;
+    // when a GTT order expires
+    private Date expireTime;
+    private boolean postOnly;
+    private SelfTradePrevention selfTradePrevention;
+    // makes the order a stop order, see StopBook
+    private BigDecimal stopPrice;
+    // set by the account shard when forwarding the order, whether the order's funds could be held
+    private boolean fundsHeld;
 
     public PlaceOrderCommand() {
         this.setType(CommandType.PLACE_ORDER);
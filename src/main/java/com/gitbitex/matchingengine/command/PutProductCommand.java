@@ -9,6 +9,8 @@ public class PutProductCommand extends Command {
     private String productId;
     private String baseCurrency;
     private String quoteCurrency;
+    private int baseScale;
+    private int quoteScale;
 
     public PutProductCommand() {
         this.setType(CommandType.PUT_PRODUCT);
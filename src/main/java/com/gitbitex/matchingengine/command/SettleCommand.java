@@ -0,0 +1,45 @@
+package com.gitbitex.matchingengine.command;
+
+import com.gitbitex.enums.OrderSide;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Balance changes made by a product shard while executing one command, applied in order by the account shard.
+ */
+@Getter
+@Setter
+public class SettleCommand extends Command {
+    private List<Settlement> settlements = new ArrayList<>();
+
+    public SettleCommand() {
+        this.setType(CommandType.SETTLE);
+    }
+
+    public enum SettlementType {
+        UNHOLD,
+        EXCHANGE
+    }
+
+    @Getter
+    @Setter
+    public static class Settlement {
+        private SettlementType type;
+        // UNHOLD
+        private String userId;
+        private String currency;
+        private BigDecimal amount;
+        // EXCHANGE
+        private String takerUserId;
+        private String makerUserId;
+        private String baseCurrency;
+        private String quoteCurrency;
+        private OrderSide takerSide;
+        private BigDecimal size;
+        private BigDecimal funds;
+    }
+}
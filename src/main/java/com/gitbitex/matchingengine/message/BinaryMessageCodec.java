@@ -0,0 +1,234 @@
+package com.gitbitex.matchingengine.message;
+
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderStatus;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
+import com.gitbitex.enums.TimeInForce;
+import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.BinaryReader;
+import com.gitbitex.matchingengine.BinaryWriter;
+import com.gitbitex.matchingengine.Order;
+import com.gitbitex.matchingengine.Trade;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.CommandDeserializer;
+import com.gitbitex.matchingengine.command.CommandSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary layouts of the messages sent for every command: order, trade, account and command start/end messages.
+ * Other messages stay JSON. Fields are written in declaration order, see {@link BinaryWriter}, fields added later are
+ * only read from records of the version that added them. The order and account layouts are also those of local
+ * engine snapshot files.
+ */
+public final class BinaryMessageCodec {
+    private static final CommandSerializer COMMAND_SERIALIZER = new CommandSerializer(true);
+    private static final CommandDeserializer COMMAND_DESERIALIZER = new CommandDeserializer();
+
+    private BinaryMessageCodec() {
+    }
+
+    public static boolean supports(Message message) {
+        return switch (message.getMessageType()) {
+            case ORDER, TRADE, ACCOUNT, COMMAND_START, COMMAND_END -> true;
+            default -> false;
+        };
+    }
+
+    public static byte[] encode(Message message) {
+        BinaryWriter writer = new BinaryWriter();
+        encode(message, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Appends the encoding of the message to the writer.
+     */
+    public static void encode(Message message, BinaryWriter writer) {
+        writer.writeHeader(message.getMessageType().getByteValue());
+        writer.writeLong(message.getSequence());
+        if (message instanceof OrderMessage orderMessage) {
+            writer.writeLong(orderMessage.getOrderBookSequence());
+            writeOrder(writer, orderMessage.getOrder());
+        } else if (message instanceof TradeMessage tradeMessage) {
+            writeTrade(writer, tradeMessage.getTrade());
+        } else if (message instanceof AccountMessage accountMessage) {
+            writeAccount(writer, accountMessage.getAccount());
+        } else if (message instanceof CommandStartMessage commandStartMessage) {
+            writer.writeLong(commandStartMessage.getCommandOffset());
+            Command command = commandStartMessage.getCommand();
+            writer.writeBoolean(command != null);
+            if (command != null) {
+                writer.writeBytes(COMMAND_SERIALIZER.serialize(null, command));
+            }
+        } else if (message instanceof CommandEndMessage commandEndMessage) {
+            writer.writeLong(commandEndMessage.getCommandOffset());
+            Map<String, Long> sourceOffsets = commandEndMessage.getSourceOffsets();
+            writer.writeInt(sourceOffsets != null ? sourceOffsets.size() : -1);
+            if (sourceOffsets != null) {
+                sourceOffsets.forEach((shard, offset) -> {
+                    writer.writeString(shard);
+                    writer.writeLong(offset);
+                });
+            }
+            writer.writeNullableLong(commandEndMessage.getStateDigest());
+        } else {
+            throw new RuntimeException("no binary layout for message type: " + message.getMessageType());
+        }
+    }
+
+    public static Message decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    public static Message decode(byte[] bytes, int offset, int length) {
+        BinaryReader reader = new BinaryReader(bytes, offset, length);
+        MessageType messageType = MessageType.valueOfByte(reader.readHeader());
+        long sequence = reader.readLong();
+        Message message;
+        switch (messageType) {
+            case ORDER -> {
+                OrderMessage orderMessage = new OrderMessage();
+                orderMessage.setOrderBookSequence(reader.readLong());
+                orderMessage.setOrder(readOrder(reader));
+                message = orderMessage;
+            }
+            case TRADE -> {
+                TradeMessage tradeMessage = new TradeMessage();
+                tradeMessage.setTrade(readTrade(reader));
+                message = tradeMessage;
+            }
+            case ACCOUNT -> {
+                AccountMessage accountMessage = new AccountMessage();
+                accountMessage.setAccount(readAccount(reader));
+                message = accountMessage;
+            }
+            case COMMAND_START -> {
+                CommandStartMessage commandStartMessage = new CommandStartMessage();
+                commandStartMessage.setCommandOffset(reader.readLong());
+                if (reader.readBoolean()) {
+                    commandStartMessage.setCommand(COMMAND_DESERIALIZER.deserialize(null, reader.readBytes()));
+                }
+                message = commandStartMessage;
+            }
+            case COMMAND_END -> {
+                CommandEndMessage commandEndMessage = new CommandEndMessage();
+                commandEndMessage.setCommandOffset(reader.readLong());
+                int count = reader.readInt();
+                if (count >= 0) {
+                    Map<String, Long> sourceOffsets = new HashMap<>();
+                    for (int i = 0; i < count; i++) {
+                        sourceOffsets.put(reader.readString(), reader.readLong());
+                    }
+                    commandEndMessage.setSourceOffsets(sourceOffsets);
+                }
+                // absent from messages sent before the digest was added
+                if (reader.hasRemaining()) {
+                    commandEndMessage.setStateDigest(reader.readNullableLong());
+                }
+                message = commandEndMessage;
+            }
+            default -> throw new RuntimeException("no binary layout for message type: " + messageType);
+        }
+        message.setSequence(sequence);
+        return message;
+    }
+
+    public static void writeOrder(BinaryWriter writer, Order order) {
+        writer.writeString(order.getId());
+        writer.writeLong(order.getSequence());
+        writer.writeString(order.getUserId());
+        writer.writeEnum(order.getType());
+        writer.writeEnum(order.getSide());
+        writer.writeDecimal(order.getRemainingSize());
+        writer.writeDecimal(order.getPrice());
+        writer.writeDecimal(order.getRemainingFunds());
+        writer.writeDecimal(order.getSize());
+        writer.writeDecimal(order.getFunds());
+        writer.writeBoolean(order.isPostOnly());
+        writer.writeDate(order.getTime());
+        writer.writeString(order.getProductId());
+        writer.writeEnum(order.getStatus());
+        writer.writeString(order.getClientOid());
+        writer.writeEnum(order.getTimeInForce());
+        writer.writeDate(order.getExpireTime());
+        writer.writeEnum(order.getSelfTradePrevention());
+        writer.writeDecimal(order.getStopPrice());
+    }
+
+    public static Order readOrder(BinaryReader reader) {
+        Order order = new Order();
+        order.setId(reader.readString());
+        order.setSequence(reader.readLong());
+        order.setUserId(reader.readString());
+        order.setType(reader.readEnum(OrderType.values()));
+        order.setSide(reader.readEnum(OrderSide.values()));
+        order.setRemainingSize(reader.readDecimal());
+        order.setPrice(reader.readDecimal());
+        order.setRemainingFunds(reader.readDecimal());
+        order.setSize(reader.readDecimal());
+        order.setFunds(reader.readDecimal());
+        order.setPostOnly(reader.readBoolean());
+        order.setTime(reader.readDate());
+        order.setProductId(reader.readString());
+        order.setStatus(reader.readEnum(OrderStatus.values()));
+        order.setClientOid(reader.readString());
+        if (reader.getVersion() >= 2) {
+            order.setTimeInForce(reader.readEnum(TimeInForce.values()));
+            order.setExpireTime(reader.readDate());
+        }
+        if (reader.getVersion() >= 3) {
+            order.setSelfTradePrevention(reader.readEnum(SelfTradePrevention.values()));
+        }
+        if (reader.getVersion() >= 4) {
+            order.setStopPrice(reader.readDecimal());
+        }
+        return order;
+    }
+
+    private static void writeTrade(BinaryWriter writer, Trade trade) {
+        writer.writeString(trade.getProductId());
+        writer.writeLong(trade.getSequence());
+        writer.writeDecimal(trade.getSize());
+        writer.writeDecimal(trade.getFunds());
+        writer.writeDecimal(trade.getPrice());
+        writer.writeDate(trade.getTime());
+        writer.writeEnum(trade.getSide());
+        writer.writeString(trade.getTakerOrderId());
+        writer.writeString(trade.getMakerOrderId());
+    }
+
+    private static Trade readTrade(BinaryReader reader) {
+        Trade trade = new Trade();
+        trade.setProductId(reader.readString());
+        trade.setSequence(reader.readLong());
+        trade.setSize(reader.readDecimal());
+        trade.setFunds(reader.readDecimal());
+        trade.setPrice(reader.readDecimal());
+        trade.setTime(reader.readDate());
+        trade.setSide(reader.readEnum(OrderSide.values()));
+        trade.setTakerOrderId(reader.readString());
+        trade.setMakerOrderId(reader.readString());
+        return trade;
+    }
+
+    public static void writeAccount(BinaryWriter writer, Account account) {
+        writer.writeString(account.getId());
+        writer.writeString(account.getUserId());
+        writer.writeString(account.getCurrency());
+        writer.writeDecimal(account.getAvailable());
+        writer.writeDecimal(account.getHold());
+    }
+
+    public static Account readAccount(BinaryReader reader) {
+        Account account = new Account();
+        account.setId(reader.readString());
+        account.setUserId(reader.readString());
+        account.setCurrency(reader.readString());
+        account.setAvailable(reader.readDecimal());
+        account.setHold(reader.readDecimal());
+        return account;
+    }
+}
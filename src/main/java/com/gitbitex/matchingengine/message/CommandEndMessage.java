@@ -3,10 +3,17 @@ package com.gitbitex.matchingengine.message;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Map;
+
 @Getter
 @Setter
 public class CommandEndMessage extends Message {
+    // offset of the command, or of the last command of the batch in batch execution mode
     private long commandOffset;
+    // source offsets of the commands forwarded from other shards, keyed by shard number, see Command
+    private Map<String, Long> sourceOffsets;
+    // digest of the engine state at the end of the command, see StateDigest, null if the engine keeps none
+    private Long stateDigest;
 
     public CommandEndMessage() {
         this.setMessageType(MessageType.COMMAND_END);
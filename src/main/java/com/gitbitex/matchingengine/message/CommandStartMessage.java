@@ -8,6 +8,7 @@ import lombok.Setter;
 @Setter
 public class CommandStartMessage extends Message {
     private Command command;
+    // offset of the command, or of the first command of the batch in batch execution mode
     private long commandOffset;
 
     public CommandStartMessage() {
@@ -1,46 +1,108 @@
 package com.gitbitex.matchingengine.message;
 
 import com.alibaba.fastjson.JSON;
+import com.gitbitex.matchingengine.BinaryWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.common.serialization.Deserializer;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
 
+/**
+ * Deserializer of the engine message topic. A consumer that only needs some message types passes them to the
+ * constructor: records and batch frames of other types are skipped by their type byte without being decoded, and a
+ * skipped record deserializes to null.
+ */
 @Slf4j
 public class MatchingEngineMessageDeserializer implements Deserializer<Message> {
+    private final Set<MessageType> messageTypes;
+
+    public MatchingEngineMessageDeserializer() {
+        this.messageTypes = EnumSet.allOf(MessageType.class);
+    }
+
+    public MatchingEngineMessageDeserializer(MessageType first, MessageType... rest) {
+        this.messageTypes = EnumSet.of(first, rest);
+    }
+
     @Override
     public Message deserialize(String topic, byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (messageTypeOf(bytes, 0) == MessageType.BATCH) {
+            return deserializeBatch(bytes);
+        }
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes the wanted frames straight from the record bytes. The sequence of a filtered batch is the sequence of
+     * its last decoded message.
+     */
+    private MessageBatch deserializeBatch(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        int count = buffer.getInt();
+        MessageBatch batch = new MessageBatch();
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            int position = buffer.position();
+            Message message = decode(bytes, position, length);
+            buffer.position(position + length);
+            if (message != null) {
+                batch.getMessages().add(message);
+                batch.setSequence(message.getSequence());
+            }
+        }
+        return batch;
+    }
+
+    private Message decode(byte[] bytes, int offset, int length) {
         try {
-            MessageType messageType = MessageType.valueOfByte(bytes[0]);
+            MessageType messageType = messageTypeOf(bytes, offset);
+            if (!messageTypes.contains(messageType)) {
+                return null;
+            }
+            if (bytes[offset] == BinaryWriter.MAGIC) {
+                return BinaryMessageCodec.decode(bytes, offset, length);
+            }
             switch (messageType) {
                 case COMMAND_START:
-                    return JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                    return JSON.parseObject(bytes, offset + 1, length - 1, StandardCharsets.UTF_8,
                             CommandStartMessage.class);
                 case COMMAND_END:
-                    return JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                    return JSON.parseObject(bytes, offset + 1, length - 1, StandardCharsets.UTF_8,
                             CommandEndMessage.class);
                 case ACCOUNT:
-                    return JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                    return JSON.parseObject(bytes, offset + 1, length - 1, StandardCharsets.UTF_8,
                             AccountMessage.class);
                 case PRODUCT:
-                    return JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                    return JSON.parseObject(bytes, offset + 1, length - 1, StandardCharsets.UTF_8,
                             ProductMessage.class);
                 case ORDER:
-                    return JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                    return JSON.parseObject(bytes, offset + 1, length - 1, StandardCharsets.UTF_8,
                             OrderMessage.class);
                 case TRADE:
-                    return JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                    return JSON.parseObject(bytes, offset + 1, length - 1, StandardCharsets.UTF_8,
                             TradeMessage.class);
                 default:
                     logger.warn("Unhandled message type: {}", messageType);
-                    return JSON.parseObject(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8,
+                    return JSON.parseObject(bytes, offset + 1, length - 1, StandardCharsets.UTF_8,
                             Message.class);
             }
         } catch (Exception e) {
-            String message = new String(bytes, StandardCharsets.UTF_8);
+            String message = new String(bytes, offset, length, StandardCharsets.UTF_8);
             logger.error("Failed to deserialize message: {}", message, e);
             throw new RuntimeException("deserialize error: " + message, e);
         }
     }
-}
 
+    /**
+     * Reads the type byte of a JSON or binary frame, see {@link BinaryWriter}.
+     */
+    private static MessageType messageTypeOf(byte[] bytes, int offset) {
+        return MessageType.valueOfByte(bytes[offset] == BinaryWriter.MAGIC ? bytes[offset + 2] : bytes[offset]);
+    }
+}
@@ -0,0 +1,37 @@
+package com.gitbitex.matchingengine.message;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Several engine messages sent as one record in batch execution mode. The sequence of the batch is the sequence of
+ * its last message.
+ */
+@Getter
+@Setter
+public class MessageBatch extends Message {
+    private List<Message> messages = new ArrayList<>();
+
+    public MessageBatch() {
+        this.setMessageType(MessageType.BATCH);
+    }
+
+    /**
+     * Calls the action for the message, or for each message of a batch. Does nothing for a record the deserializer
+     * skipped.
+     */
+    public static void forEach(Message message, Consumer<Message> action) {
+        if (message == null) {
+            return;
+        }
+        if (message instanceof MessageBatch batch) {
+            batch.getMessages().forEach(action);
+        } else {
+            action.accept(message);
+        }
+    }
+}
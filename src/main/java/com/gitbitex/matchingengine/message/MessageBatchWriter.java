@@ -0,0 +1,47 @@
+package com.gitbitex.matchingengine.message;
+
+import com.gitbitex.matchingengine.BinaryWriter;
+
+/**
+ * Encodes messages one by one into a reusable buffer in the batch record format: the batch type byte, the message
+ * count, then each message as a length-prefixed frame in its own encoding. Messages are encoded as they are added,
+ * so the caller may change or reuse them right after.
+ */
+public class MessageBatchWriter {
+    private final MessageSerializer messageSerializer;
+    private final BinaryWriter writer;
+    private int count;
+
+    public MessageBatchWriter(MessageSerializer messageSerializer, int capacity) {
+        this.messageSerializer = messageSerializer;
+        this.writer = new BinaryWriter(capacity);
+        reset();
+    }
+
+    public void add(Message message) {
+        int lengthPosition = writer.size();
+        writer.writeFixedInt(0);
+        messageSerializer.serialize(message, writer);
+        writer.setFixedInt(lengthPosition, writer.size() - lengthPosition - 4);
+        writer.setFixedInt(1, ++count);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public byte[] toByteArray() {
+        return writer.toByteArray();
+    }
+
+    public void reset() {
+        writer.reset();
+        writer.writeByte(MessageType.BATCH.getByteValue());
+        writer.writeFixedInt(0);
+        count = 0;
+    }
+}
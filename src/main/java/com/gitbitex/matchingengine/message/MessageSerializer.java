@@ -1,15 +1,48 @@
 package com.gitbitex.matchingengine.message;
 
 import com.alibaba.fastjson.JSON;
+import com.gitbitex.matchingengine.BinaryWriter;
 import org.apache.kafka.common.serialization.Serializer;
 
+import java.util.Map;
+
 public class MessageSerializer implements Serializer<Message> {
+    // write the messages that have a binary layout in the binary format, see BinaryMessageCodec
+    private boolean binaryFormat;
+
+    public MessageSerializer() {
+    }
+
+    public MessageSerializer(boolean binaryFormat) {
+        this.binaryFormat = binaryFormat;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        this.binaryFormat = BinaryWriter.isBinaryFormat(configs);
+    }
+
     @Override
     public byte[] serialize(String s, Message command) {
-        byte[] jsonBytes = JSON.toJSONBytes(command);
-        byte[] messageBytes = new byte[jsonBytes.length + 1];
-        messageBytes[0] = command.getMessageType().getByteValue();
-        System.arraycopy(jsonBytes, 0, messageBytes, 1, jsonBytes.length);
-        return messageBytes;
+        if (command instanceof MessageBatch batch) {
+            MessageBatchWriter batchWriter = new MessageBatchWriter(this, 1024);
+            batch.getMessages().forEach(batchWriter::add);
+            return batchWriter.toByteArray();
+        }
+        BinaryWriter writer = new BinaryWriter();
+        serialize(command, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Appends the encoding of a single message to the writer.
+     */
+    public void serialize(Message message, BinaryWriter writer) {
+        if (binaryFormat && BinaryMessageCodec.supports(message)) {
+            BinaryMessageCodec.encode(message, writer);
+            return;
+        }
+        writer.writeByte(message.getMessageType().getByteValue());
+        writer.writeRaw(JSON.toJSONBytes(message));
     }
 }
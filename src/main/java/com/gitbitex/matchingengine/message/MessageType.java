@@ -9,7 +9,8 @@ public enum MessageType {
     ORDER((byte) 3),
     TRADE((byte) 4),
     COMMAND_START((byte) 5),
-    COMMAND_END((byte) 6);
+    COMMAND_END((byte) 6),
+    BATCH((byte) 7);
 
     private final byte byteValue;
 
@@ -3,6 +3,7 @@ package com.gitbitex.matchingengine.snapshot;
 import com.alibaba.fastjson.JSON;
 import com.gitbitex.enums.OrderStatus;
 import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.EngineShards;
 import com.gitbitex.matchingengine.Order;
 import com.gitbitex.matchingengine.Product;
 import com.mongodb.ClientSessionOptions;
@@ -64,8 +65,12 @@ public class EngineSnapshotManager {
     }
 
     public EngineState getEngineState(ClientSession session) {
+        return getEngineState(session, EngineShards.ACCOUNT_SHARD);
+    }
+
+    public EngineState getEngineState(ClientSession session, int shard) {
         return engineStateCollection
-                .find(session, Filters.eq("_id", "default"))
+                .find(session, Filters.eq("_id", EngineShards.stateId(shard)))
                 .first();
     }
 
@@ -126,7 +131,7 @@ public class EngineSnapshotManager {
         for (Order item : orders) {
             Bson filter = Filters.eq("_id", item.getId());
             WriteModel<Order> writeModel;
-            if (item.getStatus() == OrderStatus.OPEN) {
+            if (item.getStatus() == OrderStatus.OPEN || item.getStatus() == OrderStatus.PENDING) {
                 writeModel = new ReplaceOneModel<>(filter, item, new ReplaceOptions().upsert(true));
             } else {
                 writeModel = new DeleteOneModel<>(filter);
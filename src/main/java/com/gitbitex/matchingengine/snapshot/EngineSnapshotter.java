@@ -0,0 +1,126 @@
+package com.gitbitex.matchingengine.snapshot;
+
+import com.gitbitex.enums.OrderStatus;
+import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.Order;
+import com.gitbitex.matchingengine.Product;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the local snapshot file of an engine shard on a background thread, from snapshots the engine takes of
+ * itself between batches.
+ * <p>
+ * The snapshotter keeps its own copy of the engine state. The engine hands it a full copy once and then only copies
+ * of what changed since the previous snapshot, so taking a snapshot costs the engine thread time proportional to the
+ * changes, not to the size of the books. Deltas are applied in the order they were taken. When the thread falls
+ * behind, it applies every waiting delta and writes the file once.
+ */
+@Slf4j
+public class EngineSnapshotter {
+    private final LocalSnapshotStore localSnapshotStore;
+    private final int shard;
+    private final ExecutorService executor;
+    private final Queue<SnapshotDelta> pendingDeltas = new ConcurrentLinkedQueue<>();
+    // the copy of the engine state, only used by the executor thread
+    private final Map<String, Product> products = new HashMap<>();
+    private final Map<String, Account> accounts = new HashMap<>();
+    // open and pending orders of each book by sequence, the order they are written and restored in
+    private final Map<String, TreeMap<Long, Order>> orders = new HashMap<>();
+    private EngineState engineState;
+
+    public EngineSnapshotter(LocalSnapshotStore localSnapshotStore, int shard) {
+        this.localSnapshotStore = localSnapshotStore;
+        this.shard = shard;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "EngineSnapshotter-" + shard);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a delta, the first one must hold the whole engine state. The objects in it must not be changed anymore.
+     */
+    public void submit(SnapshotDelta delta) {
+        pendingDeltas.add(delta);
+        executor.execute(this::writePendingDeltas);
+    }
+
+    /**
+     * Stops the thread and waits for the deltas already submitted to be written, the next engine of the shard on this
+     * node writes the same file.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("local snapshot of shard {} still being written", shard);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writePendingDeltas() {
+        SnapshotDelta delta = pendingDeltas.poll();
+        if (delta == null) {
+            // written by an earlier run
+            return;
+        }
+        int count = 0;
+        for (; delta != null; delta = pendingDeltas.poll()) {
+            apply(delta);
+            count++;
+        }
+        try {
+            long startTime = System.currentTimeMillis();
+            write();
+            logger.info("local snapshot of shard {} written in {}ms, {} delta(s), state: commandOffset={}, "
+                            + "messageSequence={}", shard, System.currentTimeMillis() - startTime, count,
+                    engineState.getCommandOffset(), engineState.getMessageSequence());
+        } catch (Exception e) {
+            // the copy is intact, the next snapshot writes the file again
+            logger.error("local snapshot of shard {} cannot be written: {}", shard, e.getMessage(), e);
+        }
+    }
+
+    private void apply(SnapshotDelta delta) {
+        engineState = delta.getEngineState();
+        for (Product product : delta.getProducts()) {
+            products.put(product.getId(), product);
+        }
+        for (Account account : delta.getAccounts()) {
+            accounts.put(account.getId(), account);
+        }
+        for (Order order : delta.getOrders()) {
+            TreeMap<Long, Order> bookOrders = orders.computeIfAbsent(order.getProductId(), k -> new TreeMap<>());
+            if (order.getStatus() == OrderStatus.OPEN || order.getStatus() == OrderStatus.PENDING) {
+                bookOrders.put(order.getSequence(), order);
+            } else {
+                bookOrders.remove(order.getSequence());
+            }
+        }
+    }
+
+    private void write() {
+        try (LocalSnapshotWriter writer = localSnapshotStore.openWriter(shard)) {
+            writer.writeState(engineState);
+            products.values().forEach(writer::writeProduct);
+            accounts.values().forEach(writer::writeAccount);
+            for (TreeMap<Long, Order> bookOrders : orders.values()) {
+                bookOrders.values().forEach(writer::writeOrder);
+            }
+            writer.commit();
+        }
+    }
+}
@@ -16,4 +16,8 @@ public class EngineState {
     private Map<String, Long> tradeSequences = new HashMap<>();
     private Map<String, Long> orderSequences = new HashMap<>();
     private Map<String, Long> orderBookSequences = new HashMap<>();
+    // offset of the last command applied from each source shard, keyed by shard number
+    private Map<String, Long> sourceOffsets = new HashMap<>();
+    // digest of the state of the snapshot, checked when it is restored, see StateDigest
+    private Long stateDigest;
 }
@@ -0,0 +1,166 @@
+package com.gitbitex.matchingengine.snapshot;
+
+import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.BinaryReader;
+import com.gitbitex.matchingengine.Order;
+import com.gitbitex.matchingengine.Product;
+import com.gitbitex.matchingengine.message.BinaryMessageCodec;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.gitbitex.matchingengine.snapshot.LocalSnapshotWriter.*;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reader of a local snapshot file, see {@link LocalSnapshotStore}.
+ * <p>
+ * The file is read through a read-only memory-mapped window that is moved forward as records are consumed, each
+ * record is copied out with one bulk read and decoded in place. The sections must be read in the order they were
+ * written: the state, products, accounts, orders and the end record.
+ */
+public class LocalSnapshotReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    // file position of the start of the window
+    private long windowPosition;
+    private byte[] bytes = new byte[1024];
+    private BinaryReader record;
+    // type of the record read ahead, 0 if there is none
+    private byte recordType;
+    private long recordCount;
+
+    LocalSnapshotReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, READ);
+        this.size = channel.size();
+        this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, size));
+    }
+
+    public EngineState readState() {
+        expect(STATE);
+        int version = record.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new RuntimeException("unsupported snapshot file version: " + version);
+        }
+        EngineState engineState = new EngineState();
+        engineState.setId(record.readString());
+        engineState.setCommandOffset(record.readNullableLong());
+        engineState.setMessageOffset(record.readNullableLong());
+        engineState.setMessageSequence(record.readNullableLong());
+        readSequences(engineState.getOrderSequences());
+        readSequences(engineState.getTradeSequences());
+        readSequences(engineState.getOrderBookSequences());
+        readSequences(engineState.getSourceOffsets());
+        engineState.setStateDigest(record.readNullableLong());
+        return engineState;
+    }
+
+    public void readProducts(Consumer<Product> consumer) {
+        while (nextRecord() == PRODUCT) {
+            recordType = 0;
+            Product product = new Product();
+            product.setId(record.readString());
+            product.setBaseCurrency(record.readString());
+            product.setQuoteCurrency(record.readString());
+            product.setBaseScale(record.readInt());
+            product.setQuoteScale(record.readInt());
+            consumer.accept(product);
+        }
+    }
+
+    public void readAccounts(Consumer<Account> consumer) {
+        while (nextRecord() == ACCOUNT) {
+            recordType = 0;
+            consumer.accept(BinaryMessageCodec.readAccount(record));
+        }
+    }
+
+    public void readOrders(Consumer<Order> consumer) {
+        while (nextRecord() == ORDER) {
+            recordType = 0;
+            consumer.accept(BinaryMessageCodec.readOrder(record));
+        }
+    }
+
+    /**
+     * Reads the end record and checks that no record went missing.
+     */
+    public void readEnd() {
+        expect(END);
+        long count = recordCount - 1;
+        long expectedCount = record.readLong();
+        if (count != expectedCount) {
+            throw new RuntimeException(String.format("snapshot file has %s record(s), expected %s", count,
+                    expectedCount));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void expect(byte type) {
+        if (nextRecord() != type) {
+            throw new RuntimeException(String.format("unexpected snapshot record: type=%s, expected=%s",
+                    recordType, type));
+        }
+        recordType = 0;
+    }
+
+    private void readSequences(Map<String, Long> sequences) {
+        int count = record.readInt();
+        for (int i = 0; i < count; i++) {
+            sequences.put(record.readString(), record.readLong());
+        }
+    }
+
+    /**
+     * Reads the next record ahead if it is not yet and returns its type.
+     */
+    private byte nextRecord() {
+        if (recordType != 0) {
+            return recordType;
+        }
+        ensureMapped(4);
+        int length = window.getInt();
+        ensureMapped(length);
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        window.get(bytes, 0, length);
+        record = new BinaryReader(bytes, 0, length);
+        recordType = record.readHeader();
+        recordCount++;
+        return recordType;
+    }
+
+    /**
+     * Moves the window so the next {@code length} bytes are in it.
+     */
+    private void ensureMapped(int length) {
+        long position = windowPosition + window.position();
+        if (length < 0 || size - position < length) {
+            throw new RuntimeException("unexpected end of snapshot file");
+        }
+        if (window.remaining() >= length) {
+            return;
+        }
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(Math.max(WINDOW_SIZE, length), size - position));
+            windowPosition = position;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
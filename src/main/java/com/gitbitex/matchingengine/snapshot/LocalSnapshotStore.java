@@ -0,0 +1,91 @@
+package com.gitbitex.matchingengine.snapshot;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.EngineShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Engine snapshots in binary files on local disk, one file per shard, next to the Mongo snapshot.
+ * <p>
+ * A file holds the whole state of a shard: a header record with the engine state, then the products, the accounts
+ * and the resting and pending stop orders of each book in sequence order. Records are {@link
+ * com.gitbitex.matchingengine.BinaryWriter} records, each preceded by its 4-byte length, and the file ends with a
+ * record counting the others. Loading it is a sequential read of a memory-mapped file instead of a scan of the
+ * snapshot collections.
+ */
+@Slf4j
+@Component
+public class LocalSnapshotStore {
+    // null if local snapshots are disabled
+    private final Path directory;
+
+    public LocalSnapshotStore(AppProperties appProperties) {
+        String directory = appProperties.getMatchingEngineLocalSnapshotDir();
+        this.directory = directory != null && !directory.isBlank() ? Paths.get(directory) : null;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Reads the header of the snapshot file of the shard, null if local snapshots are disabled, there is no file or
+     * it cannot be read.
+     */
+    @Nullable
+    public EngineState getEngineState(int shard) {
+        if (directory == null || !Files.exists(path(shard))) {
+            return null;
+        }
+        try (LocalSnapshotReader reader = openReader(shard)) {
+            EngineState engineState = reader.readState();
+            if (!EngineShards.stateId(shard).equals(engineState.getId())) {
+                logger.warn("snapshot file {} is of another shard: {}", path(shard), engineState.getId());
+                return null;
+            }
+            return engineState;
+        } catch (Exception e) {
+            logger.warn("snapshot file {} cannot be read: {}", path(shard), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    public LocalSnapshotReader openReader(int shard) {
+        try {
+            return new LocalSnapshotReader(path(shard));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Starts a new snapshot file of the shard, it replaces the current one when the writer is committed.
+     */
+    public LocalSnapshotWriter openWriter(int shard) {
+        try {
+            Files.createDirectories(directory);
+            return new LocalSnapshotWriter(path(shard));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void delete(int shard) {
+        try {
+            Files.deleteIfExists(path(shard));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path path(int shard) {
+        return directory.resolve("engine-" + shard + ".snapshot");
+    }
+}
@@ -0,0 +1,164 @@
+package com.gitbitex.matchingengine.snapshot;
+
+import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.BinaryWriter;
+import com.gitbitex.matchingengine.Order;
+import com.gitbitex.matchingengine.Product;
+import com.gitbitex.matchingengine.message.BinaryMessageCodec;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writer of a local snapshot file, see {@link LocalSnapshotStore}.
+ * <p>
+ * Records are encoded with {@link BinaryWriter} and copied into a memory-mapped window of the file, which is moved
+ * forward as it fills up. The file is written under a temporary name and renamed into place by {@link #commit()}, so
+ * a reader never sees a partial snapshot.
+ */
+public class LocalSnapshotWriter implements AutoCloseable {
+    static final byte STATE = 1;
+    static final byte PRODUCT = 2;
+    static final byte ACCOUNT = 3;
+    static final byte ORDER = 4;
+    static final byte END = 5;
+    static final int FORMAT_VERSION = 2;
+    static final int WINDOW_SIZE = 64 << 20;
+
+    private final Path path;
+    private final Path tempPath;
+    private final FileChannel channel;
+    private final BinaryWriter record = new BinaryWriter(1024);
+    private MappedByteBuffer window;
+    // file position of the start of the window
+    private long windowPosition;
+    private long recordCount;
+    private boolean committed;
+
+    LocalSnapshotWriter(Path path) throws IOException {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.channel = FileChannel.open(tempPath, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW_SIZE);
+    }
+
+    /**
+     * Writes the header of the snapshot, it must be the first record.
+     */
+    public void writeState(EngineState engineState) {
+        record.writeHeader(STATE);
+        record.writeInt(FORMAT_VERSION);
+        record.writeString(engineState.getId());
+        record.writeNullableLong(engineState.getCommandOffset());
+        record.writeNullableLong(engineState.getMessageOffset());
+        record.writeNullableLong(engineState.getMessageSequence());
+        writeSequences(engineState.getOrderSequences());
+        writeSequences(engineState.getTradeSequences());
+        writeSequences(engineState.getOrderBookSequences());
+        writeSequences(engineState.getSourceOffsets());
+        record.writeNullableLong(engineState.getStateDigest());
+        writeRecord();
+    }
+
+    public void writeProduct(Product product) {
+        record.writeHeader(PRODUCT);
+        record.writeString(product.getId());
+        record.writeString(product.getBaseCurrency());
+        record.writeString(product.getQuoteCurrency());
+        record.writeInt(product.getBaseScale());
+        record.writeInt(product.getQuoteScale());
+        writeRecord();
+    }
+
+    public void writeAccount(Account account) {
+        record.writeHeader(ACCOUNT);
+        BinaryMessageCodec.writeAccount(record, account);
+        writeRecord();
+    }
+
+    /**
+     * Writes a resting or pending stop order. The orders of a book are restored in the order they are written.
+     */
+    public void writeOrder(Order order) {
+        record.writeHeader(ORDER);
+        BinaryMessageCodec.writeOrder(record, order);
+        writeRecord();
+    }
+
+    /**
+     * Ends the snapshot, flushes it to disk and moves it into place.
+     */
+    public void commit() {
+        record.writeHeader(END);
+        record.writeLong(recordCount);
+        writeRecord();
+        try {
+            long size = windowPosition + window.position();
+            window.force();
+            channel.truncate(size);
+            channel.force(true);
+            channel.close();
+            Files.move(tempPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+            committed = true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (committed) {
+            return;
+        }
+        try {
+            channel.close();
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeSequences(Map<String, Long> sequences) {
+        record.writeInt(sequences.size());
+        sequences.forEach((key, value) -> {
+            record.writeString(key);
+            record.writeLong(value);
+        });
+    }
+
+    /**
+     * Appends the encoded record with a 4-byte length in front of it and empties the record writer.
+     */
+    private void writeRecord() {
+        int length = record.size();
+        if (window.remaining() < 4 + length) {
+            remap(4 + length);
+        }
+        window.putInt(length);
+        record.writeTo(window);
+        record.reset();
+        recordCount++;
+    }
+
+    private void remap(int needed) {
+        try {
+            long position = windowPosition + window.position();
+            window.force();
+            window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(WINDOW_SIZE, needed));
+            windowPosition = position;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.gitbitex.matchingengine.snapshot;
 
 import com.gitbitex.AppProperties;
 import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.EngineShards;
 import com.gitbitex.matchingengine.Order;
 import com.gitbitex.matchingengine.Product;
 import com.gitbitex.matchingengine.Trade;
@@ -19,14 +20,15 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Saves the state of the engine from its messages. On a sharded engine each message partition is a shard with its
+ * own sequence and state, the partitions are spread over the threads of the group.
+ */
 @Slf4j
 public class MatchingEngineSnapshotThread extends KafkaConsumerThread<String, Message> implements ConsumerRebalanceListener {
     private final EngineSnapshotManager engineSnapshotManager;
     private final AppProperties appProperties;
-    private final Map<String, Account> accounts = new HashMap<>();
-    private final Map<String, Order> orders = new HashMap<>();
-    private final Map<String, Product> products = new HashMap<>();
-    private EngineState engineState;
+    private final Map<Integer, ShardState> shardStates = new HashMap<>();
 
     public MatchingEngineSnapshotThread(KafkaConsumer<String, Message> consumer,
                                         EngineSnapshotManager engineSnapshotManager, AppProperties appProperties) {
@@ -36,24 +38,32 @@ public class MatchingEngineSnapshotThread extends KafkaConsumerThread<String, Me
     }
 
     @Override
-    public void onPartitionsRevoked(Collection<TopicPartition> collection) {
-
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        // messages buffered since the last saved batch are read again by the next owner
+        for (TopicPartition partition : partitions) {
+            shardStates.remove(shardOf(partition));
+        }
     }
 
     @Override
     public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-        engineSnapshotManager.runInSession(session -> {
-            engineState = engineSnapshotManager.getEngineState(session);
-            if (engineState == null) {
-                engineState = new EngineState();
+        for (TopicPartition partition : partitions) {
+            int shard = shardOf(partition);
+            ShardState shardState = new ShardState();
+            engineSnapshotManager.runInSession(session -> {
+                shardState.engineState = engineSnapshotManager.getEngineState(session, shard);
+                if (shardState.engineState == null) {
+                    shardState.engineState = new EngineState();
+                    shardState.engineState.setId(EngineShards.stateId(shard));
+                }
+            });
+            shardStates.put(shard, shardState);
+
+            if (shardState.engineState.getMessageOffset() != null) {
+                long offset = shardState.engineState.getMessageOffset() + 1;
+                logger.info("seek to offset: {}", offset);
+                consumer.seek(partition, offset);
             }
-        });
-        cleanBuffers();
-
-        if (engineState.getMessageOffset() != null) {
-            long offset = engineState.getMessageOffset() + 1;
-            logger.info("seek to offset: {}", offset);
-            consumer.seek(partitions.iterator().next(), offset);
         }
     }
 
@@ -65,58 +75,79 @@ public class MatchingEngineSnapshotThread extends KafkaConsumerThread<String, Me
     @Override
     protected void doPoll() {
         var records = consumer.poll(Duration.ofSeconds(5));
-        for (ConsumerRecord<String, Message> record : records) {
-            Message message = record.value();
-
-            long expectedSequence = engineState.getMessageSequence() != null
-                    ? engineState.getMessageSequence() + 1 : 1;
-            if (message.getSequence() < expectedSequence) {
-                continue;
-            } else if (message.getSequence() > expectedSequence) {
-                throw new RuntimeException(String.format("out of sequence: sequence=%s, expectedSequence=%s", message.getSequence(), expectedSequence));
+        for (TopicPartition partition : records.partitions()) {
+            ShardState shardState = shardStates.get(shardOf(partition));
+            for (ConsumerRecord<String, Message> record : records.records(partition)) {
+                MessageBatch.forEach(record.value(), message -> applyMessage(shardState, message, record.offset()));
             }
+        }
+    }
 
-            engineState.setMessageOffset(record.offset());
-            engineState.setMessageSequence(message.getSequence());
+    private void applyMessage(ShardState shardState, Message message, long offset) {
+        EngineState engineState = shardState.engineState;
+        long expectedSequence = engineState.getMessageSequence() != null
+                ? engineState.getMessageSequence() + 1 : 1;
+        if (message.getSequence() < expectedSequence) {
+            return;
+        } else if (message.getSequence() > expectedSequence) {
+            throw new RuntimeException(String.format("out of sequence: sequence=%s, expectedSequence=%s", message.getSequence(), expectedSequence));
+        }
 
-            if (message instanceof OrderMessage orderMessage) {
-                Order order = orderMessage.getOrder();
-                orders.put(order.getId(), order);
-                engineState.getOrderSequences().put(order.getProductId(), order.getSequence());
-                engineState.getOrderBookSequences().put(order.getProductId(), orderMessage.getOrderBookSequence());
+        engineState.setMessageOffset(offset);
+        engineState.setMessageSequence(message.getSequence());
 
-            } else if (message instanceof TradeMessage tradeMessage) {
-                Trade trade = tradeMessage.getTrade();
-                engineState.getTradeSequences().put(trade.getProductId(), trade.getSequence());
+        if (message instanceof OrderMessage orderMessage) {
+            Order order = orderMessage.getOrder();
+            shardState.orders.put(order.getId(), order);
+            engineState.getOrderSequences().put(order.getProductId(), order.getSequence());
+            engineState.getOrderBookSequences().put(order.getProductId(), orderMessage.getOrderBookSequence());
 
-            } else if (message instanceof AccountMessage accountMessage) {
-                Account account = accountMessage.getAccount();
-                accounts.put(account.getId(), account);
+        } else if (message instanceof TradeMessage tradeMessage) {
+            Trade trade = tradeMessage.getTrade();
+            engineState.getTradeSequences().put(trade.getProductId(), trade.getSequence());
 
-            } else if (message instanceof ProductMessage productMessage) {
-                Product product = productMessage.getProduct();
-                products.put(product.getId(), product);
+        } else if (message instanceof AccountMessage accountMessage) {
+            Account account = accountMessage.getAccount();
+            shardState.accounts.put(account.getId(), account);
 
-            } else if (message instanceof CommandStartMessage commandStartMessage) {
-                engineState.setCommandOffset(null);
+        } else if (message instanceof ProductMessage productMessage) {
+            Product product = productMessage.getProduct();
+            shardState.products.put(product.getId(), product);
 
-            } else if (message instanceof CommandEndMessage commandEndMessage) {
-                engineState.setCommandOffset(commandEndMessage.getCommandOffset());
+        } else if (message instanceof CommandStartMessage commandStartMessage) {
+            engineState.setCommandOffset(null);
 
-                saveState();
+        } else if (message instanceof CommandEndMessage commandEndMessage) {
+            engineState.setCommandOffset(commandEndMessage.getCommandOffset());
+            engineState.setStateDigest(commandEndMessage.getStateDigest());
+            if (commandEndMessage.getSourceOffsets() != null) {
+                engineState.getSourceOffsets().putAll(commandEndMessage.getSourceOffsets());
             }
+
+            saveState(shardState);
         }
     }
 
-    private void saveState() {
-        engineSnapshotManager.save(engineState, accounts.values(), orders.values(), products.values());
-        cleanBuffers();
+    private void saveState(ShardState shardState) {
+        engineSnapshotManager.save(shardState.engineState, shardState.accounts.values(), shardState.orders.values(),
+                shardState.products.values());
+        shardState.accounts.clear();
+        shardState.orders.clear();
+        shardState.products.clear();
     }
 
-    private void cleanBuffers() {
-        accounts.clear();
-        orders.clear();
-        products.clear();
+    private int shardOf(TopicPartition partition) {
+        // the unsharded engine writes to a single partition
+        return appProperties.getMatchingEngineShards() > 1 ? partition.partition() : 0;
     }
 
+    /**
+     * State of a shard and the objects changed since its last saved batch.
+     */
+    private static class ShardState {
+        private final Map<String, Account> accounts = new HashMap<>();
+        private final Map<String, Order> orders = new HashMap<>();
+        private final Map<String, Product> products = new HashMap<>();
+        private EngineState engineState;
+    }
 }
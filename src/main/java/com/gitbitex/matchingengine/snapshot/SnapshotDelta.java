@@ -0,0 +1,23 @@
+package com.gitbitex.matchingengine.snapshot;
+
+import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.Order;
+import com.gitbitex.matchingengine.Product;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies of what changed in an engine since its last snapshot, the engine state and every product. Orders that are
+ * no longer open or pending are removed from the snapshot.
+ */
+@Getter
+@Setter
+public class SnapshotDelta {
+    private EngineState engineState;
+    private List<Product> products = new ArrayList<>();
+    private List<Account> accounts = new ArrayList<>();
+    private List<Order> orders = new ArrayList<>();
+}
@@ -45,6 +45,9 @@ public abstract class KafkaConsumerThread<K, V> extends Thread {
             }
         } catch (Exception e) {
             logger.error("consumer error: {}", e.getMessage(), e);
+            if (isFatal(e)) {
+                throw e;
+            }
         } finally {
             consumer.close();
         }
@@ -62,6 +65,14 @@ public abstract class KafkaConsumerThread<K, V> extends Thread {
         super.interrupt();
     }
 
+    /**
+     * Whether the error must end the thread with an exception, so that its uncaught exception handler restarts it.
+     * Other errors are logged and the thread exits.
+     */
+    protected boolean isFatal(Exception e) {
+        return false;
+    }
+
     protected abstract void doSubscribe();
 
     protected abstract void doPoll();
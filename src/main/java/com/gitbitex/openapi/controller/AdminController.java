@@ -71,6 +71,8 @@ public class AdminController {
         putProductCommand.setProductId(product.getId());
         putProductCommand.setBaseCurrency(product.getBaseCurrency());
         putProductCommand.setQuoteCurrency(product.getQuoteCurrency());
+        putProductCommand.setBaseScale(product.getBaseScale());
+        putProductCommand.setQuoteScale(product.getQuoteScale());
         producer.send(putProductCommand, null);
 
         return product;
@@ -3,15 +3,21 @@ package com.gitbitex.openapi.controller;
 import com.gitbitex.enums.OrderSide;
 import com.gitbitex.enums.OrderStatus;
 import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
 import com.gitbitex.enums.TimeInForce;
 import com.gitbitex.marketdata.entity.OrderEntity;
 import com.gitbitex.marketdata.entity.ProductEntity;
 import com.gitbitex.marketdata.entity.User;
 import com.gitbitex.marketdata.repository.OrderRepository;
 import com.gitbitex.marketdata.repository.ProductRepository;
+import com.gitbitex.matchingengine.command.AmendOrderCommand;
+import com.gitbitex.matchingengine.command.BatchPlaceOrderCommand;
 import com.gitbitex.matchingengine.command.CancelOrderCommand;
+import com.gitbitex.matchingengine.command.MassCancelCommand;
 import com.gitbitex.matchingengine.command.MatchingEngineCommandProducer;
 import com.gitbitex.matchingengine.command.PlaceOrderCommand;
+import com.gitbitex.openapi.model.AmendOrderRequest;
+import com.gitbitex.openapi.model.BatchPlaceOrderRequest;
 import com.gitbitex.openapi.model.OrderDto;
 import com.gitbitex.openapi.model.PagedList;
 import com.gitbitex.openapi.model.PlaceOrderRequest;
@@ -25,7 +31,9 @@ import javax.validation.Valid;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
@@ -47,6 +55,44 @@ public class OrderController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product not found: " + request.getProductId());
         }
 
+        PlaceOrderCommand command = placeOrderCommand(request, currentUser, product);
+        matchingEngineCommandProducer.send(command, null);
+
+        OrderDto orderDto = new OrderDto();
+        orderDto.setId(command.getOrderId());
+        return orderDto;
+    }
+
+    @PostMapping(value = "/orders/batch")
+    public List<OrderDto> placeOrders(@RequestBody @Valid BatchPlaceOrderRequest request,
+                                      @RequestAttribute(required = false) User currentUser) {
+        if (currentUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        String productId = request.getOrders().get(0).getProductId();
+        if (request.getOrders().stream().anyMatch(x -> !x.getProductId().equals(productId))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "orders of a batch must be of one product");
+        }
+        ProductEntity product = productRepository.findById(productId);
+        if (product == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product not found: " + productId);
+        }
+
+        BatchPlaceOrderCommand command = new BatchPlaceOrderCommand();
+        command.setProductId(productId);
+        for (PlaceOrderRequest orderRequest : request.getOrders()) {
+            command.getOrders().add(placeOrderCommand(orderRequest, currentUser, product));
+        }
+        matchingEngineCommandProducer.send(command, null);
+
+        return command.getOrders().stream().map(x -> {
+            OrderDto orderDto = new OrderDto();
+            orderDto.setId(x.getOrderId());
+            return orderDto;
+        }).collect(Collectors.toList());
+    }
+
+    private PlaceOrderCommand placeOrderCommand(PlaceOrderRequest request, User currentUser, ProductEntity product) {
         OrderType type = OrderType.valueOf(request.getType().toUpperCase());
         OrderSide side = OrderSide.valueOf(request.getSide().toUpperCase());
         BigDecimal size = new BigDecimal(request.getSize());
@@ -55,6 +101,9 @@ public class OrderController {
         TimeInForce timeInForce = request.getTimeInForce() != null
                 ? TimeInForce.valueOf(request.getTimeInForce().toUpperCase())
                 : null;
+        if (request.isPostOnly() && (timeInForce == TimeInForce.IOC || timeInForce == TimeInForce.FOK)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "post only is invalid for IOC and FOK orders");
+        }
 
         PlaceOrderCommand command = new PlaceOrderCommand();
         command.setProductId(request.getProductId());
@@ -66,13 +115,23 @@ public class OrderController {
         command.setPrice(price);
         command.setFunds(funds);
         command.setTime(new Date());
+        command.setTimeInForce(timeInForce);
+        if (timeInForce == TimeInForce.GTT) {
+            command.setExpireTime(new Date(command.getTime().getTime() + cancelAfterMillis(request.getCancelAfter())));
+        }
+        command.setPostOnly(request.isPostOnly());
+        command.setSelfTradePrevention(selfTradePrevention(request.getStp()));
+        if (request.getStopPrice() != null) {
+            BigDecimal stopPrice = new BigDecimal(request.getStopPrice())
+                    .setScale(product.getQuoteScale(), RoundingMode.DOWN);
+            if (stopPrice.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "stop price must be positive");
+            }
+            command.setStopPrice(stopPrice);
+        }
         formatPlaceOrderCommand(command, product);
         validatePlaceOrderCommand(command);
-        matchingEngineCommandProducer.send(command, null);
-
-        OrderDto orderDto = new OrderDto();
-        orderDto.setId(command.getOrderId());
-        return orderDto;
+        return command;
     }
 
     @DeleteMapping("/orders/{orderId}")
@@ -96,6 +155,50 @@ public class OrderController {
         matchingEngineCommandProducer.send(command, null);
     }
 
+    @PutMapping("/orders/{orderId}")
+    public void amendOrder(@PathVariable String orderId, @RequestBody AmendOrderRequest request,
+                           @RequestAttribute(required = false) User currentUser) {
+        if (currentUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        if (request.getSize() == null && request.getPrice() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size or price is required");
+        }
+
+        OrderEntity order = orderRepository.findByOrderId(orderId);
+        if (order == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "order not found: " + orderId);
+        }
+        if (!order.getUserId().equals(currentUser.getId())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+        if (order.getType() != OrderType.LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "only limit orders can be amended");
+        }
+        ProductEntity product = productRepository.findById(order.getProductId());
+        if (product == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product not found: " + order.getProductId());
+        }
+
+        AmendOrderCommand command = new AmendOrderCommand();
+        command.setProductId(order.getProductId());
+        command.setOrderId(order.getId());
+        command.setUserId(currentUser.getId());
+        if (request.getSize() != null) {
+            command.setSize(new BigDecimal(request.getSize()).setScale(product.getBaseScale(), RoundingMode.DOWN));
+            if (command.getSize().compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be positive");
+            }
+        }
+        if (request.getPrice() != null) {
+            command.setPrice(new BigDecimal(request.getPrice()).setScale(product.getQuoteScale(), RoundingMode.DOWN));
+            if (command.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "price must be positive");
+            }
+        }
+        matchingEngineCommandProducer.send(command, null);
+    }
+
     @DeleteMapping("/orders")
     @SneakyThrows
     public void cancelOrders(String productId, String side, @RequestAttribute(required = false) User currentUser) {
@@ -105,15 +208,11 @@ public class OrderController {
 
         OrderSide orderSide = side != null ? OrderSide.valueOf(side.toUpperCase()) : null;
 
-        PagedList<OrderEntity> orderPage = orderRepository.findAll(currentUser.getId(), productId, OrderStatus.OPEN,
-                orderSide, 1, 20000);
-
-        for (OrderEntity order : orderPage.getItems()) {
-            CancelOrderCommand command = new CancelOrderCommand();
-            command.setProductId(order.getProductId());
-            command.setOrderId(order.getId());
-            matchingEngineCommandProducer.send(command, null);
-        }
+        MassCancelCommand command = new MassCancelCommand();
+        command.setUserId(currentUser.getId());
+        command.setProductId(productId);
+        command.setSide(orderSide);
+        matchingEngineCommandProducer.send(command, null);
     }
 
     @GetMapping("/orders")
@@ -139,6 +238,9 @@ public class OrderController {
         OrderDto orderDto = new OrderDto();
         orderDto.setId(order.getId());
         orderDto.setPrice(order.getPrice().toPlainString());
+        if (order.getStopPrice() != null) {
+            orderDto.setStopPrice(order.getStopPrice().toPlainString());
+        }
         orderDto.setSize(order.getSize().toPlainString());
         orderDto.setFilledSize(order.getFilledSize() != null ? order.getFilledSize().toPlainString() : "0");
         orderDto.setFunds(order.getFunds() != null ? order.getFunds().toPlainString() : "0");
@@ -155,6 +257,30 @@ public class OrderController {
         return orderDto;
     }
 
+    private SelfTradePrevention selfTradePrevention(String stp) {
+        if (stp == null) {
+            return null;
+        }
+        return switch (stp.toLowerCase()) {
+            case "dc" -> SelfTradePrevention.DECREMENT_AND_CANCEL;
+            case "co" -> SelfTradePrevention.CANCEL_OLDEST;
+            case "cn" -> SelfTradePrevention.CANCEL_NEWEST;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bad stp: " + stp);
+        };
+    }
+
+    private long cancelAfterMillis(String cancelAfter) {
+        if (cancelAfter == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "cancel_after is required for GTT orders");
+        }
+        return switch (cancelAfter.toLowerCase()) {
+            case "min" -> TimeUnit.MINUTES.toMillis(1);
+            case "hour" -> TimeUnit.HOURS.toMillis(1);
+            case "day" -> TimeUnit.DAYS.toMillis(1);
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bad cancel_after: " + cancelAfter);
+        };
+    }
+
     private void formatPlaceOrderCommand(PlaceOrderCommand command, ProductEntity product) {
         BigDecimal size = command.getSize();
         BigDecimal price = command.getPrice();
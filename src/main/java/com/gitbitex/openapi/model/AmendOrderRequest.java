@@ -0,0 +1,18 @@
+package com.gitbitex.openapi.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class AmendOrderRequest {
+    /**
+     * [optional] New total size of the order, including what was filled. A smaller size keeps the order's place in
+     * the queue
+     */
+    private String size;
+    /**
+     * [optional] New price, the order goes to the back of the queue of the new price
+     */
+    private String price;
+}
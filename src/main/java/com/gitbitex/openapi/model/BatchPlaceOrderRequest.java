@@ -0,0 +1,21 @@
+package com.gitbitex.openapi.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@Setter
+public class BatchPlaceOrderRequest {
+    /**
+     * Orders of one product, placed in the given order
+     */
+    @NotEmpty
+    @Size(max = 100)
+    @Valid
+    private List<PlaceOrderRequest> orders;
+}
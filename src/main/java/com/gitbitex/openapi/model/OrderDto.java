@@ -8,6 +8,7 @@ import lombok.Setter;
 public class OrderDto {
     private String id;
     private String price;
+    private String stopPrice;
     private String size;
     private String funds;
     private String productId;
@@ -30,4 +30,22 @@ public class PlaceOrderRequest {
      * [optional] GTC, GTT, IOC, or FOK (default is GTC)
      */
     private String timeInForce;
+    /**
+     * [optional] min, hour, day. Requires time_in_force to be GTT
+     */
+    private String cancelAfter;
+    /**
+     * [optional] Post only flag, invalid when time_in_force is IOC or FOK
+     */
+    private boolean postOnly;
+    /**
+     * [optional] Self-trade prevention flag: dc (decrement and cancel), co (cancel oldest) or cn (cancel newest).
+     * Orders of the same user match each other if not set
+     */
+    private String stp;
+    /**
+     * [optional] Makes the order a stop order, placed when a trade is at or above the stop price for a buy, at or
+     * below it for a sell. A limit order becomes a stop-limit order, a market order a stop market order
+     */
+    private String stopPrice;
 }
@@ -0,0 +1,87 @@
+package com.gitbitex.marketdata;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderStatus;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.marketdata.orderbook.L2OrderBook;
+import com.gitbitex.marketdata.orderbook.OrderBookSnapshotManager;
+import com.gitbitex.matchingengine.Order;
+import com.gitbitex.matchingengine.Product;
+import com.gitbitex.matchingengine.message.Message;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.mongodb.client.ClientSession;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderBookSnapshotThreadTest {
+    private static final String PRODUCT_ID = "BTC-USDT";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void restoreSkipsPendingStopOrders() {
+        KafkaConsumer<String, Message> consumer = mock(KafkaConsumer.class);
+        when(consumer.poll(any())).thenReturn(ConsumerRecords.empty());
+        OrderBookSnapshotManager orderBookSnapshotManager = mock(OrderBookSnapshotManager.class);
+        EngineSnapshotManager engineSnapshotManager = mock(EngineSnapshotManager.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<ClientSession>>getArgument(0).accept(null);
+            return null;
+        }).when(engineSnapshotManager).runInSession(any());
+        Product product = new Product();
+        product.setId(PRODUCT_ID);
+        when(engineSnapshotManager.getProducts(any())).thenReturn(List.of(product));
+        when(engineSnapshotManager.getEngineState(any(), anyInt())).thenReturn(null);
+        when(engineSnapshotManager.getOrders(any(), eq(PRODUCT_ID))).thenReturn(List.of(
+                order("open-bid", OrderSide.BUY, "100", OrderStatus.OPEN),
+                order("stop-bid", OrderSide.BUY, "120", OrderStatus.PENDING),
+                order("stop-ask", OrderSide.SELL, "90", OrderStatus.PENDING)));
+
+        OrderBookSnapshotThread thread = new OrderBookSnapshotThread(consumer, orderBookSnapshotManager,
+                engineSnapshotManager, new AppProperties());
+        thread.onPartitionsAssigned(List.of(new TopicPartition("matching-engine-message", 0)));
+        thread.doPoll();
+
+        ArgumentCaptor<L2OrderBook> captor = ArgumentCaptor.forClass(L2OrderBook.class);
+        verify(orderBookSnapshotManager).saveL2BatchOrderBook(captor.capture());
+        L2OrderBook l2OrderBook = captor.getValue();
+        assertTrue(l2OrderBook.getAsks().isEmpty());
+        assertEquals(1, l2OrderBook.getBids().size());
+        assertEquals("100", l2OrderBook.getBids().get(0).getPrice());
+    }
+
+    private static Order order(String id, OrderSide side, String price, OrderStatus status) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId("user");
+        order.setProductId(PRODUCT_ID);
+        order.setType(OrderType.LIMIT);
+        order.setSide(side);
+        order.setPrice(new BigDecimal(price));
+        order.setSize(BigDecimal.ONE);
+        order.setRemainingSize(BigDecimal.ONE);
+        order.setFunds(order.getPrice());
+        order.setRemainingFunds(order.getPrice());
+        order.setStatus(status);
+        order.setTime(new Date());
+        return order;
+    }
+}
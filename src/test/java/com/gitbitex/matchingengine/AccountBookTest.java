@@ -0,0 +1,65 @@
+package com.gitbitex.matchingengine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Deposits in fixed-point mode, a deposit the balances cannot be scaled for is rejected without changing anything.
+ */
+class AccountBookTest {
+    private AccountBook accountBook;
+
+    @BeforeEach
+    void setUp() {
+        accountBook = new AccountBook(mock(MessageSender.class), new AtomicLong(), true, null, null);
+        accountBook.deposit("user", "USDT", new BigDecimal("100.5"), "t1");
+    }
+
+    @Test
+    void depositRaisesTheScaleOfTheCurrency() {
+        accountBook.deposit("other", "USDT", new BigDecimal("0.001"), "t2");
+
+        assertEquals(new BigDecimal("100.500"), available("user"));
+        assertEquals(new BigDecimal("0.001"), available("other"));
+    }
+
+    @Test
+    void depositThatOverflowsTheBalancesIsRejected() {
+        accountBook.deposit("other", "USDT", new BigDecimal("0.000000000000000001"), "t2");
+
+        assertEquals(new BigDecimal("100.5"), available("user"));
+        assertNull(accountBook.getAccount("other", "USDT"));
+        // the scale of the currency did not change either
+        accountBook.deposit("other", "USDT", new BigDecimal("1"), "t3");
+        assertEquals(new BigDecimal("1.0"), available("other"));
+    }
+
+    @Test
+    void depositBeyondTheMaxScaleIsRejected() {
+        accountBook.deposit("user", "BTC", new BigDecimal("1E-19"), "t2");
+        accountBook.deposit("user", "USDT", new BigDecimal("1E-19"), "t3");
+
+        assertNull(accountBook.getAccount("user", "BTC"));
+        assertEquals(new BigDecimal("100.5"), available("user"));
+    }
+
+    @Test
+    void depositThatOverflowsItsAccountIsRejected() {
+        accountBook.deposit("user", "USDT", new BigDecimal(Long.MAX_VALUE / 10), "t2");
+
+        assertEquals(new BigDecimal("100.5"), available("user"));
+    }
+
+    private BigDecimal available(String userId) {
+        Account account = accountBook.getAccount(userId, "USDT");
+        account.fromScaled();
+        return account.getAvailable();
+    }
+}
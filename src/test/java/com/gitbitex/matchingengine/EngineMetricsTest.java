@@ -0,0 +1,52 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.DepositCommand;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class EngineMetricsTest {
+
+    @Test
+    void metersArePublishedOnceTheEngineIsOpened() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AppProperties appProperties = new AppProperties();
+        MatchingEngine matchingEngine = new MatchingEngine(mock(EngineSnapshotManager.class),
+                new LocalSnapshotStore(appProperties), mock(MessageSender.class), new EngineMeterRegistry(registry),
+                appProperties, 0);
+
+        // a standby replays the commands of the running engine, it must not count them again
+        matchingEngine.executeCommand(deposit("standby"), 0);
+        assertNull(registry.find("gbe.matching-engine.command.processed").counter());
+
+        matchingEngine.open();
+        matchingEngine.executeCommand(deposit("running"), 1);
+        assertEquals(1, registry.get("gbe.matching-engine.command.processed").counter().count());
+    }
+
+    @Test
+    void enginesOfAShardShareTheirGauges() {
+        EngineMeterRegistry meterRegistry = new EngineMeterRegistry(new SimpleMeterRegistry());
+        new EngineMetrics(meterRegistry, 1).setConsumerLag(5);
+        new EngineMetrics(meterRegistry, 1).setConsumerLag(7);
+
+        assertEquals(7, meterRegistry.getRegistry().get("gbe.matching-engine.consumer.lag").gauge().value());
+    }
+
+    private static DepositCommand deposit(String transactionId) {
+        DepositCommand command = new DepositCommand();
+        command.setUserId("user");
+        command.setCurrency("USDT");
+        command.setAmount(BigDecimal.ONE);
+        command.setTransactionId(transactionId);
+        return command;
+    }
+}
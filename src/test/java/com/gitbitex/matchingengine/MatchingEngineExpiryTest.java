@@ -0,0 +1,150 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderStatus;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.TimeInForce;
+import com.gitbitex.matchingengine.command.AmendOrderCommand;
+import com.gitbitex.matchingengine.command.CancelOrderCommand;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.DepositCommand;
+import com.gitbitex.matchingengine.command.PlaceOrderCommand;
+import com.gitbitex.matchingengine.command.PutProductCommand;
+import com.gitbitex.matchingengine.message.OrderMessage;
+import com.gitbitex.matchingengine.message.TradeMessage;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * GTT orders expire by the time of the commands, whatever their type.
+ */
+class MatchingEngineExpiryTest {
+    private static final String PRODUCT_ID = "BTC-USDT";
+    private static final long START_TIME = 1_700_000_000_000L;
+    private static final long EXPIRE_TIME = START_TIME + 1_000;
+
+    private MessageSender messageSender;
+    private MatchingEngine matchingEngine;
+    private long offset;
+    // status of each order in the last message sent for it
+    private final Map<String, OrderStatus> orderStatuses = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        messageSender = mock(MessageSender.class);
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof OrderMessage orderMessage) {
+                orderStatuses.put(orderMessage.getOrder().getId(), orderMessage.getOrder().getStatus());
+            }
+            return null;
+        }).when(messageSender).send(any());
+        matchingEngine = new MatchingEngine(mock(EngineSnapshotManager.class), new LocalSnapshotStore(appProperties),
+                messageSender, EngineMeterRegistry.noop(), appProperties, 0);
+
+        PutProductCommand putProductCommand = new PutProductCommand();
+        putProductCommand.setProductId(PRODUCT_ID);
+        putProductCommand.setBaseCurrency("BTC");
+        putProductCommand.setQuoteCurrency("USDT");
+        putProductCommand.setBaseScale(4);
+        putProductCommand.setQuoteScale(2);
+        execute(putProductCommand, START_TIME);
+        execute(deposit("maker", "BTC"), START_TIME);
+        execute(deposit("taker", "USDT"), START_TIME);
+
+        PlaceOrderCommand maker = placeOrder("maker-order", "maker", OrderSide.SELL, "100");
+        maker.setTimeInForce(TimeInForce.GTT);
+        maker.setExpireTime(new Date(EXPIRE_TIME));
+        execute(maker, START_TIME);
+        execute(placeOrder("taker-order", "taker", OrderSide.BUY, "90"), START_TIME + 10);
+    }
+
+    @Test
+    void amendMatchesMakerBeforeItExpires() {
+        execute(amendOrder("taker-order", "100"), EXPIRE_TIME - 500);
+
+        verify(messageSender, atLeastOnce()).send(any(TradeMessage.class));
+        assertEquals(OrderStatus.FILLED, orderStatuses.get("maker-order"));
+    }
+
+    @Test
+    void amendDoesNotMatchExpiredMaker() {
+        execute(amendOrder("taker-order", "100"), EXPIRE_TIME + 60_000);
+
+        verify(messageSender, never()).send(any(TradeMessage.class));
+        assertEquals(OrderStatus.CANCELLED, orderStatuses.get("maker-order"));
+        assertEquals(OrderStatus.OPEN, orderStatuses.get("taker-order"));
+    }
+
+    @Test
+    void cancelExpiresDueOrders() {
+        CancelOrderCommand cancelOrderCommand = new CancelOrderCommand();
+        cancelOrderCommand.setProductId(PRODUCT_ID);
+        cancelOrderCommand.setOrderId("unknown-order");
+        execute(cancelOrderCommand, EXPIRE_TIME + 60_000);
+
+        assertEquals(OrderStatus.CANCELLED, orderStatuses.get("maker-order"));
+    }
+
+    @Test
+    void commandWithoutTimeDoesNotMoveClock() {
+        CancelOrderCommand cancelOrderCommand = new CancelOrderCommand();
+        cancelOrderCommand.setProductId(PRODUCT_ID);
+        cancelOrderCommand.setOrderId("unknown-order");
+        matchingEngine.executeCommand(cancelOrderCommand, offset++);
+
+        assertEquals(OrderStatus.OPEN, orderStatuses.get("maker-order"));
+    }
+
+    private void execute(Command command, long time) {
+        command.setTime(new Date(time));
+        matchingEngine.executeCommand(command, offset++);
+    }
+
+    private static DepositCommand deposit(String userId, String currency) {
+        DepositCommand command = new DepositCommand();
+        command.setUserId(userId);
+        command.setCurrency(currency);
+        command.setAmount(new BigDecimal("1000000"));
+        command.setTransactionId(userId + "-" + currency);
+        return command;
+    }
+
+    private static PlaceOrderCommand placeOrder(String orderId, String userId, OrderSide side, String price) {
+        PlaceOrderCommand command = new PlaceOrderCommand();
+        command.setProductId(PRODUCT_ID);
+        command.setOrderId(orderId);
+        command.setUserId(userId);
+        command.setOrderType(OrderType.LIMIT);
+        command.setOrderSide(side);
+        command.setPrice(new BigDecimal(price));
+        command.setSize(BigDecimal.ONE);
+        command.setFunds(command.getPrice());
+        return command;
+    }
+
+    private static AmendOrderCommand amendOrder(String orderId, String price) {
+        AmendOrderCommand command = new AmendOrderCommand();
+        command.setProductId(PRODUCT_ID);
+        command.setOrderId(orderId);
+        command.setUserId("taker");
+        command.setPrice(new BigDecimal(price));
+        return command;
+    }
+}
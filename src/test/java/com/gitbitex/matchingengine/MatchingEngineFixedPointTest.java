@@ -0,0 +1,119 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderStatus;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.TimeInForce;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.DepositCommand;
+import com.gitbitex.matchingengine.command.PlaceOrderCommand;
+import com.gitbitex.matchingengine.command.PutProductCommand;
+import com.gitbitex.matchingengine.message.OrderMessage;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Fills in fixed-point mode keep the level totals in scaled sizes, the orders get their decimals from their messages.
+ */
+class MatchingEngineFixedPointTest {
+    private static final String PRODUCT_ID = "BTC-USDT";
+
+    private MatchingEngine matchingEngine;
+    private long offset;
+    // copy of each order as its last message carried it
+    private final Map<String, Order> sentOrders = new HashMap<>();
+
+    private void setUp(int priceLadderSize) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setMatchingEngineFixedPoint(true);
+        appProperties.setMatchingEnginePriceLadderSize(priceLadderSize);
+        MessageSender messageSender = mock(MessageSender.class);
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof OrderMessage orderMessage) {
+                sentOrders.put(orderMessage.getOrder().getId(), orderMessage.getOrder().clone());
+            }
+            return null;
+        }).when(messageSender).send(any());
+        matchingEngine = new MatchingEngine(mock(EngineSnapshotManager.class), new LocalSnapshotStore(appProperties),
+                messageSender, EngineMeterRegistry.noop(), appProperties, 0);
+
+        PutProductCommand putProductCommand = new PutProductCommand();
+        putProductCommand.setProductId(PRODUCT_ID);
+        putProductCommand.setBaseCurrency("BTC");
+        putProductCommand.setQuoteCurrency("USDT");
+        putProductCommand.setBaseScale(4);
+        putProductCommand.setQuoteScale(2);
+        execute(putProductCommand);
+        execute(deposit("maker", "BTC"));
+        execute(deposit("taker", "USDT"));
+        execute(placeOrder("maker-order", "maker", OrderSide.SELL, "1", TimeInForce.GTC));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 64})
+    void partialFillsUpdateMakerDecimals(int priceLadderSize) {
+        setUp(priceLadderSize);
+        execute(placeOrder("taker-order-1", "taker", OrderSide.BUY, "0.3", TimeInForce.GTC));
+        execute(placeOrder("taker-order-2", "taker", OrderSide.BUY, "0.2", TimeInForce.GTC));
+
+        Order makerOrder = sentOrders.get("maker-order");
+        assertEquals(OrderStatus.OPEN, makerOrder.getStatus());
+        assertEquals(0, new BigDecimal("0.5").compareTo(makerOrder.getRemainingSize()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 64})
+    void fillOrKillSeesScaledLevelTotal(int priceLadderSize) {
+        setUp(priceLadderSize);
+        execute(placeOrder("taker-order-1", "taker", OrderSide.BUY, "0.3", TimeInForce.GTC));
+
+        // 0.7 is left at the level, more is killed
+        execute(placeOrder("taker-order-2", "taker", OrderSide.BUY, "0.8", TimeInForce.FOK));
+        assertEquals(OrderStatus.REJECTED, sentOrders.get("taker-order-2").getStatus());
+        assertEquals(OrderStatus.OPEN, sentOrders.get("maker-order").getStatus());
+
+        execute(placeOrder("taker-order-3", "taker", OrderSide.BUY, "0.7", TimeInForce.FOK));
+        assertEquals(OrderStatus.FILLED, sentOrders.get("taker-order-3").getStatus());
+        assertEquals(OrderStatus.FILLED, sentOrders.get("maker-order").getStatus());
+    }
+
+    private void execute(Command command) {
+        matchingEngine.executeCommand(command, offset++);
+    }
+
+    private static DepositCommand deposit(String userId, String currency) {
+        DepositCommand command = new DepositCommand();
+        command.setUserId(userId);
+        command.setCurrency(currency);
+        command.setAmount(new BigDecimal("1000000"));
+        command.setTransactionId(userId + "-" + currency);
+        return command;
+    }
+
+    private static PlaceOrderCommand placeOrder(String orderId, String userId, OrderSide side, String size,
+                                                TimeInForce timeInForce) {
+        PlaceOrderCommand command = new PlaceOrderCommand();
+        command.setProductId(PRODUCT_ID);
+        command.setOrderId(orderId);
+        command.setUserId(userId);
+        command.setOrderType(OrderType.LIMIT);
+        command.setOrderSide(side);
+        command.setPrice(new BigDecimal("100"));
+        command.setSize(new BigDecimal(size));
+        command.setFunds(command.getPrice().multiply(command.getSize()));
+        command.setTimeInForce(timeInForce);
+        return command;
+    }
+}
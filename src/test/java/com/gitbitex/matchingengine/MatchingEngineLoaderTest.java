@@ -0,0 +1,87 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import com.gitbitex.middleware.kafka.KafkaProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MatchingEngineLoaderTest {
+    private final List<Integer> startedStandbys = new ArrayList<>();
+    private final Map<Integer, MatchingEngineStandbyThread> standbyThreads = new HashMap<>();
+    private final List<Integer> loadedShards = new ArrayList<>();
+    private MatchingEngineLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setMatchingEngineShards(3);
+        appProperties.setMatchingEngineStandby(true);
+        loader = new MatchingEngineLoader(mock(EngineSnapshotManager.class), new LocalSnapshotStore(appProperties),
+                appProperties, new KafkaProperties(), EngineMeterRegistry.noop()) {
+            @Override
+            protected MatchingEngineStandbyThread newStandbyThread(int shard) {
+                MatchingEngineStandbyThread thread = mock(MatchingEngineStandbyThread.class);
+                when(thread.handOver()).thenReturn(mock(MatchingEngine.class));
+                startedStandbys.add(shard);
+                standbyThreads.put(shard, thread);
+                return thread;
+            }
+
+            @Override
+            public MatchingEngine loadMatchingEngine(int shard) {
+                loadedShards.add(shard);
+                return mock(MatchingEngine.class);
+            }
+        };
+    }
+
+    @Test
+    void noStandbyForShardsTakenAtStartup() {
+        loader.takeMatchingEngine(1);
+        loader.startStandbys();
+
+        assertEquals(List.of(1), loadedShards);
+        assertEquals(List.of(0, 2), startedStandbys);
+    }
+
+    @Test
+    void standbyStartedWhenShardIsReleased() {
+        loader.takeMatchingEngine(1);
+        loader.startStandbys();
+        loader.releaseMatchingEngine(1);
+
+        assertEquals(List.of(0, 2, 1), startedStandbys);
+    }
+
+    @Test
+    void shardAssignedLaterTakesItsStandbyOver() {
+        loader.startStandbys();
+        MatchingEngine matchingEngine = loader.takeMatchingEngine(2);
+
+        assertSame(standbyThreads.get(2).handOver(), matchingEngine);
+        assertEquals(List.of(), loadedShards);
+    }
+
+    @Test
+    void shardMovingBetweenThreadsKeepsNoStandby() {
+        loader.takeMatchingEngine(1);
+        loader.takeMatchingEngine(1);
+        loader.releaseMatchingEngine(1);
+        assertEquals(List.of(), startedStandbys);
+
+        loader.releaseMatchingEngine(1);
+        assertEquals(List.of(1), startedStandbys);
+    }
+}
@@ -0,0 +1,165 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderStatus;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.matchingengine.command.AmendOrderCommand;
+import com.gitbitex.matchingengine.command.BinaryCommandCodec;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.DepositCommand;
+import com.gitbitex.matchingengine.command.PlaceOrderCommand;
+import com.gitbitex.matchingengine.command.PutProductCommand;
+import com.gitbitex.matchingengine.message.AccountMessage;
+import com.gitbitex.matchingengine.message.OrderMessage;
+import com.gitbitex.matchingengine.snapshot.EngineSnapshotManager;
+import com.gitbitex.matchingengine.snapshot.LocalSnapshotStore;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * An amend that needs a larger hold on a sharded engine is held by the account shard and applied by the product
+ * shard, one that releases funds settles them back.
+ */
+class MatchingEngineShardedAmendTest {
+    // on shard 1 of 2
+    private static final String PRODUCT_ID = "SOL-USDT";
+
+    private final MatchingEngine[] engines = new MatchingEngine[2];
+    private final long[] offsets = new long[2];
+    // commands forwarded between the shards, with their target shard
+    private final Deque<Map.Entry<Integer, Command>> forwarded = new ArrayDeque<>();
+    private final Map<String, Order> sentOrders = new HashMap<>();
+    private final Map<String, Account> sentAccounts = new HashMap<>();
+
+    private void setUp(boolean fixedPoint) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setMatchingEngineShards(2);
+        appProperties.setMatchingEngineFixedPoint(fixedPoint);
+        assertEquals(1, EngineShards.shardOf(PRODUCT_ID, 2));
+        for (int shard = 0; shard < engines.length; shard++) {
+            MessageSender messageSender = mock(MessageSender.class);
+            doAnswer(invocation -> {
+                if (invocation.getArgument(0) instanceof OrderMessage orderMessage) {
+                    sentOrders.put(orderMessage.getOrder().getId(), orderMessage.getOrder().clone());
+                } else if (invocation.getArgument(0) instanceof AccountMessage accountMessage) {
+                    sentAccounts.put(accountMessage.getAccount().getId(), accountMessage.getAccount().clone());
+                }
+                return null;
+            }).when(messageSender).send(any());
+            doAnswer(invocation -> {
+                // the topic keeps the command as it was when it was forwarded
+                Command command = invocation.getArgument(0);
+                if (BinaryCommandCodec.supports(command)) {
+                    command = BinaryCommandCodec.decode(BinaryCommandCodec.encode(command));
+                }
+                forwarded.add(Map.entry(invocation.getArgument(1), command));
+                return null;
+            }).when(messageSender).forward(any(), anyInt());
+            engines[shard] = new MatchingEngine(mock(EngineSnapshotManager.class),
+                    new LocalSnapshotStore(appProperties), messageSender, EngineMeterRegistry.noop(), appProperties,
+                    shard);
+        }
+
+        PutProductCommand putProductCommand = new PutProductCommand();
+        putProductCommand.setProductId(PRODUCT_ID);
+        putProductCommand.setBaseCurrency("SOL");
+        putProductCommand.setQuoteCurrency("USDT");
+        putProductCommand.setBaseScale(2);
+        putProductCommand.setQuoteScale(2);
+        execute(putProductCommand, EngineShards.ACCOUNT_SHARD);
+        DepositCommand depositCommand = new DepositCommand();
+        depositCommand.setUserId("user");
+        depositCommand.setCurrency("USDT");
+        depositCommand.setAmount(new BigDecimal("1000"));
+        depositCommand.setTransactionId("user-USDT");
+        execute(depositCommand, EngineShards.ACCOUNT_SHARD);
+
+        PlaceOrderCommand placeOrderCommand = new PlaceOrderCommand();
+        placeOrderCommand.setProductId(PRODUCT_ID);
+        placeOrderCommand.setOrderId("order");
+        placeOrderCommand.setUserId("user");
+        placeOrderCommand.setOrderType(OrderType.LIMIT);
+        placeOrderCommand.setOrderSide(OrderSide.BUY);
+        placeOrderCommand.setPrice(new BigDecimal("100"));
+        placeOrderCommand.setSize(new BigDecimal("1"));
+        execute(placeOrderCommand, EngineShards.ACCOUNT_SHARD);
+        assertHold("100");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void largerHoldIsHeldByTheAccountShard(boolean fixedPoint) {
+        setUp(fixedPoint);
+        execute(amend("2", null), 1);
+
+        Order order = sentOrders.get("order");
+        assertEquals(OrderStatus.OPEN, order.getStatus());
+        assertEquals(0, new BigDecimal("2").compareTo(order.getSize()));
+        assertHold("200");
+        assertAvailable("800");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void largerHoldThatFailsLeavesTheOrder(boolean fixedPoint) {
+        setUp(fixedPoint);
+        execute(amend("20", null), 1);
+
+        assertEquals(0, new BigDecimal("1").compareTo(sentOrders.get("order").getSize()));
+        assertHold("100");
+        assertAvailable("900");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void smallerHoldIsSettledBack(boolean fixedPoint) {
+        setUp(fixedPoint);
+        execute(amend(null, "40"), 1);
+
+        assertEquals(0, new BigDecimal("40").compareTo(sentOrders.get("order").getPrice()));
+        assertHold("40");
+        assertAvailable("960");
+    }
+
+    private static AmendOrderCommand amend(String size, String price) {
+        AmendOrderCommand command = new AmendOrderCommand();
+        command.setProductId(PRODUCT_ID);
+        command.setOrderId("order");
+        command.setUserId("user");
+        command.setSize(size != null ? new BigDecimal(size) : null);
+        command.setPrice(price != null ? new BigDecimal(price) : null);
+        return command;
+    }
+
+    /**
+     * Executes a command on a shard and then everything the shards forward to each other.
+     */
+    private void execute(Command command, int shard) {
+        engines[shard].executeCommand(command, offsets[shard]++);
+        while (!forwarded.isEmpty()) {
+            Map.Entry<Integer, Command> entry = forwarded.poll();
+            engines[entry.getKey()].executeCommand(entry.getValue(), offsets[entry.getKey()]++);
+        }
+    }
+
+    private void assertHold(String hold) {
+        assertEquals(0, new BigDecimal(hold).compareTo(sentAccounts.get("user-USDT").getHold()));
+    }
+
+    private void assertAvailable(String available) {
+        assertEquals(0, new BigDecimal(available).compareTo(sentAccounts.get("user-USDT").getAvailable()));
+    }
+}
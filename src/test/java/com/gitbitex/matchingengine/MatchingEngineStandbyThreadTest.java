@@ -0,0 +1,108 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.Command;
+import com.gitbitex.matchingengine.command.DepositCommand;
+import com.gitbitex.matchingengine.message.CommandEndMessage;
+import com.gitbitex.matchingengine.message.Message;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A standby starts reading the published messages where its snapshot left off, and is only handed over once it
+ * caught up with them.
+ */
+class MatchingEngineStandbyThreadTest {
+    private static final TopicPartition MESSAGE_PARTITION = new TopicPartition("matching-engine-message", 1);
+
+    private KafkaConsumer<String, Command> commandConsumer;
+    private KafkaConsumer<String, Message> messageConsumer;
+    private MatchingEngine matchingEngine;
+    private MatchingEngineStandbyThread thread;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setMatchingEngineShards(3);
+        appProperties.setMatchingEngineCommandTopic("matching-engine-command");
+        appProperties.setMatchingEngineMessageTopic(MESSAGE_PARTITION.topic());
+        KafkaConsumer<String, Command> consumer = mock(KafkaConsumer.class);
+        messageConsumer = mock(KafkaConsumer.class);
+        when(messageConsumer.beginningOffsets(any())).thenReturn(Map.of(MESSAGE_PARTITION, 0L));
+        when(messageConsumer.endOffsets(any())).thenReturn(Map.of(MESSAGE_PARTITION, 0L));
+        when(messageConsumer.poll(any())).thenReturn(ConsumerRecords.empty());
+        matchingEngine = mock(MatchingEngine.class);
+        // loaded from a snapshot of the running engine, which does not know the offsets of its messages
+        when(matchingEngine.getMessageOffset()).thenReturn(null);
+        MatchingEngineLoader loader = mock(MatchingEngineLoader.class);
+        when(loader.loadMatchingEngine(1)).thenReturn(matchingEngine);
+        commandConsumer = consumer;
+        thread = new MatchingEngineStandbyThread(consumer, messageConsumer, loader, appProperties, 1);
+        thread.doSubscribe();
+    }
+
+    @Test
+    void standbyThatCaughtUpIsHandedOver() {
+        when(messageConsumer.currentLag(MESSAGE_PARTITION)).thenReturn(OptionalLong.of(0));
+        thread.doPoll();
+
+        assertSame(matchingEngine, thread.handOver());
+        verify(matchingEngine, never()).close();
+    }
+
+    @Test
+    void standbyStillCatchingUpIsDropped() {
+        when(messageConsumer.currentLag(MESSAGE_PARTITION)).thenReturn(OptionalLong.of(42));
+        thread.doPoll();
+
+        assertNull(thread.handOver());
+        verify(matchingEngine).close();
+    }
+
+    @Test
+    void standbyStartsRightAfterTheMessagesOfItsSnapshot() {
+        when(matchingEngine.getMessageOffset()).thenReturn(41L);
+        thread.doSubscribe();
+
+        verify(messageConsumer).seek(MESSAGE_PARTITION, 42);
+    }
+
+    @Test
+    void batchesKeepTheOffsetOfTheirMessages() {
+        CommandEndMessage commandEnd = new CommandEndMessage();
+        commandEnd.setSequence(3);
+        commandEnd.setCommandOffset(0);
+        when(messageConsumer.poll(any())).thenReturn(new ConsumerRecords<>(Map.of(MESSAGE_PARTITION,
+                List.of(new ConsumerRecord<>(MESSAGE_PARTITION.topic(), 1, 7, null, commandEnd)))));
+        TopicPartition commandPartition = new TopicPartition("matching-engine-command", 1);
+        when(commandConsumer.poll(any())).thenReturn(new ConsumerRecords<>(Map.of(commandPartition,
+                List.of(new ConsumerRecord<>(commandPartition.topic(), 1, 0, null, (Command) new DepositCommand())))));
+        when(matchingEngine.getLastCommandEndMessage()).thenReturn(commandEnd);
+        thread.doPoll();
+
+        verify(matchingEngine).setMessageOffset(7L);
+    }
+
+    @Test
+    void standbyThatNeverPolledIsDropped() {
+        assertNull(thread.handOver());
+        verify(matchingEngine).close();
+    }
+}
@@ -0,0 +1,108 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.AppProperties;
+import com.gitbitex.matchingengine.command.CancelOrderCommand;
+import com.gitbitex.matchingengine.command.Command;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A sharded engine thread runs the shards its consumer group assigns to it.
+ */
+class MatchingEngineThreadTest {
+    private static final String TOPIC = "matching-engine-command";
+    private static final TopicPartition PARTITION_1 = new TopicPartition(TOPIC, 1);
+    private static final TopicPartition PARTITION_2 = new TopicPartition(TOPIC, 2);
+
+    private KafkaConsumer<String, Command> consumer;
+    private MatchingEngineLoader loader;
+    private MatchingEngine engine1;
+    private MatchingEngine engine2;
+    private MatchingEngineThread thread;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setMatchingEngineShards(3);
+        appProperties.setMatchingEngineCommandTopic(TOPIC);
+        consumer = mock(KafkaConsumer.class);
+        loader = mock(MatchingEngineLoader.class);
+        engine1 = engine(10L);
+        engine2 = engine(20L);
+        when(loader.takeMatchingEngine(1)).thenReturn(engine1);
+        when(loader.takeMatchingEngine(2)).thenReturn(engine2);
+        thread = new MatchingEngineThread(consumer, loader, appProperties);
+    }
+
+    @Test
+    void assignedShardsAreTakenAndSeeked() {
+        assign(PARTITION_1, PARTITION_2);
+
+        verify(engine1).open();
+        verify(engine2).open();
+        verify(consumer).seek(PARTITION_1, 11L);
+        verify(consumer).seek(PARTITION_2, 21L);
+        verify(loader, never()).takeMatchingEngine(0);
+    }
+
+    @Test
+    void shardMovedAwayIsReleased() {
+        assign(PARTITION_1, PARTITION_2);
+        assign(PARTITION_2);
+
+        verify(engine1).close();
+        verify(loader).releaseMatchingEngine(1);
+        verify(engine2, never()).close();
+        verify(loader, never()).releaseMatchingEngine(2);
+        // the engine kept across the rebalance is not taken again
+        verify(loader).takeMatchingEngine(2);
+    }
+
+    @Test
+    void fencedEngineIsDroppedAndFailsTheThread() {
+        assign(PARTITION_1, PARTITION_2);
+        CancelOrderCommand command = new CancelOrderCommand();
+        when(consumer.poll(any())).thenReturn(new ConsumerRecords<>(Map.of(PARTITION_2,
+                List.of(new ConsumerRecord<>(TOPIC, 2, 21L, null, command)))));
+        doThrow(new ProducerFencedException("fenced")).when(engine2).commitBatch();
+
+        ProducerFencedException e = assertThrows(ProducerFencedException.class, () -> thread.doPoll());
+
+        verify(engine2).executeCommand(command, 21L);
+        verify(engine2).close();
+        verify(loader).releaseMatchingEngine(2);
+        verify(engine1, never()).close();
+        assertTrue(thread.isFatal(e));
+    }
+
+    private void assign(TopicPartition... partitions) {
+        when(consumer.assignment()).thenReturn(Set.of(partitions));
+        thread.onPartitionsAssigned(List.of(partitions));
+    }
+
+    private static MatchingEngine engine(Long commandOffset) {
+        MatchingEngine engine = mock(MatchingEngine.class);
+        when(engine.getCommandOffset()).thenReturn(commandOffset);
+        when(engine.getMetrics()).thenReturn(mock(EngineMetrics.class));
+        return engine;
+    }
+}
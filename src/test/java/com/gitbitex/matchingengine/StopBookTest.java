@@ -0,0 +1,57 @@
+package com.gitbitex.matchingengine;
+
+import com.gitbitex.enums.OrderSide;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The stop orders of a user are found through their links, which leave the user's list with the order.
+ */
+class StopBookTest {
+    @Test
+    void userStopsFollowAddRemoveAndTrigger() {
+        StopBook stopBook = new StopBook();
+        Order buy = stop("buy", "user", OrderSide.BUY, "110");
+        Order other = stop("other", "other-user", OrderSide.BUY, "105");
+        Order sell = stop("sell", "user", OrderSide.SELL, "90");
+        Order farSell = stop("far-sell", "user", OrderSide.SELL, "80");
+        stopBook.add(buy);
+        stopBook.add(other);
+        stopBook.add(sell);
+        stopBook.add(farSell);
+        assertEquals(List.of("buy", "sell", "far-sell"), userStops(stopBook, "user"));
+
+        stopBook.remove(sell);
+        assertEquals(List.of("buy", "far-sell"), userStops(stopBook, "user"));
+
+        List<Order> triggered = stopBook.trigger(new BigDecimal("100"), new BigDecimal("110"));
+        assertEquals(2, triggered.size());
+        assertEquals(List.of("far-sell"), userStops(stopBook, "user"));
+        assertNull(stopBook.getHead("other-user"));
+        assertNull(buy.getUserPrev());
+        assertNull(buy.getUserNext());
+    }
+
+    private static List<String> userStops(StopBook stopBook, String userId) {
+        List<String> ids = new ArrayList<>();
+        for (Order order = stopBook.getHead(userId); order != null; order = order.getUserNext()) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+
+    private static Order stop(String orderId, String userId, OrderSide side, String stopPrice) {
+        Order order = new Order();
+        order.setId(orderId);
+        order.setUserId(userId);
+        order.setSide(side);
+        order.setStopPrice(new BigDecimal(stopPrice));
+        return order;
+    }
+}
@@ -0,0 +1,221 @@
+package com.gitbitex.matchingengine.command;
+
+import com.alibaba.fastjson.JSON;
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
+import com.gitbitex.enums.TimeInForce;
+import com.gitbitex.matchingengine.BinaryWriter;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Every command with a binary layout decodes to what was encoded, and encodes to the bytes recorded for the current
+ * {@link BinaryWriter#VERSION}. A layout that changes without a new version fails here, as do records of older
+ * versions that no longer decode.
+ */
+class BinaryCommandCodecTest {
+    // the version the layouts below were recorded at, record them again when it is raised
+    private static final int LAYOUTS_VERSION = 5;
+    private static final Map<String, String> LAYOUTS = Map.of(
+            "placeOrder", "80050101020154104254432d555344540e6f726465722d310c757365722d310104ac020104d29c01" +
+                    "0106cead1200000180a0abfef962010201c0c9b2fef96201020102c60f",
+            "placeOrderWithNulls", "8005010000104254432d555344540e6f726465722d320c757365722d310100040000020200000100" +
+                    "000100",
+            "cancelOrder", "8005020000104254432d555344540e6f726465722d310180a0abfef962",
+            "batchPlaceOrder", "80050701020156104254432d5553445404104254432d555344540e6f726465722d310c757365722d" +
+                    "310104ac020104d29c010106cead1200000180a0abfef962010201c0c9b2fef96201020102c60f10" +
+                    "4254432d555344540e6f726465722d320c757365722d3101000400000202000001000001000180a0" +
+                    "abfef962",
+            "massCancel", "80050800000c757365722d31104254432d55534454010180a0abfef962",
+            "amendOrder", "8005090000104254432d555344540e6f726465722d310c757365722d31000100ca010100000180a0" +
+                    "abfef962",
+            "heldAmendOrder", "80050901000158104254432d555344540e6f726465722d310c757365722d31000100ca0108555344" +
+                    "540104fa01010180a0abfef962");
+    // the place order sample as written by older versions, each without the fields added after it
+    private static final Map<Integer, String> OLD_PLACE_ORDER_LAYOUTS = Map.of(
+            1, "80010101020154104254432d555344540e6f726465722d310c757365722d310104ac020104d29c01" +
+                "0106cead1200000180a0abfef96201",
+            2, "80020101020154104254432d555344540e6f726465722d310c757365722d310104ac020104d29c01" +
+                "0106cead1200000180a0abfef962010201c0c9b2fef962",
+            3, "80030101020154104254432d555344540e6f726465722d310c757365722d310104ac020104d29c01" +
+                "0106cead1200000180a0abfef962010201c0c9b2fef9620102",
+            4, "80040101020154104254432d555344540e6f726465722d310c757365722d310104ac020104d29c01" +
+                "0106cead1200000180a0abfef962010201c0c9b2fef96201020102c60f");
+    // the amend sample as written by version 4, before the hold asked for by its product shard
+    private static final String OLD_AMEND_ORDER_LAYOUT = "8004090000104254432d555344540e6f726465722d310c757365722d31" +
+            "000100ca010180a0abfef962";
+
+    @Test
+    void placeOrderRoundTrip() {
+        assertRoundTrip(placeOrder());
+        assertRoundTrip(placeOrderWithNulls());
+    }
+
+    @Test
+    void cancelOrderRoundTrip() {
+        assertRoundTrip(cancelOrder());
+        CancelOrderCommand command = cancelOrder();
+        command.setTime(null);
+        assertRoundTrip(command);
+    }
+
+    @Test
+    void batchPlaceOrderRoundTrip() {
+        assertRoundTrip(batchPlaceOrder());
+    }
+
+    @Test
+    void massCancelRoundTrip() {
+        assertRoundTrip(massCancel());
+    }
+
+    @Test
+    void amendOrderRoundTrip() {
+        assertRoundTrip(amendOrder());
+        assertRoundTrip(heldAmendOrder());
+    }
+
+    @Test
+    void layoutsAreThoseOfTheCurrentVersion() {
+        assertEquals(LAYOUTS_VERSION, BinaryWriter.VERSION, "the version changed, record the layouts again");
+        samples().forEach((name, command) ->
+                assertEquals(LAYOUTS.get(name), hex(BinaryCommandCodec.encode(command)),
+                        name + " changed without a new version"));
+    }
+
+    @Test
+    void olderVersionsDecode() {
+        for (int version = 1; version < LAYOUTS_VERSION; version++) {
+            PlaceOrderCommand expected = placeOrder();
+            if (version < 2) {
+                expected.setTimeInForce(null);
+                expected.setExpireTime(null);
+            }
+            if (version < 3) {
+                expected.setPostOnly(false);
+                expected.setSelfTradePrevention(null);
+            }
+            if (version < 4) {
+                expected.setStopPrice(null);
+            }
+            Command decoded = BinaryCommandCodec.decode(HexFormat.of().parseHex(OLD_PLACE_ORDER_LAYOUTS.get(version)));
+            assertEquals(JSON.toJSONString(expected), JSON.toJSONString(decoded), "version " + version);
+        }
+        Command decoded = BinaryCommandCodec.decode(HexFormat.of().parseHex(OLD_AMEND_ORDER_LAYOUT));
+        assertEquals(JSON.toJSONString(amendOrder()), JSON.toJSONString(decoded));
+    }
+
+    private static void assertRoundTrip(Command command) {
+        Command decoded = BinaryCommandCodec.decode(BinaryCommandCodec.encode(command));
+        assertEquals(command.getClass(), decoded.getClass());
+        assertEquals(JSON.toJSONString(command), JSON.toJSONString(decoded));
+    }
+
+    private static Map<String, Command> samples() {
+        Map<String, Command> samples = new LinkedHashMap<>();
+        samples.put("placeOrder", placeOrder());
+        samples.put("placeOrderWithNulls", placeOrderWithNulls());
+        samples.put("cancelOrder", cancelOrder());
+        samples.put("batchPlaceOrder", batchPlaceOrder());
+        samples.put("massCancel", massCancel());
+        samples.put("amendOrder", amendOrder());
+        samples.put("heldAmendOrder", heldAmendOrder());
+        return samples;
+    }
+
+    private static PlaceOrderCommand placeOrder() {
+        PlaceOrderCommand command = new PlaceOrderCommand();
+        command.setSourceShard(1);
+        command.setSourceOffset(42L);
+        command.setProductId("BTC-USDT");
+        command.setOrderId("order-1");
+        command.setUserId("user-1");
+        command.setSize(new BigDecimal("1.50"));
+        command.setPrice(new BigDecimal("100.25"));
+        command.setFunds(new BigDecimal("150.375"));
+        command.setOrderType(OrderType.LIMIT);
+        command.setOrderSide(OrderSide.BUY);
+        command.setTime(new Date(1_700_000_000_000L));
+        command.setFundsHeld(true);
+        command.setTimeInForce(TimeInForce.GTT);
+        command.setExpireTime(new Date(1_700_000_060_000L));
+        command.setPostOnly(true);
+        command.setSelfTradePrevention(SelfTradePrevention.CANCEL_OLDEST);
+        command.setStopPrice(new BigDecimal("99.5"));
+        return command;
+    }
+
+    private static PlaceOrderCommand placeOrderWithNulls() {
+        PlaceOrderCommand command = new PlaceOrderCommand();
+        command.setProductId("BTC-USDT");
+        command.setOrderId("order-2");
+        command.setUserId("user-1");
+        command.setSize(new BigDecimal("2"));
+        command.setOrderType(OrderType.MARKET);
+        command.setOrderSide(OrderSide.SELL);
+        return command;
+    }
+
+    private static CancelOrderCommand cancelOrder() {
+        CancelOrderCommand command = new CancelOrderCommand();
+        command.setProductId("BTC-USDT");
+        command.setOrderId("order-1");
+        command.setTime(new Date(1_700_000_000_000L));
+        return command;
+    }
+
+    private static BatchPlaceOrderCommand batchPlaceOrder() {
+        BatchPlaceOrderCommand command = new BatchPlaceOrderCommand();
+        command.setSourceShard(1);
+        command.setSourceOffset(43L);
+        command.setProductId("BTC-USDT");
+        // the orders of a batch are forwarded with it, they have no source of their own
+        PlaceOrderCommand placeOrder = placeOrder();
+        placeOrder.setSourceShard(null);
+        placeOrder.setSourceOffset(null);
+        command.getOrders().add(placeOrder);
+        command.getOrders().add(placeOrderWithNulls());
+        command.setTime(new Date(1_700_000_000_000L));
+        return command;
+    }
+
+    private static MassCancelCommand massCancel() {
+        MassCancelCommand command = new MassCancelCommand();
+        command.setUserId("user-1");
+        command.setProductId("BTC-USDT");
+        command.setTime(new Date(1_700_000_000_000L));
+        return command;
+    }
+
+    private static AmendOrderCommand amendOrder() {
+        AmendOrderCommand command = new AmendOrderCommand();
+        command.setProductId("BTC-USDT");
+        command.setOrderId("order-1");
+        command.setUserId("user-1");
+        command.setPrice(new BigDecimal("101"));
+        command.setTime(new Date(1_700_000_000_000L));
+        return command;
+    }
+
+    private static AmendOrderCommand heldAmendOrder() {
+        AmendOrderCommand command = amendOrder();
+        command.setSourceShard(0);
+        command.setSourceOffset(44L);
+        command.setHoldCurrency("USDT");
+        command.setHoldAmount(new BigDecimal("1.25"));
+        command.setFundsHeld(true);
+        return command;
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
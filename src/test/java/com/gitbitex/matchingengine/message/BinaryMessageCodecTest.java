@@ -0,0 +1,238 @@
+package com.gitbitex.matchingengine.message;
+
+import com.alibaba.fastjson.JSON;
+import com.gitbitex.enums.OrderSide;
+import com.gitbitex.enums.OrderStatus;
+import com.gitbitex.enums.OrderType;
+import com.gitbitex.enums.SelfTradePrevention;
+import com.gitbitex.enums.TimeInForce;
+import com.gitbitex.matchingengine.Account;
+import com.gitbitex.matchingengine.BinaryWriter;
+import com.gitbitex.matchingengine.Order;
+import com.gitbitex.matchingengine.Trade;
+import com.gitbitex.matchingengine.command.CancelOrderCommand;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Every message with a binary layout decodes to what was encoded, and encodes to the bytes recorded for the current
+ * {@link BinaryWriter#VERSION}. A layout that changes without a new version fails here, as do records of older
+ * versions that no longer decode.
+ */
+class BinaryMessageCodecTest {
+    // the version the layouts below were recorded at, record them again when it is raised
+    private static final int LAYOUTS_VERSION = 5;
+    private static final Map<String, String> LAYOUTS = Map.of(
+            "order", "8005030e0a0e6f726465722d31060c757365722d3100000104640104d29c0101069a8f060104ac02" +
+                    "0106cead12010180a0abfef962104254432d555344540410636c69656e742d310201c0c9b2fef962" +
+                    "020102c60f",
+            "orderWithNulls", "80050310000e6f726465722d32000c757365722d310202000000010004000000104254432d555344" +
+                    "54020101000100",
+            "trade", "80050412104254432d55534454040104c801010888b07a0104d29c010180a0abfef962020e6f7264" +
+                    "65722d320e6f726465722d31",
+            "account", "8005011416757365722d312d555344540c757365722d3108555344540106b2db670106cead12",
+            "commandStart", "80050516c801013a8005020000104254432d555344540e6f726465722d310180a0abfef962",
+            "commandEnd", "80050618c8010202305001aab4de75",
+            "commandEndWithNulls", "8005061aca010100");
+    // the order message sample as written by older versions, each without the fields added after it
+    private static final Map<Integer, String> OLD_ORDER_LAYOUTS = Map.of(
+            1, "8001030e0a0e6f726465722d31060c757365722d3100000104640104d29c0101069a8f060104ac02" +
+                "0106cead12010180a0abfef962104254432d555344540410636c69656e742d31",
+            2, "8002030e0a0e6f726465722d31060c757365722d3100000104640104d29c0101069a8f060104ac02" +
+                "0106cead12010180a0abfef962104254432d555344540410636c69656e742d310201c0c9b2fef962",
+            3, "8003030e0a0e6f726465722d31060c757365722d3100000104640104d29c0101069a8f060104ac02" +
+                "0106cead12010180a0abfef962104254432d555344540410636c69656e742d310201c0c9b2fef962" +
+                "02",
+            4, "8004030e0a0e6f726465722d31060c757365722d3100000104640104d29c0101069a8f060104ac02" +
+                "0106cead12010180a0abfef962104254432d555344540410636c69656e742d310201c0c9b2fef962" +
+                "020102c60f");
+
+    @Test
+    void orderRoundTrip() {
+        assertRoundTrip(orderMessage());
+        assertRoundTrip(orderMessageWithNulls());
+    }
+
+    @Test
+    void tradeRoundTrip() {
+        assertRoundTrip(tradeMessage());
+    }
+
+    @Test
+    void accountRoundTrip() {
+        assertRoundTrip(accountMessage());
+    }
+
+    @Test
+    void commandStartRoundTrip() {
+        assertRoundTrip(commandStartMessage());
+        CommandStartMessage message = commandStartMessage();
+        message.setCommand(null);
+        assertRoundTrip(message);
+    }
+
+    @Test
+    void commandEndRoundTrip() {
+        assertRoundTrip(commandEndMessage());
+        assertRoundTrip(commandEndMessageWithNulls());
+    }
+
+    @Test
+    void layoutsAreThoseOfTheCurrentVersion() {
+        assertEquals(LAYOUTS_VERSION, BinaryWriter.VERSION, "the version changed, record the layouts again");
+        samples().forEach((name, message) ->
+                assertEquals(LAYOUTS.get(name), hex(BinaryMessageCodec.encode(message)),
+                        name + " changed without a new version"));
+    }
+
+    @Test
+    void olderVersionsDecode() {
+        for (int version = 1; version < LAYOUTS_VERSION; version++) {
+            OrderMessage expected = orderMessage();
+            Order order = expected.getOrder();
+            if (version < 2) {
+                order.setTimeInForce(null);
+                order.setExpireTime(null);
+            }
+            if (version < 3) {
+                order.setSelfTradePrevention(null);
+            }
+            if (version < 4) {
+                order.setStopPrice(null);
+            }
+            Message decoded = BinaryMessageCodec.decode(HexFormat.of().parseHex(OLD_ORDER_LAYOUTS.get(version)));
+            assertEquals(JSON.toJSONString(expected), JSON.toJSONString(decoded), "version " + version);
+        }
+    }
+
+    private static void assertRoundTrip(Message message) {
+        Message decoded = BinaryMessageCodec.decode(BinaryMessageCodec.encode(message));
+        assertEquals(message.getClass(), decoded.getClass());
+        assertEquals(JSON.toJSONString(message), JSON.toJSONString(decoded));
+    }
+
+    private static Map<String, Message> samples() {
+        Map<String, Message> samples = new LinkedHashMap<>();
+        samples.put("order", orderMessage());
+        samples.put("orderWithNulls", orderMessageWithNulls());
+        samples.put("trade", tradeMessage());
+        samples.put("account", accountMessage());
+        samples.put("commandStart", commandStartMessage());
+        samples.put("commandEnd", commandEndMessage());
+        samples.put("commandEndWithNulls", commandEndMessageWithNulls());
+        return samples;
+    }
+
+    private static OrderMessage orderMessage() {
+        Order order = new Order();
+        order.setId("order-1");
+        order.setSequence(3);
+        order.setUserId("user-1");
+        order.setType(OrderType.LIMIT);
+        order.setSide(OrderSide.BUY);
+        order.setRemainingSize(new BigDecimal("0.50"));
+        order.setPrice(new BigDecimal("100.25"));
+        order.setRemainingFunds(new BigDecimal("50.125"));
+        order.setSize(new BigDecimal("1.50"));
+        order.setFunds(new BigDecimal("150.375"));
+        order.setPostOnly(true);
+        order.setTime(new Date(1_700_000_000_000L));
+        order.setProductId("BTC-USDT");
+        order.setStatus(OrderStatus.OPEN);
+        order.setClientOid("client-1");
+        order.setTimeInForce(TimeInForce.GTT);
+        order.setExpireTime(new Date(1_700_000_060_000L));
+        order.setSelfTradePrevention(SelfTradePrevention.CANCEL_OLDEST);
+        order.setStopPrice(new BigDecimal("99.5"));
+        OrderMessage message = new OrderMessage();
+        message.setSequence(7);
+        message.setOrderBookSequence(5);
+        message.setOrder(order);
+        return message;
+    }
+
+    private static OrderMessage orderMessageWithNulls() {
+        Order order = new Order();
+        order.setId("order-2");
+        order.setUserId("user-1");
+        order.setType(OrderType.MARKET);
+        order.setSide(OrderSide.SELL);
+        order.setSize(new BigDecimal("2"));
+        order.setProductId("BTC-USDT");
+        order.setStatus(OrderStatus.RECEIVED);
+        OrderMessage message = new OrderMessage();
+        message.setSequence(8);
+        message.setOrder(order);
+        return message;
+    }
+
+    private static TradeMessage tradeMessage() {
+        Trade trade = new Trade();
+        trade.setProductId("BTC-USDT");
+        trade.setSequence(2);
+        trade.setSize(new BigDecimal("1.00"));
+        trade.setFunds(new BigDecimal("100.2500"));
+        trade.setPrice(new BigDecimal("100.25"));
+        trade.setTime(new Date(1_700_000_000_000L));
+        trade.setSide(OrderSide.SELL);
+        trade.setTakerOrderId("order-2");
+        trade.setMakerOrderId("order-1");
+        TradeMessage message = new TradeMessage();
+        message.setSequence(9);
+        message.setTrade(trade);
+        return message;
+    }
+
+    private static AccountMessage accountMessage() {
+        Account account = new Account();
+        account.setId("user-1-USDT");
+        account.setUserId("user-1");
+        account.setCurrency("USDT");
+        account.setAvailable(new BigDecimal("849.625"));
+        account.setHold(new BigDecimal("150.375"));
+        AccountMessage message = new AccountMessage();
+        message.setSequence(10);
+        message.setAccount(account);
+        return message;
+    }
+
+    private static CommandStartMessage commandStartMessage() {
+        CancelOrderCommand command = new CancelOrderCommand();
+        command.setProductId("BTC-USDT");
+        command.setOrderId("order-1");
+        command.setTime(new Date(1_700_000_000_000L));
+        CommandStartMessage message = new CommandStartMessage();
+        message.setSequence(11);
+        message.setCommandOffset(100);
+        message.setCommand(command);
+        return message;
+    }
+
+    private static CommandEndMessage commandEndMessage() {
+        CommandEndMessage message = new CommandEndMessage();
+        message.setSequence(12);
+        message.setCommandOffset(100);
+        message.setSourceOffsets(Collections.singletonMap("0", 40L));
+        message.setStateDigest(123456789L);
+        return message;
+    }
+
+    private static CommandEndMessage commandEndMessageWithNulls() {
+        CommandEndMessage message = new CommandEndMessage();
+        message.setSequence(13);
+        message.setCommandOffset(101);
+        return message;
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}